@@ -0,0 +1,90 @@
+package com.ncr.printer;
+
+import java.util.Arrays;
+
+/**
+ * Commands recorded by {@link Ncr7167Printer#record(com.ncr.printer.util.Document)}
+ * for a later {@link Ncr7167Printer#replay(CommandRecording)}
+ *
+ * Each command is kept separately, as it was sent, and custom glyphs are
+ * kept by name; nothing is optimized. Replaying recordings in order sends
+ * the same commands as rendering the documents one after the other on the
+ * replaying thread.
+ */
+public final class CommandRecording {
+
+    private byte[] data = new byte[256];
+    private int length;
+
+    // End offset of each command in data, and the glyph name of glyph entries
+    private int[] ends = new int[16];
+    private String[] glyphs = new String[16];
+    private int count;
+
+    CommandRecording() {
+    }
+
+    /**
+     * Join recordings end to end, e.g. sections recorded in parallel
+     */
+    public static CommandRecording join(CommandRecording... parts) {
+        CommandRecording joined = new CommandRecording();
+        for (CommandRecording part : parts) {
+            int start = 0;
+            for (int i = 0; i < part.count; i++) {
+                if (part.glyphs[i] != null) {
+                    joined.addGlyph(part.glyphs[i]);
+                } else {
+                    joined.addCommand(part.data, start, part.ends[i] - start);
+                }
+                start = part.ends[i];
+            }
+        }
+        return joined;
+    }
+
+    /**
+     * Number of recorded commands and glyphs
+     */
+    public int getCommandCount() { return count; }
+
+    /**
+     * Recorded command bytes, not counting glyphs
+     */
+    public int getLength() { return length; }
+
+    void addCommand(byte[] command, int offset, int commandLength) {
+        if (length + commandLength > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + commandLength));
+        }
+        System.arraycopy(command, offset, data, length, commandLength);
+        length += commandLength;
+        add(null);
+    }
+
+    void addGlyph(String name) {
+        add(name);
+    }
+
+    void replay(Ncr7167Printer printer) throws Ncr7167Exception {
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            if (glyphs[i] != null) {
+                printer.sendGlyph(glyphs[i]);
+            } else {
+                printer.sendCommand(data, start, ends[i] - start);
+            }
+            start = ends[i];
+        }
+    }
+
+    private void add(String glyph) {
+        if (count == ends.length) {
+            ends = Arrays.copyOf(ends, count * 2);
+            glyphs = Arrays.copyOf(glyphs, count * 2);
+        }
+        ends[count] = length;
+        glyphs[count] = glyph;
+        count++;
+    }
+}
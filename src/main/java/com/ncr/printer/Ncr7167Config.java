@@ -11,6 +11,13 @@ public class Ncr7167Config {
     public static final int DEFAULT_STOP_BITS = 1;
     public static final int DEFAULT_PARITY = 0; // No parity
     public static final int DEFAULT_TIMEOUT = 5000; // 5 seconds
+    public static final int DEFAULT_RENDER_THREADS = 2;
+    public static final int DEFAULT_PRINT_LOOKAHEAD = 4;
+    public static final int DEFAULT_TRACE_BUFFER_SIZE = 64 * 1024;
+    public static final long DEFAULT_XOFF_STALL_TIMEOUT = 10000; // 10 seconds
+    public static final long DEFAULT_XOFF_WRITE_TIMEOUT = 60000; // 1 minute
+    public static final long DEFAULT_SPOOL_CONFIRM_TIMEOUT = 30000; // 30 seconds
+    public static final double DEFAULT_RECEIVE_BUFFER_DRAIN_RATE = 750; // 1020 lines/min of 44 columns
     
     // Flow control types
     public enum FlowControl {
@@ -39,6 +46,37 @@ public class Ncr7167Config {
     private int timeout;
     private FlowControl flowControl;
     private InterfaceType interfaceType;
+    private String spoolDirectory;
+    private boolean spoolReplay;
+    private long spoolConfirmTimeout;
+    private long reprintCacheSize;
+    private boolean reprintCacheOffHeap;
+    private String journalDirectory;
+    private String laneId;
+    private int renderThreads;
+    private int printLookahead;
+    private int traceBufferSize;
+    private int receiveBufferSize;
+    private double receiveBufferDrainRate;
+    private boolean receiveBufferCalibration;
+    private boolean softwareFlowControl;
+    private long xoffStallTimeout;
+    private long xoffWriteTimeout;
+    private int receiptPaperWidth;
+    private boolean commandOptimization;
+    private long watchdogIdleInterval;
+    private long watchdogRecoveryInterval;
+    private int watchdogOfflineThreshold;
+    private long connectSettleTime;
+    private String printServerBindAddress;
+    private int printServerPort;
+    private long printServerJobTimeout;
+    private int printServerMaxJobSize;
+    private int printServerClientQueue;
+    private int paperRollLength;
+    private int paperLowWarning;
+    private int paperCutterDistance;
+    private int usbTransferSize;
     
     public Ncr7167Config() {
         this.baudRate = DEFAULT_BAUD_RATE;
@@ -48,6 +86,34 @@ public class Ncr7167Config {
         this.timeout = DEFAULT_TIMEOUT;
         this.flowControl = FlowControl.XON_XOFF;
         this.interfaceType = InterfaceType.RS232C;
+        this.spoolReplay = false;
+        this.spoolConfirmTimeout = DEFAULT_SPOOL_CONFIRM_TIMEOUT;
+        this.reprintCacheSize = 0;
+        this.reprintCacheOffHeap = false;
+        this.renderThreads = DEFAULT_RENDER_THREADS;
+        this.printLookahead = DEFAULT_PRINT_LOOKAHEAD;
+        this.traceBufferSize = DEFAULT_TRACE_BUFFER_SIZE;
+        this.receiveBufferSize = 0;
+        this.receiveBufferDrainRate = DEFAULT_RECEIVE_BUFFER_DRAIN_RATE;
+        this.receiveBufferCalibration = false;
+        this.softwareFlowControl = false;
+        this.xoffStallTimeout = DEFAULT_XOFF_STALL_TIMEOUT;
+        this.xoffWriteTimeout = DEFAULT_XOFF_WRITE_TIMEOUT;
+        this.receiptPaperWidth = 80;
+        this.commandOptimization = false;
+        this.watchdogIdleInterval = 5000;
+        this.watchdogRecoveryInterval = 1000;
+        this.watchdogOfflineThreshold = 3;
+        this.connectSettleTime = 100;
+        this.printServerBindAddress = "127.0.0.1";
+        this.printServerPort = 9100;
+        this.printServerJobTimeout = 1000;
+        this.printServerMaxJobSize = 1024 * 1024;
+        this.printServerClientQueue = 4;
+        this.paperRollLength = 0;
+        this.paperLowWarning = 5000;
+        this.paperCutterDistance = 120;
+        this.usbTransferSize = 4096;
     }
     
     // Getters and setters
@@ -74,4 +140,128 @@ public class Ncr7167Config {
     
     public InterfaceType getInterfaceType() { return interfaceType; }
     public void setInterfaceType(InterfaceType interfaceType) { this.interfaceType = interfaceType; }
+    
+    // Write-ahead spool directory; null disables the spool
+    public String getSpoolDirectory() { return spoolDirectory; }
+    public void setSpoolDirectory(String spoolDirectory) { this.spoolDirectory = spoolDirectory; }
+    
+    // Replay unfinished spooled jobs on connect instead of only flagging them
+    public boolean isSpoolReplay() { return spoolReplay; }
+    public void setSpoolReplay(boolean spoolReplay) { this.spoolReplay = spoolReplay; }
+    
+    // Milliseconds after which a spooled job the printer has not confirmed is reported; 0 completes it once the port accepts it
+    public long getSpoolConfirmTimeout() { return spoolConfirmTimeout; }
+    public void setSpoolConfirmTimeout(long spoolConfirmTimeout) { this.spoolConfirmTimeout = spoolConfirmTimeout; }
+    
+    // Size limit in bytes of the reprint cache; 0 disables the cache
+    public long getReprintCacheSize() { return reprintCacheSize; }
+    public void setReprintCacheSize(long reprintCacheSize) { this.reprintCacheSize = reprintCacheSize; }
+    
+    // Keep cached receipt bytes in direct (off-heap) buffers
+    public boolean isReprintCacheOffHeap() { return reprintCacheOffHeap; }
+    public void setReprintCacheOffHeap(boolean reprintCacheOffHeap) { this.reprintCacheOffHeap = reprintCacheOffHeap; }
+    
+    // Electronic journal directory; null disables the journal
+    public String getJournalDirectory() { return journalDirectory; }
+    public void setJournalDirectory(String journalDirectory) { this.journalDirectory = journalDirectory; }
+    
+    // Lane (terminal) identifier recorded in the journal
+    public String getLaneId() { return laneId; }
+    public void setLaneId(String laneId) { this.laneId = laneId; }
+    
+    // Worker threads rendering documents ahead of transmission in printAll
+    public int getRenderThreads() { return renderThreads; }
+    public void setRenderThreads(int renderThreads) { this.renderThreads = renderThreads; }
+    
+    // Maximum number of documents rendered ahead of the one being transmitted
+    public int getPrintLookahead() { return printLookahead; }
+    public void setPrintLookahead(int printLookahead) { this.printLookahead = printLookahead; }
+    
+    // Bytes of recent wire traffic kept for post-mortem dumps; 0 disables tracing
+    public int getTraceBufferSize() { return traceBufferSize; }
+    public void setTraceBufferSize(int traceBufferSize) { this.traceBufferSize = traceBufferSize; }
+    
+    // Printer receive buffer size in bytes used to pace writes (4096 or one line); 0 disables pacing
+    public int getReceiveBufferSize() { return receiveBufferSize; }
+    public void setReceiveBufferSize(int receiveBufferSize) { this.receiveBufferSize = receiveBufferSize; }
+    
+    // Bytes per second the printer takes out of its receive buffer while printing
+    public double getReceiveBufferDrainRate() { return receiveBufferDrainRate; }
+    public void setReceiveBufferDrainRate(double receiveBufferDrainRate) { this.receiveBufferDrainRate = receiveBufferDrainRate; }
+    
+    // Refine the drain rate from writes the printer throttled
+    public boolean isReceiveBufferCalibration() { return receiveBufferCalibration; }
+    public void setReceiveBufferCalibration(boolean receiveBufferCalibration) { this.receiveBufferCalibration = receiveBufferCalibration; }
+    
+    // Handle XON/XOFF in the library instead of the serial driver
+    public boolean isSoftwareFlowControl() { return softwareFlowControl; }
+    public void setSoftwareFlowControl(boolean softwareFlowControl) { this.softwareFlowControl = softwareFlowControl; }
+    
+    // Milliseconds in XOFF after which the printer is reported as stalled
+    public long getXoffStallTimeout() { return xoffStallTimeout; }
+    public void setXoffStallTimeout(long xoffStallTimeout) { this.xoffStallTimeout = xoffStallTimeout; }
+    
+    // Milliseconds in XOFF after which waiting writes fail; 0 waits for XON indefinitely
+    public long getXoffWriteTimeout() { return xoffWriteTimeout; }
+    public void setXoffWriteTimeout(long xoffWriteTimeout) { this.xoffWriteTimeout = xoffWriteTimeout; }
+    
+    // Receipt paper width in mm (80 or 58), used to size text lines
+    public int getReceiptPaperWidth() { return receiptPaperWidth; }
+    public void setReceiptPaperWidth(int receiptPaperWidth) { this.receiptPaperWidth = receiptPaperWidth; }
+    
+    // Shorten finished jobs with the peephole optimizer before they are sent
+    public boolean isCommandOptimization() { return commandOptimization; }
+    public void setCommandOptimization(boolean commandOptimization) { this.commandOptimization = commandOptimization; }
+    
+    // Milliseconds between watchdog status probes while the printer is healthy
+    public long getWatchdogIdleInterval() { return watchdogIdleInterval; }
+    public void setWatchdogIdleInterval(long watchdogIdleInterval) { this.watchdogIdleInterval = watchdogIdleInterval; }
+    
+    // Milliseconds between watchdog probes after a failure, and the first reconnect delay
+    public long getWatchdogRecoveryInterval() { return watchdogRecoveryInterval; }
+    public void setWatchdogRecoveryInterval(long watchdogRecoveryInterval) { this.watchdogRecoveryInterval = watchdogRecoveryInterval; }
+    
+    // Consecutive missed probes after which the printer is reported offline
+    public int getWatchdogOfflineThreshold() { return watchdogOfflineThreshold; }
+    public void setWatchdogOfflineThreshold(int watchdogOfflineThreshold) { this.watchdogOfflineThreshold = watchdogOfflineThreshold; }
+    
+    // Milliseconds to wait after opening the port before the first command
+    public long getConnectSettleTime() { return connectSettleTime; }
+    public void setConnectSettleTime(long connectSettleTime) { this.connectSettleTime = connectSettleTime; }
+    
+    // Address the print server listens on; 0.0.0.0 for all interfaces
+    public String getPrintServerBindAddress() { return printServerBindAddress; }
+    public void setPrintServerBindAddress(String printServerBindAddress) { this.printServerBindAddress = printServerBindAddress; }
+    
+    // TCP port the print server listens on
+    public int getPrintServerPort() { return printServerPort; }
+    public void setPrintServerPort(int printServerPort) { this.printServerPort = printServerPort; }
+    
+    // Milliseconds of silence on a print server connection that end the current job
+    public long getPrintServerJobTimeout() { return printServerJobTimeout; }
+    public void setPrintServerJobTimeout(long printServerJobTimeout) { this.printServerJobTimeout = printServerJobTimeout; }
+    
+    // Largest job a print server client may send, in bytes
+    public int getPrintServerMaxJobSize() { return printServerMaxJobSize; }
+    public void setPrintServerMaxJobSize(int printServerMaxJobSize) { this.printServerMaxJobSize = printServerMaxJobSize; }
+    
+    // Jobs a client may have waiting before the server stops reading from it
+    public int getPrintServerClientQueue() { return printServerClientQueue; }
+    public void setPrintServerClientQueue(int printServerClientQueue) { this.printServerClientQueue = printServerClientQueue; }
+    
+    // Receipt roll length in mm used to predict the paper left; 0 disables paper tracking
+    public int getPaperRollLength() { return paperRollLength; }
+    public void setPaperRollLength(int paperRollLength) { this.paperRollLength = paperRollLength; }
+    
+    // Predicted receipt paper left in mm at which paper-low is reported
+    public int getPaperLowWarning() { return paperLowWarning; }
+    public void setPaperLowWarning(int paperLowWarning) { this.paperLowWarning = paperLowWarning; }
+    
+    // Dot rows GS V 65/66 feed to bring the last printed line to the knife
+    public int getPaperCutterDistance() { return paperCutterDistance; }
+    public void setPaperCutterDistance(int paperCutterDistance) { this.paperCutterDistance = paperCutterDistance; }
+    
+    // Largest USB bulk write in bytes; smaller writes are gathered up to this size
+    public int getUsbTransferSize() { return usbTransferSize; }
+    public void setUsbTransferSize(int usbTransferSize) { this.usbTransferSize = usbTransferSize; }
 }
@@ -1,90 +1,175 @@
 package com.ncr.printer;
 
 import com.fazecast.jSerialComm.SerialPort;
+import com.ncr.printer.barcode.BarCodeConfig;
+import com.ncr.printer.barcode.BarCodeEncoder;
+import com.ncr.printer.barcode.BarCodeSymbology;
+import com.ncr.printer.cache.ReprintCache;
 import com.ncr.printer.commands.Ncr7167Commands;
+import com.ncr.printer.flow.ReceiveBufferModel;
+import com.ncr.printer.flow.XonXoffController;
+import com.ncr.printer.glyph.Glyph;
+import com.ncr.printer.glyph.GlyphRegistry;
+import com.ncr.printer.journal.ElectronicJournal;
+import com.ncr.printer.optimize.PeepholeOptimizer;
+import com.ncr.printer.paper.PaperTracker;
+import com.ncr.printer.spool.JobSpool;
+import com.ncr.printer.spool.SpoolConfirmer;
+import com.ncr.printer.spool.SpooledJob;
+import com.ncr.printer.trace.WireTrace;
+import com.ncr.printer.transport.InMemoryTransport;
+import com.ncr.printer.transport.PrinterTransport;
+import com.ncr.printer.util.Document;
+import com.ncr.printer.util.DocumentListener;
+import com.ncr.printer.util.ReceiptBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
  * Main class for communicating with NCR 7167 Two-Station POS Printer
  * Based on the NCR 7167 Owner's Manual specifications
+ *
+ * Instances are safe for concurrent use. Every command and every job is
+ * handed to a single writer thread that owns the port, so commands from
+ * different threads never interleave. Jobs are captured per thread: a job
+ * opened on one thread does not capture commands sent from another.
  */
 public class Ncr7167Printer {
     
     private static final Logger logger = LoggerFactory.getLogger(Ncr7167Printer.class);
     private static final int MAX_RETRY_ATTEMPTS = 3;
     
+    // Minimum distance between recorded command boundaries of a job
+    private static final int BOUNDARY_SPACING = 128;
+    
     private final Ncr7167Config config;
-    private SerialPort serialPort;
-    private OutputStream outputStream;
-    private InputStream inputStream;
-    private boolean isConnected = false;
+    private final PrinterTransport transport;
+    private final BarCodeEncoder barCodeEncoder = new BarCodeEncoder();
+    private volatile InputStream inputStream;
+    private volatile PortWriter portWriter;
+    private volatile XonXoffController flowController;
+    private volatile boolean isConnected = false;
+    private volatile long lastErrorNanos;
+    private final ReprintCache reprintCache;
+    private final WireTrace wireTrace;
+    private final PaperTracker paperTracker;
+    private final ReceiveBufferModel receiveBufferModel;
+    private volatile JobSpool jobSpool;
+    private volatile SpoolConfirmer spoolConfirmer;
+    private final Object confirmLock = new Object();
+    private volatile ElectronicJournal journal;
+    private final Object statusLock = new Object();
+    
+    // Custom glyphs and the definitions currently in the printer's RAM, by code
+    private GlyphRegistry glyphRegistry = new GlyphRegistry();
+    private final Glyph[] residentGlyphs = new Glyph[256];
+    private boolean userCharsetSelected;
+    private final Object glyphLock = new Object();
+    
+    // Print mode of what this instance has written to the port, used to size
+    // text lines; threads capturing a job keep their own until it is written
+    private volatile PrintMode printMode = PrintMode.DEFAULT;
+    
+    // Bytes removed from finished jobs by the peephole optimizer
+    private AtomicLong optimizerSavings = new AtomicLong();
+    
+    // Job capture state of each calling thread
+    private final ThreadLocal<Capture> captures = ThreadLocal.withInitial(Capture::new);
+    
+    // Render-only instances used to encode documents off the calling thread
+    private final ThreadLocal<Ncr7167Printer> renderers = ThreadLocal.withInitial(this::newRenderer);
+    
+    // Render-only instances used by record(), not tied to the threads that borrow them
+    private final Queue<Ncr7167Printer> recorders = new ConcurrentLinkedQueue<>();
     
     public Ncr7167Printer(Ncr7167Config config) {
+        this(config, PrinterTransport.forConfig(config));
+    }
+    
+    /**
+     * Create a printer that talks over the given transport
+     */
+    public Ncr7167Printer(Ncr7167Config config, PrinterTransport transport) {
         this.config = config;
+        this.transport = transport;
+        this.reprintCache = config.getReprintCacheSize() > 0
+            ? new ReprintCache(config.getReprintCacheSize(), config.isReprintCacheOffHeap(),
+                config.getReceiptPaperWidth() == 58
+                    ? Ncr7167Commands.CharacterPitch.STANDARD_58MM
+                    : Ncr7167Commands.CharacterPitch.STANDARD_80MM)
+            : null;
+        this.wireTrace = config.getTraceBufferSize() > 0
+            ? new WireTrace(config.getTraceBufferSize())
+            : null;
+        this.paperTracker = config.getPaperRollLength() > 0
+            ? new PaperTracker(config)
+            : null;
+        this.receiveBufferModel = config.getReceiveBufferSize() > 0
+            ? new ReceiveBufferModel(config.getReceiveBufferSize(), config.getReceiveBufferDrainRate(),
+                config.getBaudRate() / 10, config.isReceiveBufferCalibration())
+            : null;
     }
     
     /**
      * Connect to the printer
      */
-    public void connect() throws Ncr7167Exception {
+    public synchronized void connect() throws Ncr7167Exception {
         if (isConnected) {
             logger.warn("Printer is already connected");
             return;
         }
         
-        if (config.getPortName() == null || config.getPortName().isEmpty()) {
-            throw new Ncr7167Exception("Port name is not configured");
-        }
-        
         try {
-            serialPort = SerialPort.getCommPort(config.getPortName());
+            transport.open();
+            invalidateGlyphs();
             
-            // Configure serial port based on config
-            serialPort.setBaudRate(config.getBaudRate());
-            serialPort.setNumDataBits(config.getDataBits());
-            serialPort.setNumStopBits(config.getStopBits());
-            serialPort.setParity(config.getParity());
-            
-            // Set flow control
-            switch (config.getFlowControl()) {
-                case XON_XOFF:
-                    serialPort.setFlowControl(SerialPort.FLOW_CONTROL_XONXOFF_IN_ENABLED | 
-                                             SerialPort.FLOW_CONTROL_XONXOFF_OUT_ENABLED);
-                    break;
-                case DTR_DSR:
-                    serialPort.setFlowControl(SerialPort.FLOW_CONTROL_DTR_ENABLED | 
-                                             SerialPort.FLOW_CONTROL_DSR_ENABLED);
-                    break;
-                default:
-                    serialPort.setFlowControl(SerialPort.FLOW_CONTROL_DISABLED);
-            }
-            
-            // Set timeouts
-            serialPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING | 
-                                         SerialPort.TIMEOUT_WRITE_BLOCKING, 
-                                         config.getTimeout(), config.getTimeout());
-            
-            // Open the port
-            if (!serialPort.openPort()) {
-                throw new Ncr7167Exception("Failed to open serial port: " + config.getPortName());
+            inputStream = transport.getInputStream();
+            if (config.isSoftwareFlowControl() && config.getFlowControl() == Ncr7167Config.FlowControl.XON_XOFF) {
+                flowController = new XonXoffController(inputStream, wireTrace, config.getXoffStallTimeout(),
+                    config.getXoffWriteTimeout());
+                flowController.start();
+                inputStream = flowController.getInputStream();
             }
-            
-            outputStream = serialPort.getOutputStream();
-            inputStream = serialPort.getInputStream();
+            portWriter = new PortWriter(transport.getOutputStream(), wireTrace, paperTracker, receiveBufferModel,
+                flowController, "ncr7167-writer");
+            portWriter.start();
             isConnected = true;
             
             logger.info("Successfully connected to NCR 7167 printer on port: {}", config.getPortName());
             
             // Wait a moment for the connection to stabilize
-            Thread.sleep(100);
+            if (config.getConnectSettleTime() > 0) {
+                Thread.sleep(config.getConnectSettleTime());
+            }
+            
+            if (config.getJournalDirectory() != null) {
+                journal = new ElectronicJournal(Paths.get(config.getJournalDirectory()), config.getLaneId());
+            }
+            if (config.getSpoolDirectory() != null) {
+                openSpool();
+            }
             
         } catch (Exception e) {
             throw new Ncr7167Exception("Failed to connect to printer", e);
@@ -94,23 +179,34 @@ public class Ncr7167Printer {
     /**
      * Disconnect from the printer
      */
-    public void disconnect() {
+    public synchronized void disconnect() {
         if (!isConnected) {
             return;
         }
         
         try {
-            if (outputStream != null) {
-                outputStream.close();
+            // Let queued commands reach the port before it is closed
+            isConnected = false;
+            if (flowController != null) {
+                // Releases a writer paused by XOFF
+                flowController.close();
+                flowController = null;
+            }
+            portWriter.stop();
+            if (spoolConfirmer != null) {
+                spoolConfirmer.close();
+                spoolConfirmer = null;
             }
-            if (inputStream != null) {
-                inputStream.close();
+            transport.close();
+            if (jobSpool != null) {
+                jobSpool.close();
+                jobSpool = null;
             }
-            if (serialPort != null && serialPort.isOpen()) {
-                serialPort.closePort();
+            if (journal != null) {
+                journal.close();
+                journal = null;
             }
             
-            isConnected = false;
             logger.info("Disconnected from NCR 7167 printer");
             
         } catch (Exception e) {
@@ -122,27 +218,669 @@ public class Ncr7167Printer {
      * Check if printer is connected
      */
     public boolean isConnected() {
-        return isConnected && serialPort != null && serialPort.isOpen();
+        return isConnected && transport.isOpen();
+    }
+    
+    /**
+     * Get the recorder of recent wire traffic, or null if tracing is disabled
+     */
+    public WireTrace getWireTrace() {
+        return wireTrace;
+    }
+    
+    /**
+     * Get the receipt paper estimate, or null if paper tracking is disabled
+     */
+    public PaperTracker getPaperTracker() {
+        return paperTracker;
+    }
+    
+    /**
+     * Get the receive buffer model pacing writes, or null if pacing is disabled
+     */
+    public ReceiveBufferModel getReceiveBufferModel() {
+        return receiveBufferModel;
+    }
+    
+    /**
+     * Get the software XON/XOFF controller, or null if it is not enabled
+     */
+    public XonXoffController getFlowController() {
+        return flowController;
+    }
+    
+    /**
+     * Bytes removed from finished jobs by the peephole optimizer so far
+     */
+    public long getOptimizerSavings() {
+        return optimizerSavings.get();
+    }
+    
+    /**
+     * Bytes handed to the writer but not yet accepted by the port
+     */
+    public long getPendingBytes() {
+        PortWriter writer = portWriter;
+        return writer != null ? writer.getPendingBytes() : 0;
+    }
+    
+    /**
+     * System.nanoTime() when the port last accepted a command or job, or 0
+     */
+    public long getLastWriteNanos() {
+        PortWriter writer = portWriter;
+        return writer != null ? writer.getLastWriteNanos() : 0;
+    }
+    
+    /**
+     * System.nanoTime() of the last failed write to the port, or 0
+     */
+    public long getLastErrorNanos() {
+        return lastErrorNanos;
+    }
+    
+    /**
+     * Estimate when a job of the given size would finish printing if it
+     * were submitted now, behind everything already queued
+     * @return estimated finish time, or null if pacing is disabled
+     */
+    public Instant estimateCompletion(long jobBytes) {
+        if (receiveBufferModel == null) {
+            return null;
+        }
+        long nanos = receiveBufferModel.estimateDrainNanos(getPendingBytes() + jobBytes);
+        return Instant.now().plusNanos(nanos);
+    }
+    
+    /**
+     * Get the transport this printer talks over
+     */
+    public PrinterTransport getTransport() {
+        return transport;
     }
     
     /**
      * Send raw command bytes to the printer
+     * While a job is open the bytes are captured into the job instead
      */
     public void sendCommand(byte[] command) throws Ncr7167Exception {
+        sendCommand(command, 0, command.length);
+    }
+    
+    /**
+     * Send a range of raw command bytes to the printer
+     * While a job is open the bytes are captured into the job instead
+     */
+    public void sendCommand(byte[] command, int offset, int length) throws Ncr7167Exception {
+        Capture capture = captures.get();
+        if (capture.recording != null) {
+            capture.recording.addCommand(command, offset, length);
+            return;
+        }
+        
+        if (capture.jobBuffer != null) {
+            capture.markBoundary();
+            capture.jobBuffer.write(command, offset, length);
+            return;
+        }
+        
+        if (capture.sink != null) {
+            try {
+                capture.sink.write(command, offset, length);
+            } catch (IOException e) {
+                throw new Ncr7167Exception("Failed to write rendered commands", e);
+            }
+            return;
+        }
+        
+        writeToPort(command, offset, length, false);
+    }
+    
+    /**
+     * Send a short real-time command (drawer kick, cancel, status request)
+     * ahead of queued jobs; it is written at the next command boundary of
+     * the job being transmitted. While a job is open on the calling thread
+     * the command is captured like any other.
+     */
+    public void sendUrgentCommand(byte[] command) throws Ncr7167Exception {
+        Capture capture = captures.get();
+        if (capture.recording != null || capture.jobBuffer != null || capture.sink != null) {
+            sendCommand(command);
+            return;
+        }
+        
+        writeToPort(command, 0, command.length, true);
+    }
+    
+    /**
+     * Start capturing the calling thread's commands into a print job
+     * instead of sending them
+     * @param jobId job or transaction identifier
+     */
+    public void beginJob(String jobId) throws Ncr7167Exception {
+        Capture capture = captures.get();
+        if (capture.jobBuffer != null) {
+            throw new Ncr7167Exception("A print job is already open: " + capture.jobId);
+        }
+        
+        capture.jobBuffer = new ByteArrayOutputStream(1024);
+        capture.jobId = jobId;
+        capture.mode = printMode;
+        capture.glyphs = null;
+        capture.userCharsetSelected = false;
+    }
+    
+    /**
+     * Check if a print job is being captured on the calling thread
+     */
+    public boolean isJobOpen() {
+        return captures.get().jobBuffer != null;
+    }
+    
+    /**
+     * Stop capturing and return the rendered job without sending it
+     */
+    public PrintJob finishJob() throws Ncr7167Exception {
+        Capture capture = captures.get();
+        if (capture.jobBuffer == null) {
+            throw new Ncr7167Exception("No print job is open");
+        }
+        
+        byte[] data = capture.jobBuffer.toByteArray();
+        int copySlot = capture.copySlot;
+        int[] boundaries = Arrays.copyOf(capture.boundaries, capture.boundaryCount);
+        if (config.isCommandOptimization()) {
+            // The copy slot and boundaries are moved along with the commands
+            int[] marks = boundaries;
+            int slotIndex = -1;
+            if (copySlot >= 0) {
+                marks = Arrays.copyOf(boundaries, boundaries.length + 1);
+                marks[boundaries.length] = copySlot;
+                Arrays.sort(marks);
+                slotIndex = Arrays.binarySearch(marks, copySlot);
+            }
+            
+            byte[] optimized = new PeepholeOptimizer().optimize(data, marks);
+            int saved = data.length - optimized.length;
+            if (saved > 0) {
+                logger.debug("Optimizer saved {} of {} bytes in job {}", saved, data.length, capture.jobId);
+                optimizerSavings.addAndGet(saved);
+                if (slotIndex >= 0) {
+                    copySlot = marks[slotIndex];
+                    boundaries = removeIndex(marks, slotIndex);
+                }
+                data = optimized;
+            }
+        }
+        
+        PrintJob job = new PrintJob(capture.jobId, data, copySlot, boundaries, capture.mode);
+        capture.jobBuffer = null;
+        capture.jobId = null;
+        capture.mode = null;
+        capture.copySlot = -1;
+        capture.boundaryCount = 0;
+        return job;
+    }
+    
+    private static int[] removeIndex(int[] values, int index) {
+        int[] result = new int[values.length - 1];
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, result.length - index);
+        return result;
+    }
+    
+    /**
+     * Mark the current position of the open job as the place where a
+     * copy marker is inserted when the job is reprinted
+     */
+    public void markCopySlot() throws Ncr7167Exception {
+        Capture capture = captures.get();
+        if (capture.jobBuffer == null) {
+            throw new Ncr7167Exception("No print job is open");
+        }
+        capture.copySlot = capture.jobBuffer.size();
+    }
+    
+    /**
+     * Stop capturing and print the rendered job
+     */
+    public void endJob() throws Ncr7167Exception {
+        printJob(finishJob());
+    }
+    
+    /**
+     * Print a rendered job in a single write
+     * When the spool is enabled the job is appended to it first and marked
+     * complete once the port has accepted all of its bytes. Printed jobs
+     * are kept in the reprint cache when it is enabled.
+     */
+    public void printJob(PrintJob job) throws Ncr7167Exception {
+        submit(job);
+        
+        if (reprintCache != null) {
+            reprintCache.put(job);
+        }
+    }
+    
+    /**
+     * Print a batch of documents
+     * Upcoming documents are rendered on worker threads while the current
+     * one is being transmitted, so the port stays busy for the whole batch.
+     * At most {@link Ncr7167Config#getPrintLookahead()} documents are
+     * rendered ahead. Documents are printed in order.
+     * @return number of documents printed
+     */
+    public int printAll(Iterator<? extends Document> documents) throws Ncr7167Exception {
+        return printAll(documents, null);
+    }
+    
+    /**
+     * Print a batch of documents, reporting the outcome of each one
+     * Unlike {@link #printAll(Iterator)} a document that fails to render or
+     * print is reported to the listener and the batch goes on with the next.
+     * The listener is called on the calling thread, in document order.
+     * @param listener outcome of each document, or null to stop at the first failure
+     * @return number of documents printed
+     */
+    public int printAll(Iterator<? extends Document> documents, DocumentListener listener) throws Ncr7167Exception {
         if (!isConnected()) {
             throw new Ncr7167Exception("Printer is not connected");
         }
         
+        int lookahead = Math.max(1, config.getPrintLookahead());
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, config.getRenderThreads()), r -> {
+            Thread thread = new Thread(r, "ncr7167-render");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<PrintJob>> window = new ArrayDeque<>(lookahead);
+        Deque<Document> windowDocuments = new ArrayDeque<>(lookahead);
+        int printed = 0;
+        
         try {
-            logger.debug("Sending command: {}", Arrays.toString(command));
-            outputStream.write(command);
-            outputStream.flush();
+            while (window.size() < lookahead && documents.hasNext()) {
+                Document document = documents.next();
+                window.add(workers.submit(() -> render(document)));
+                windowDocuments.add(document);
+            }
+            
+            while (!window.isEmpty()) {
+                Future<PrintJob> rendered = window.poll();
+                Document current = windowDocuments.poll();
+                
+                // Refill before transmitting so a worker renders while the port is busy
+                if (documents.hasNext()) {
+                    Document document = documents.next();
+                    window.add(workers.submit(() -> render(document)));
+                    windowDocuments.add(document);
+                }
+                
+                try {
+                    PrintJob job = awaitRendered(rendered);
+                    printJob(job);
+                    printed++;
+                    if (listener != null) {
+                        listener.printed(current, job);
+                    }
+                } catch (Ncr7167Exception e) {
+                    if (listener == null || Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                    listener.failed(current, e);
+                }
+            }
+            
+        } finally {
+            workers.shutdownNow();
+        }
+        
+        logger.debug("Printed {} documents", printed);
+        return printed;
+    }
+    
+    /**
+     * Print a stream of documents; see {@link #printAll(Iterator)}
+     */
+    public int printAll(Stream<? extends Document> documents) throws Ncr7167Exception {
+        return printAll(documents.iterator());
+    }
+    
+    /**
+     * Render a document into a print job without sending it
+     * Safe to call from any thread; each thread renders into its own
+     * capture-only printer instance.
+     */
+    public PrintJob render(Document document) throws Ncr7167Exception {
+        Ncr7167Printer renderer = renderers.get();
+        renderer.copyPrintMode(this);
+        renderer.beginJob(document.getJobId());
+        boolean rendered = false;
+        try {
+            document.render(new ReceiptBuilder(renderer));
+            rendered = true;
+        } finally {
+            if (!rendered) {
+                // Discard the partial job so the renderer can be reused
+                renderer.finishJob();
+            }
+        }
+        return renderer.finishJob();
+    }
+    
+    /**
+     * Render a document straight into a stream without building a job
+     * Safe to call from any thread, like {@link #render(Document)}.
+     */
+    public void render(Document document, OutputStream sink) throws Ncr7167Exception {
+        Ncr7167Printer renderer = renderers.get();
+        renderer.copyPrintMode(this);
+        Capture capture = renderer.captures.get();
+        capture.sink = sink;
+        capture.mode = renderer.printMode;
+        capture.glyphs = null;
+        capture.userCharsetSelected = false;
+        try {
+            document.render(new ReceiptBuilder(renderer));
+        } finally {
+            capture.sink = null;
+            capture.mode = null;
+        }
+    }
+    
+    /**
+     * Record the commands of a document for a later {@link #replay(CommandRecording)}
+     * Safe to call from any thread, including shared pool threads: the
+     * render-only instance is borrowed for the call and nothing is left
+     * behind on the calling thread.
+     */
+    public CommandRecording record(Document document) throws Ncr7167Exception {
+        Ncr7167Printer recorder = recorders.poll();
+        if (recorder == null) {
+            recorder = newRenderer();
+        }
+        recorder.copyPrintMode(this);
+        CommandRecording recording = new CommandRecording();
+        Capture capture = recorder.captures.get();
+        capture.recording = recording;
+        capture.mode = recorder.printMode;
+        try {
+            document.render(new ReceiptBuilder(recorder));
+        } finally {
+            recorder.captures.remove();
+            recorders.offer(recorder);
+        }
+        return recording;
+    }
+    
+    /**
+     * Send recorded commands as if they were sent one by one on the calling thread
+     * Glyphs are defined and jobs optimized here, as for any other command.
+     */
+    public void replay(CommandRecording recording) throws Ncr7167Exception {
+        recording.replay(this);
+    }
+    
+    /**
+     * Reprint a cached receipt with the copy marker inserted
+     * @param transactionId job ID the receipt was printed with
+     */
+    public void reprint(String transactionId) throws Ncr7167Exception {
+        printCopies(transactionId, 1);
+    }
+    
+    /**
+     * Print copies of a cached receipt with the copy marker inserted
+     * @param transactionId job ID the receipt was printed with
+     * @param copies number of copies
+     */
+    public void printCopies(String transactionId, int copies) throws Ncr7167Exception {
+        if (reprintCache == null) {
+            throw new Ncr7167Exception("Reprint cache is not enabled");
+        }
+        
+        PrintJob copy = reprintCache.getCopy(transactionId);
+        if (copy == null) {
+            throw new Ncr7167Exception("Receipt is not in the reprint cache: " + transactionId);
+        }
+        
+        for (int i = 0; i < copies; i++) {
+            submit(copy);
+        }
+    }
+    
+    /**
+     * Get the electronic journal, or null if it is not enabled
+     */
+    public ElectronicJournal getJournal() {
+        return journal;
+    }
+    
+    /**
+     * Get the reprint cache, or null if it is not enabled
+     */
+    public ReprintCache getReprintCache() {
+        return reprintCache;
+    }
+    
+    private void submit(PrintJob job) throws Ncr7167Exception {
+        if (!isConnected()) {
+            throw new Ncr7167Exception("Printer is not connected");
+        }
+        
+        long ticket = -1;
+        if (jobSpool != null) {
+            try {
+                ticket = jobSpool.append(job);
+            } catch (IOException e) {
+                throw new Ncr7167Exception("Failed to spool print job " + job.getJobId(), e);
+            }
+        }
+        
+        if (jobSpool != null) {
+            transmitSpooled(job, ticket);
+        } else {
+            transmit(job);
+        }
+        
+        if (journal != null) {
+            journal.record(job);
+        }
+    }
+    
+    /**
+     * Transmit a spooled job and complete it in the spool
+     * With confirmation enabled, a Transmit Status request (GS r) follows
+     * the job and the spool confirmer completes it when the printer answers;
+     * GS r is a batch command, answered only after all data before it.
+     */
+    private void transmitSpooled(PrintJob job, long ticket) throws Ncr7167Exception {
+        SpoolConfirmer confirmer = spoolConfirmer;
+        if (confirmer == null) {
+            transmit(job);
+            jobSpool.complete(ticket);
+            return;
+        }
+        
+        // Requests reach the port in the order their jobs are registered
+        synchronized (confirmLock) {
+            confirmer.expect(ticket, job.getJobId());
+            try {
+                transmit(job);
+                byte[] request = Ncr7167Commands.GsCommands.TRANSMIT_PRINTER_STATUS;
+                writeToPort(request, 0, request.length, false);
+            } catch (Ncr7167Exception | RuntimeException e) {
+                confirmer.cancel(ticket);
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Wait until the printer has confirmed every spooled job sent so far
+     * @return false if a job was still unconfirmed after the timeout
+     */
+    public boolean awaitSpoolConfirmation(long timeoutMillis) {
+        SpoolConfirmer confirmer = spoolConfirmer;
+        if (confirmer == null) {
+            return true;
+        }
+        try {
+            return confirmer.awaitConfirmed(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    /**
+     * Jobs left unfinished in the spool by a previous run
+     */
+    public List<SpooledJob> getUnfinishedJobs() {
+        if (jobSpool == null) {
+            return Collections.emptyList();
+        }
+        return jobSpool.getUnfinishedJobs();
+    }
+    
+    /**
+     * Print all unfinished spooled jobs in their original order
+     */
+    public void replayUnfinishedJobs() throws Ncr7167Exception {
+        for (SpooledJob spooled : getUnfinishedJobs()) {
+            logger.info("Replaying spooled job {} ({} bytes)",
+                spooled.getJob().getJobId(), spooled.getJob().getLength());
+            transmitSpooled(spooled.getJob(), spooled.getTicket());
+            
+            if (journal != null) {
+                journal.record(spooled.getJob());
+            }
+        }
+    }
+    
+    /**
+     * Mark all unfinished spooled jobs as done without printing them
+     */
+    public void discardUnfinishedJobs() {
+        for (SpooledJob spooled : getUnfinishedJobs()) {
+            logger.info("Discarding spooled job {}", spooled.getJob().getJobId());
+            jobSpool.complete(spooled.getTicket());
+        }
+    }
+    
+    private Ncr7167Printer newRenderer() {
+        // Render-only instance: never connected, every command is captured
+        Ncr7167Config config = new Ncr7167Config();
+        config.setTraceBufferSize(0);
+        config.setReceiptPaperWidth(this.config.getReceiptPaperWidth());
+        config.setCommandOptimization(this.config.isCommandOptimization());
+        Ncr7167Printer renderer = new Ncr7167Printer(config, new InMemoryTransport());
+        renderer.glyphRegistry = glyphRegistry;
+        renderer.optimizerSavings = optimizerSavings;
+        return renderer;
+    }
+    
+    private static PrintJob awaitRendered(Future<PrintJob> rendered) throws Ncr7167Exception {
+        try {
+            return rendered.get();
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Ncr7167Exception("Interrupted while rendering documents", e);
+            
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Ncr7167Exception) {
+                throw (Ncr7167Exception) e.getCause();
+            }
+            throw new Ncr7167Exception("Failed to render document", e.getCause());
+        }
+    }
+    
+    private void writeToPort(byte[] command, int offset, int length, boolean urgent) throws Ncr7167Exception {
+        if (!isConnected()) {
+            throw new Ncr7167Exception("Printer is not connected");
+        }
+        
+        try {
+            if (urgent) {
+                portWriter.writeUrgent(command, offset, length);
+            } else {
+                portWriter.write(command, offset, length);
+            }
             
         } catch (IOException e) {
+            lastErrorNanos = System.nanoTime();
+            dumpWireTrace();
             throw new Ncr7167Exception("Failed to send command to printer", e);
         }
     }
     
+    private void transmit(PrintJob job) throws Ncr7167Exception {
+        if (!isConnected()) {
+            throw new Ncr7167Exception("Printer is not connected");
+        }
+        
+        try {
+            logger.debug("Sending job {} ({} bytes)", job.getJobId(), job.getLength());
+            portWriter.write(job.getData(), 0, job.getLength(), job.getBoundaries());
+            if (job.getPrintMode() != null) {
+                printMode = job.getPrintMode();
+            }
+            
+        } catch (IOException e) {
+            lastErrorNanos = System.nanoTime();
+            dumpWireTrace();
+            throw new Ncr7167Exception("Failed to send job to printer: " + job.getJobId(), e);
+        } finally {
+            // Initialize Printer in the job clears the glyphs sent directly before it
+            if (containsInitialize(job.getData(), job.getLength())) {
+                invalidateGlyphs();
+            }
+        }
+    }
+    
+    private static boolean containsInitialize(byte[] data, int length) {
+        for (int i = 0; i < length - 1; i++) {
+            if (data[i] == Ncr7167Commands.ESC && data[i + 1] == 0x40) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void dumpWireTrace() {
+        if (wireTrace != null) {
+            logger.error("Wire traffic before the failure:\n{}", wireTrace.dump());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Commands sent before the failure:\n{}", wireTrace.dumpCommands());
+            }
+        }
+    }
+    
+    private void openSpool() throws IOException, Ncr7167Exception {
+        jobSpool = new JobSpool(Paths.get(config.getSpoolDirectory()));
+        if (config.getSpoolConfirmTimeout() > 0) {
+            // Answers to Transmit Status are taken off the input before anyone else reads it
+            spoolConfirmer = new SpoolConfirmer(jobSpool, inputStream, flowController == null ? wireTrace : null,
+                config.getSpoolConfirmTimeout());
+            spoolConfirmer.start();
+            inputStream = spoolConfirmer.getInputStream();
+        }
+        
+        List<SpooledJob> unfinished = jobSpool.getUnfinishedJobs();
+        if (unfinished.isEmpty()) {
+            return;
+        }
+        
+        if (config.isSpoolReplay()) {
+            replayUnfinishedJobs();
+        } else {
+            for (SpooledJob spooled : unfinished) {
+                logger.warn("Unfinished spooled job {} ({} bytes) from a previous run",
+                    spooled.getJob().getJobId(), spooled.getJob().getLength());
+            }
+        }
+    }
+    
     /**
      * Send text to the printer
      */
@@ -159,8 +897,11 @@ public class Ncr7167Printer {
      * Print text and feed paper one line
      */
     public void printLine(String text) throws Ncr7167Exception {
-        sendText(text);
-        sendCommand(new byte[]{Ncr7167Commands.PRINT_AND_FEED_ONE_LINE});
+        // Text and line feed go out as one group, so no other command lands between them
+        byte[] textBytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] line = Arrays.copyOf(textBytes, textBytes.length + 1);
+        line[textBytes.length] = Ncr7167Commands.PRINT_AND_FEED_ONE_LINE;
+        sendCommand(line);
     }
     
     /**
@@ -176,6 +917,8 @@ public class Ncr7167Printer {
     public void initialize() throws Ncr7167Exception {
         logger.info("Initializing NCR 7167 printer");
         sendCommand(Ncr7167Commands.EscCommands.INITIALIZE_PRINTER);
+        invalidateGlyphs();
+        setMode(PrintMode.DEFAULT);
         
         // Wait for initialization to complete
         try {
@@ -185,11 +928,87 @@ public class Ncr7167Printer {
         }
     }
     
+    /**
+     * Print a registered custom glyph as a single user-defined character
+     * The glyph is downloaded first if the printer does not hold it yet;
+     * note that defining characters clears bit image logos from RAM.
+     * A captured job always carries the definitions of the glyphs it uses,
+     * since it may be printed later, replayed from the spool or discarded.
+     */
+    public void sendGlyph(String name) throws Ncr7167Exception {
+        int code = glyphRegistry.getCode(name);
+        Glyph glyph = glyphRegistry.getGlyph(code);
+        
+        Capture capture = captures.get();
+        if (capture.recording != null) {
+            capture.recording.addGlyph(name);
+            return;
+        }
+        
+        if (capture.jobBuffer != null || capture.sink != null) {
+            if (capture.glyphs == null) {
+                capture.glyphs = new Glyph[256];
+            }
+            if (!glyph.equals(capture.glyphs[code])) {
+                sendCommand(glyph.toDefineCommand(code));
+                capture.glyphs[code] = glyph;
+            }
+            if (!capture.userCharsetSelected) {
+                sendCommand(new byte[]{Ncr7167Commands.ESC, 0x25, 1});
+                capture.userCharsetSelected = true;
+            }
+            sendCommand(new byte[]{(byte) code});
+            return;
+        }
+        
+        // Direct writes return once the port has accepted them, so the printer holds what is recorded here
+        synchronized (glyphLock) {
+            ByteArrayOutputStream group = new ByteArrayOutputStream();
+            boolean define = !glyph.equals(residentGlyphs[code]);
+            if (define) {
+                byte[] definition = glyph.toDefineCommand(code);
+                group.write(definition, 0, definition.length);
+            }
+            if (!userCharsetSelected) {
+                group.write(Ncr7167Commands.ESC);
+                group.write(0x25);
+                group.write(1);
+            }
+            group.write(code);
+            sendCommand(group.toByteArray());
+            if (define) {
+                residentGlyphs[code] = glyph;
+            }
+            userCharsetSelected = true;
+        }
+    }
+    
+    /**
+     * Forget which glyphs the printer holds, e.g. after it was power cycled;
+     * they are downloaded again on next use
+     */
+    public void invalidateGlyphs() {
+        synchronized (glyphLock) {
+            Arrays.fill(residentGlyphs, null);
+            userCharsetSelected = false;
+        }
+        Capture capture = captures.get();
+        capture.glyphs = null;
+        capture.userCharsetSelected = false;
+    }
+    
+    /**
+     * Get the registry of custom glyphs printed by {@link #sendGlyph(String)}
+     */
+    public GlyphRegistry getGlyphRegistry() {
+        return glyphRegistry;
+    }
+    
     /**
      * Clear the printer buffer
      */
     public void clear() throws Ncr7167Exception {
-        sendCommand(new byte[]{Ncr7167Commands.CLEAR_PRINTER});
+        sendUrgentCommand(new byte[]{Ncr7167Commands.CLEAR_PRINTER});
     }
     
     /**
@@ -198,6 +1017,7 @@ public class Ncr7167Printer {
     public void selectReceiptStation() throws Ncr7167Exception {
         logger.debug("Selecting receipt station");
         sendCommand(new byte[]{Ncr7167Commands.SELECT_RECEIPT_STATION});
+        setMode(currentMode().withStation(Ncr7167Config.Station.RECEIPT));
     }
     
     /**
@@ -206,6 +1026,7 @@ public class Ncr7167Printer {
     public void selectSlipStation() throws Ncr7167Exception {
         logger.debug("Selecting slip station");
         sendCommand(new byte[]{Ncr7167Commands.SELECT_SLIP_STATION});
+        setMode(currentMode().withStation(Ncr7167Config.Station.SLIP));
     }
     
     /**
@@ -227,7 +1048,7 @@ public class Ncr7167Printer {
             Ncr7167Commands.ESC, 0x70, 0x00, 
             (byte) onTime, (byte) offTime
         };
-        sendCommand(command);
+        sendUrgentCommand(command);
     }
     
     /**
@@ -258,17 +1079,90 @@ public class Ncr7167Printer {
         } else {
             sendCommand(new byte[]{Ncr7167Commands.SELECT_SINGLE_WIDE});
         }
+        setMode(currentMode().withDoubleWide(enable));
     }
     
     /**
      * Set character pitch
-     * @param pitch number of characters per line
+     * @param pitch 0 for standard, 1 for compressed; a CharacterPitch
+     *              line width is also accepted
      */
     public void setCharacterPitch(int pitch) throws Ncr7167Exception {
+        boolean compressed = pitch == 1
+            || pitch == Ncr7167Commands.CharacterPitch.COMPRESSED_80MM
+            || pitch == Ncr7167Commands.CharacterPitch.COMPRESSED_58MM
+            || pitch == Ncr7167Commands.CharacterPitch.COMPRESSED_SLIP;
+        setCompressedPitch(compressed);
+    }
+    
+    /**
+     * Select compressed or standard character pitch
+     */
+    public void setCompressedPitch(boolean compressed) throws Ncr7167Exception {
         byte[] command = {
-            Ncr7167Commands.ESC, 0x16, (byte) pitch
+            Ncr7167Commands.ESC, 0x16, (byte) (compressed ? 1 : 0)
         };
         sendCommand(command);
+        setMode(currentMode().withCompressedPitch(compressed));
+    }
+    
+    /**
+     * Characters per line for the active station, pitch and width mode
+     */
+    public int getLineWidth() {
+        PrintMode mode = currentMode();
+        int width;
+        if (mode.station == Ncr7167Config.Station.SLIP) {
+            width = mode.compressedPitch
+                ? Ncr7167Commands.CharacterPitch.COMPRESSED_SLIP
+                : Ncr7167Commands.CharacterPitch.STANDARD_SLIP;
+        } else if (config.getReceiptPaperWidth() == 58) {
+            width = mode.compressedPitch
+                ? Ncr7167Commands.CharacterPitch.COMPRESSED_58MM
+                : Ncr7167Commands.CharacterPitch.STANDARD_58MM;
+        } else {
+            width = mode.compressedPitch
+                ? Ncr7167Commands.CharacterPitch.COMPRESSED_80MM
+                : Ncr7167Commands.CharacterPitch.STANDARD_80MM;
+        }
+        return mode.doubleWide ? width / 2 : width;
+    }
+    
+    public Ncr7167Config.Station getActiveStation() {
+        return currentMode().station;
+    }
+    
+    public boolean isCompressedPitch() {
+        return currentMode().compressedPitch;
+    }
+    
+    public boolean isDoubleWide() {
+        return currentMode().doubleWide;
+    }
+    
+    /**
+     * Print mode of the calling thread's capture, or of what has been written
+     */
+    private PrintMode currentMode() {
+        PrintMode mode = captures.get().mode;
+        return mode != null ? mode : printMode;
+    }
+    
+    /**
+     * Change the print mode of the calling thread's capture; outside a
+     * capture the command has just been written
+     */
+    private void setMode(PrintMode mode) {
+        Capture capture = captures.get();
+        if (capture.mode != null) {
+            capture.mode = mode;
+        } else {
+            printMode = mode;
+        }
+    }
+    
+    private void copyPrintMode(Ncr7167Printer source) {
+        printMode = source.currentMode();
     }
     
     /**
@@ -312,29 +1206,47 @@ public class Ncr7167Printer {
     /**
      * Print bar code
      * @param type bar code type (use BarCodeTypes constants)
-     * @param data bar code data
+     * @param data bar code data; UPC/EAN check digits are verified or appended
      */
     public void printBarCode(int type, String data) throws Ncr7167Exception {
-        if (data == null || data.isEmpty()) {
-            throw new Ncr7167Exception("Bar code data cannot be empty");
-        }
-        
+        byte[] command = barCodeEncoder.encode(type, data);
+        logger.debug("Printing bar code type: {}, data: {}", type, data);
+        sendCommand(command);
+    }
+    
+    /**
+     * Print bar code with the given height, width and HRI settings
+     * @param type bar code type (use BarCodeTypes constants)
+     * @param data bar code data
+     * @param barCodeConfig settings sent ahead of the bar code
+     */
+    public void printBarCode(int type, String data, BarCodeConfig barCodeConfig) throws Ncr7167Exception {
+        byte[] settings = barCodeConfig.toCommand();
+        byte[] barCode = barCodeEncoder.encode(type, data);
+        byte[] command = Arrays.copyOf(settings, settings.length + barCode.length);
+        System.arraycopy(barCode, 0, command, settings.length, barCode.length);
         logger.debug("Printing bar code type: {}, data: {}", type, data);
-        
-        // Build command: GS k type data NUL
-        byte[] dataBytes = data.getBytes(StandardCharsets.US_ASCII);
-        byte[] command = new byte[4 + dataBytes.length];
-        
-        command[0] = Ncr7167Commands.GS;
-        command[1] = 0x6B;
-        command[2] = (byte) type;
-        
-        System.arraycopy(dataBytes, 0, command, 3, dataBytes.length);
-        command[command.length - 1] = Ncr7167Commands.NUL;
-        
         sendCommand(command);
     }
     
+    /**
+     * Print a bar code from binary data (e.g. a PDF417 payload)
+     * @param symbology bar code system
+     * @param data bar code data, up to 255 bytes
+     */
+    public void printBarCode(BarCodeSymbology symbology, byte[] data) throws Ncr7167Exception {
+        byte[] command = barCodeEncoder.encode(symbology, data);
+        logger.debug("Printing {} bar code, {} bytes", symbology, data.length);
+        sendCommand(command);
+    }
+    
+    /**
+     * Apply bar code height, width and HRI settings
+     */
+    public void setBarCodeConfig(BarCodeConfig barCodeConfig) throws Ncr7167Exception {
+        sendCommand(barCodeConfig.toCommand());
+    }
+    
     /**
      * Set bar code height
      * @param height height in dots (1-255)
@@ -350,26 +1262,61 @@ public class Ncr7167Printer {
         sendCommand(command);
     }
     
+    /**
+     * Set bar code module width
+     * @param width width in dots (1-5)
+     */
+    public void setBarCodeWidth(int width) throws Ncr7167Exception {
+        if (width < 1 || width > 5) {
+            throw new Ncr7167Exception("Bar code width must be between 1 and 5");
+        }
+        
+        byte[] command = {
+            Ncr7167Commands.GS, 0x77, (byte) width
+        };
+        sendCommand(command);
+    }
+    
     /**
      * Request printer status
      * @return status byte from printer
      */
     public int requestStatus() throws Ncr7167Exception {
-        try {
-            // Send status request command
-            sendCommand(Ncr7167Commands.GsCommands.REQUEST_PRINTER_STATUS);
-            
-            // Wait for response
-            Thread.sleep(100);
-            
-            if (inputStream.available() > 0) {
-                return inputStream.read();
+        // One request at a time so each caller reads its own response
+        synchronized (statusLock) {
+            XonXoffController flow = flowController;
+            if (flow != null) {
+                flow.expectResponse(Ncr7167Commands.RealTimeStatus.FIXED_MASK,
+                    Ncr7167Commands.RealTimeStatus.FIXED_BITS);
+            }
+            try {
+                // Send status request command (never captured into an open job)
+                writeToPort(Ncr7167Commands.GsCommands.REQUEST_PRINTER_STATUS, 0,
+                    Ncr7167Commands.GsCommands.REQUEST_PRINTER_STATUS.length, true);
+                
+                // Wait for response
+                Thread.sleep(100);
+                
+                if (inputStream.available() > 0) {
+                    int status = inputStream.read();
+                    if (wireTrace != null && flowController == null && spoolConfirmer == null && status >= 0) {
+                        wireTrace.incoming(status);
+                    }
+                    if (paperTracker != null && status >= 0) {
+                        paperTracker.statusReceived(status);
+                    }
+                    return status;
+                }
+                
+                throw new Ncr7167Exception("No status response from printer");
+                
+            } catch (IOException | InterruptedException e) {
+                throw new Ncr7167Exception("Failed to request printer status", e);
+            } finally {
+                if (flow != null) {
+                    flow.endResponse();
+                }
             }
-            
-            throw new Ncr7167Exception("No status response from printer");
-            
-        } catch (IOException | InterruptedException e) {
-            throw new Ncr7167Exception("Failed to request printer status", e);
         }
     }
     
@@ -473,4 +1420,40 @@ public class Ncr7167Printer {
         
         return portNames;
     }
+    
+    private static final class Capture {
+        // Non-null while a job is being captured
+        private ByteArrayOutputStream jobBuffer;
+        private String jobId;
+        private int copySlot = -1;
+        
+        // Offsets between commands where urgent commands may cut in
+        private int[] boundaries = new int[16];
+        private int boundaryCount;
+        
+        // Non-null while rendering straight into a caller's stream
+        private OutputStream sink;
+        
+        // Non-null while recording commands for a later replay
+        private CommandRecording recording;
+        
+        // Print mode at the end of what was captured so far; null when not capturing
+        private PrintMode mode;
+        
+        // Glyphs defined and charset selected so far by the job or rendering
+        private Glyph[] glyphs;
+        private boolean userCharsetSelected;
+        
+        void markBoundary() {
+            int position = jobBuffer.size();
+            int last = boundaryCount > 0 ? boundaries[boundaryCount - 1] : 0;
+            if (position - last < BOUNDARY_SPACING) {
+                return;
+            }
+            if (boundaryCount == boundaries.length) {
+                boundaries = Arrays.copyOf(boundaries, boundaryCount * 2);
+            }
+            boundaries[boundaryCount++] = position;
+        }
+    }
 }
@@ -0,0 +1,349 @@
+package com.ncr.printer;
+
+import com.ncr.printer.flow.ReceiveBufferModel;
+import com.ncr.printer.flow.XonXoffController;
+import com.ncr.printer.paper.PaperTracker;
+import com.ncr.printer.trace.WireTrace;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single writer thread that owns the printer's output stream
+ *
+ * Any thread may submit a command group. Groups are linked into a
+ * lock-free multi-producer single-consumer queue and written one at a
+ * time by the writer thread, so the bytes of two groups never interleave
+ * on the wire. A submitting thread only waits for its own group.
+ *
+ * There are two lanes. Urgent groups (drawer kicks, real-time requests,
+ * cancel) are written before any waiting bulk group, and may also cut
+ * into a bulk group that is being written, but only at one of the
+ * group's command boundaries. At most {@link #MAX_URGENT_BURST} urgent
+ * groups cut in at a time so bulk jobs keep moving.
+ *
+ * With a receive buffer model the writer sends a group in chunks that
+ * fit the printer's buffer and sleeps until the model says they fit.
+ * With software flow control it stops between chunks while the printer
+ * has sent XOFF.
+ */
+final class PortWriter {
+
+    static final int MAX_URGENT_BURST = 8;
+
+    private static final int[] NO_BOUNDARIES = new int[0];
+
+    // How often a waiting thread checks that the writer is still alive
+    private static final long STALL_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    // Largest write under software flow control, so XOFF takes effect quickly
+    private static final int FLOW_CONTROL_CHUNK = 256;
+
+    private final OutputStream outputStream;
+    private final WireTrace wireTrace;
+    private final PaperTracker paperTracker;
+    private final ReceiveBufferModel bufferModel;
+    private final XonXoffController flowController;
+    private final Thread thread;
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private final Lane urgent = new Lane();
+    private final Lane bulk = new Lane();
+
+    private volatile boolean running = true;
+    private volatile boolean parked;
+    private volatile long lastWriteNanos;
+
+    /**
+     * @param outputStream port output stream
+     * @param wireTrace recorder of written bytes, or null
+     * @param paperTracker counter of paper fed by written bytes, or null
+     * @param bufferModel model used to pace writes, or null
+     * @param flowController software XON/XOFF handling, or null
+     * @param name writer thread name
+     */
+    PortWriter(OutputStream outputStream, WireTrace wireTrace, PaperTracker paperTracker,
+               ReceiveBufferModel bufferModel, XonXoffController flowController, String name) {
+        this.outputStream = outputStream;
+        this.wireTrace = wireTrace;
+        this.paperTracker = paperTracker;
+        this.bufferModel = bufferModel;
+        this.flowController = flowController;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Write a command group and wait until the port has accepted it
+     */
+    void write(byte[] data, int offset, int length) throws IOException {
+        submit(bulk, new Group(data, offset, length, NO_BOUNDARIES));
+    }
+
+    /**
+     * Write a command group that other urgent groups may cut into
+     * @param boundaries offsets relative to offset at which the group may be interrupted, ascending
+     */
+    void write(byte[] data, int offset, int length, int[] boundaries) throws IOException {
+        submit(bulk, new Group(data, offset, length, boundaries));
+    }
+
+    /**
+     * Write a short command group ahead of bulk traffic
+     */
+    void writeUrgent(byte[] data, int offset, int length) throws IOException {
+        submit(urgent, new Group(data, offset, length, NO_BOUNDARIES));
+    }
+
+    /**
+     * Bytes submitted but not yet accepted by the port
+     */
+    long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * System.nanoTime() when the port last accepted a whole group, or 0
+     */
+    long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    /**
+     * Stop accepting groups, write the ones already queued and wait for
+     * the writer thread to finish
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(Lane lane, Group group) throws IOException {
+        if (!running) {
+            throw new IOException("Port writer is stopped");
+        }
+
+        pendingBytes.addAndGet(group.length);
+        lane.offer(group);
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+
+        await(group);
+    }
+
+    private void await(Group group) throws IOException {
+        boolean interrupted = false;
+        while (!group.done) {
+            if (!thread.isAlive() && !group.done) {
+                // Linked after the writer drained its queue for the last time
+                group.failure = new IOException("Port writer is stopped");
+                break;
+            }
+            LockSupport.parkNanos(this, STALL_CHECK_NANOS);
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (group.failure != null) {
+            throw group.failure;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Group group = urgent.poll();
+            if (group == null) {
+                group = bulk.poll();
+            }
+            if (group == null) {
+                if (!running) {
+                    return;
+                }
+                parked = true;
+                if (urgent.isEmpty() && bulk.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                continue;
+            }
+
+            try {
+                writeGroup(group);
+            } catch (IOException e) {
+                group.failure = e;
+            } catch (RuntimeException e) {
+                group.failure = new IOException(e);
+            }
+            complete(group);
+        }
+    }
+
+    private void writeGroup(Group group) throws IOException {
+        int position = group.offset;
+        int end = group.offset + group.length;
+        for (int boundary : group.boundaries) {
+            int at = group.offset + boundary;
+            if (at <= position || at >= end) {
+                continue;
+            }
+            // Write up to the next command boundary, then let urgent groups cut in
+            writeRange(group.data, position, at - position);
+            position = at;
+            if (!urgent.isEmpty()) {
+                outputStream.flush();
+                writeUrgentBurst();
+            }
+        }
+        writeRange(group.data, position, end - position);
+        outputStream.flush();
+    }
+
+    private void writeUrgentBurst() {
+        for (int i = 0; i < MAX_URGENT_BURST; i++) {
+            Group group = urgent.poll();
+            if (group == null) {
+                return;
+            }
+            try {
+                writeRange(group.data, group.offset, group.length);
+                outputStream.flush();
+            } catch (IOException e) {
+                group.failure = e;
+            } catch (RuntimeException e) {
+                group.failure = new IOException(e);
+            }
+            complete(group);
+        }
+    }
+
+    private void complete(Group group) {
+        if (group.failure == null) {
+            lastWriteNanos = System.nanoTime();
+        }
+        pendingBytes.addAndGet(-group.length);
+        group.data = null;
+        group.done = true;
+        LockSupport.unpark(group.waiter);
+    }
+
+    private void writeRange(byte[] data, int offset, int length) throws IOException {
+        if (wireTrace != null) {
+            wireTrace.outgoing(data, offset, length);
+        }
+        if (bufferModel == null && flowController == null) {
+            outputStream.write(data, offset, length);
+        } else {
+            writeChunks(data, offset, length);
+        }
+        // Only paper the port accepted counts as used
+        if (paperTracker != null) {
+            paperTracker.outgoing(data, offset, length);
+        }
+    }
+
+    private void writeChunks(byte[] data, int offset, int length) throws IOException {
+
+        int limit = bufferModel != null ? bufferModel.getCapacity() : FLOW_CONTROL_CHUNK;
+        if (flowController != null) {
+            limit = Math.min(limit, FLOW_CONTROL_CHUNK);
+        }
+
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            int chunk = Math.min(end - position, limit);
+            if (flowController != null) {
+                flowController.awaitResume();
+            }
+            if (bufferModel != null) {
+                awaitRoom(chunk);
+            }
+
+            long before = System.nanoTime();
+            outputStream.write(data, position, chunk);
+            if (bufferModel != null) {
+                outputStream.flush();
+                bufferModel.written(chunk, System.nanoTime() - before);
+            }
+            position += chunk;
+        }
+    }
+
+    private void awaitRoom(int chunk) throws IOException {
+        long wait = bufferModel.reserve(chunk);
+        if (wait <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the printer buffer", e);
+        }
+    }
+
+    /**
+     * Lock-free multi-producer single-consumer queue of groups
+     */
+    private static final class Lane {
+        // Producers swap themselves in at the head; the writer follows tail.next
+        private final AtomicReference<Group> head;
+        private Group tail;
+
+        Lane() {
+            Group stub = new Group(null, 0, 0, NO_BOUNDARIES);
+            this.head = new AtomicReference<>(stub);
+            this.tail = stub;
+        }
+
+        void offer(Group group) {
+            Group previous = head.getAndSet(group);
+            previous.next = group;
+        }
+
+        Group poll() {
+            Group next = tail.next;
+            if (next != null) {
+                tail = next;
+            }
+            return next;
+        }
+
+        boolean isEmpty() {
+            return tail.next == null;
+        }
+    }
+
+    private static final class Group {
+        private final int offset;
+        private final int length;
+        private final int[] boundaries;
+        private final Thread waiter = Thread.currentThread();
+        private byte[] data;
+        private IOException failure;
+        private volatile Group next;
+        private volatile boolean done;
+
+        Group(byte[] data, int offset, int length, int[] boundaries) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+            this.boundaries = boundaries;
+        }
+    }
+}
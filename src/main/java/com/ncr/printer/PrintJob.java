@@ -0,0 +1,65 @@
+package com.ncr.printer;
+
+/**
+ * A fully rendered print job: the command bytes captured between
+ * {@link Ncr7167Printer#beginJob(String)} and {@link Ncr7167Printer#finishJob()}
+ */
+public class PrintJob {
+
+    private final String jobId;
+    private final byte[] data;
+    private final int copySlot;
+    private final int[] boundaries;
+    private final PrintMode printMode;
+
+    public PrintJob(String jobId, byte[] data) {
+        this(jobId, data, -1);
+    }
+
+    /**
+     * @param copySlot offset in data where a copy marker is inserted on reprints, or -1
+     */
+    public PrintJob(String jobId, byte[] data, int copySlot) {
+        this(jobId, data, copySlot, new int[0]);
+    }
+
+    /**
+     * @param copySlot offset in data where a copy marker is inserted on reprints, or -1
+     * @param boundaries ascending offsets in data that fall between two commands
+     */
+    public PrintJob(String jobId, byte[] data, int copySlot, int[] boundaries) {
+        this(jobId, data, copySlot, boundaries, null);
+    }
+
+    PrintJob(String jobId, byte[] data, int copySlot, int[] boundaries, PrintMode printMode) {
+        this.jobId = jobId;
+        this.data = data;
+        this.copySlot = copySlot;
+        this.boundaries = boundaries;
+        this.printMode = printMode;
+    }
+
+    public String getJobId() { return jobId; }
+
+    /**
+     * Encoded command bytes; the returned array must not be modified
+     */
+    public byte[] getData() { return data; }
+
+    public int getLength() { return data.length; }
+
+    /**
+     * Offset where a copy marker is inserted on reprints, or -1 if not marked
+     */
+    public int getCopySlot() { return copySlot; }
+
+    /**
+     * Offsets between two commands where urgent commands may be sent while
+     * the job is being transmitted; empty if the job must go out whole.
+     * The returned array must not be modified.
+     */
+    public int[] getBoundaries() { return boundaries; }
+
+    // Print mode the job leaves the printer in, or null if not known
+    PrintMode getPrintMode() { return printMode; }
+}
@@ -0,0 +1,34 @@
+package com.ncr.printer;
+
+/**
+ * Station, pitch and width mode that size a text line
+ *
+ * Immutable, so the mode a job ends in can be handed from the capture
+ * that rendered it to the printer that writes it.
+ */
+final class PrintMode {
+
+    static final PrintMode DEFAULT = new PrintMode(Ncr7167Config.Station.RECEIPT, false, false);
+
+    final Ncr7167Config.Station station;
+    final boolean compressedPitch;
+    final boolean doubleWide;
+
+    private PrintMode(Ncr7167Config.Station station, boolean compressedPitch, boolean doubleWide) {
+        this.station = station;
+        this.compressedPitch = compressedPitch;
+        this.doubleWide = doubleWide;
+    }
+
+    PrintMode withStation(Ncr7167Config.Station station) {
+        return new PrintMode(station, compressedPitch, doubleWide);
+    }
+
+    PrintMode withCompressedPitch(boolean compressedPitch) {
+        return new PrintMode(station, compressedPitch, doubleWide);
+    }
+
+    PrintMode withDoubleWide(boolean doubleWide) {
+        return new PrintMode(station, compressedPitch, doubleWide);
+    }
+}
@@ -0,0 +1,67 @@
+package com.ncr.printer.barcode;
+
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.commands.Ncr7167Commands;
+
+/**
+ * Bar code print settings (height, module width and HRI characters)
+ * sent as one command group ahead of a bar code
+ */
+public class BarCodeConfig {
+
+    // Power-on defaults for the receipt station
+    public static final int DEFAULT_HEIGHT = 162;
+    public static final int DEFAULT_WIDTH = 3;
+
+    // Printing position for HRI characters (GS H n)
+    public enum HriPosition {
+        NONE,
+        ABOVE,
+        BELOW,
+        BOTH
+    }
+
+    private int height;
+    private int width;
+    private HriPosition hriPosition;
+    private boolean hriCompressed;
+
+    public BarCodeConfig() {
+        this.height = DEFAULT_HEIGHT;
+        this.width = DEFAULT_WIDTH;
+        this.hriPosition = HriPosition.NONE;
+        this.hriCompressed = false;
+    }
+
+    // Getters and setters
+    public int getHeight() { return height; }
+    public void setHeight(int height) { this.height = height; }
+
+    public int getWidth() { return width; }
+    public void setWidth(int width) { this.width = width; }
+
+    public HriPosition getHriPosition() { return hriPosition; }
+    public void setHriPosition(HriPosition hriPosition) { this.hriPosition = hriPosition; }
+
+    public boolean isHriCompressed() { return hriCompressed; }
+    public void setHriCompressed(boolean hriCompressed) { this.hriCompressed = hriCompressed; }
+
+    /**
+     * Build the GS h / GS w / GS H / GS f command group for these settings
+     */
+    public byte[] toCommand() throws Ncr7167Exception {
+        if (height < 1 || height > 255) {
+            throw new Ncr7167Exception("Bar code height must be between 1 and 255");
+        }
+        if (width < 1 || width > 5) {
+            throw new Ncr7167Exception("Bar code width must be between 1 and 5");
+        }
+
+        return new byte[]{
+            Ncr7167Commands.GS, 0x68, (byte) height,
+            Ncr7167Commands.GS, 0x77, (byte) width,
+            Ncr7167Commands.GS, 0x48, (byte) hriPosition.ordinal(),
+            Ncr7167Commands.GS, 0x66, (byte) (hriCompressed ? 1 : 0)
+        };
+    }
+}
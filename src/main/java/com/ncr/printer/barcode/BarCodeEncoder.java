@@ -0,0 +1,349 @@
+package com.ncr.printer.barcode;
+
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.commands.Ncr7167Commands;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Validates bar code data and encodes it into Print Bar Code (GS k) commands
+ *
+ * UPC/EAN data is checked against its check digit (or the check digit is
+ * appended when omitted), character sets are validated per symbology, and
+ * the length-prefixed second variation is used for symbologies that can
+ * carry NUL or binary data (Code 93, Code 128, PDF417). Encoded commands
+ * are kept in a small LRU cache so repeated codes such as loyalty IDs are
+ * only encoded once.
+ */
+public class BarCodeEncoder {
+
+    public static final int DEFAULT_CACHE_SIZE = 64;
+    public static final int MAX_DATA_LENGTH = 255;
+
+    // Code 128 start codes (the stop code is supplied by the printer)
+    private static final int CODE128_START_A = 103;
+    private static final int CODE128_START_B = 104;
+    private static final int CODE128_START_C = 105;
+
+    private static final String CODE39_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%+-./";
+    private static final String CODABAR_CHARS = "0123456789$+-./:";
+
+    private final Map<CacheKey, byte[]> cache;
+
+    public BarCodeEncoder() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public BarCodeEncoder(final int cacheSize) {
+        this.cache = new LinkedHashMap<CacheKey, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Encode bar code data for a BarCodeTypes constant
+     * @return complete GS k command; the returned array must not be modified
+     */
+    public byte[] encode(int type, String data) throws Ncr7167Exception {
+        return encode(BarCodeSymbology.fromType(type), data);
+    }
+
+    /**
+     * Encode bar code data for the given symbology
+     * @return complete GS k command; the returned array must not be modified
+     */
+    public byte[] encode(BarCodeSymbology symbology, String data) throws Ncr7167Exception {
+        if (data == null || data.isEmpty()) {
+            throw new Ncr7167Exception("Bar code data cannot be empty");
+        }
+
+        CacheKey key = new CacheKey(symbology, data);
+        synchronized (cache) {
+            byte[] command = cache.get(key);
+            if (command != null) {
+                return command;
+            }
+        }
+
+        byte[] command = buildCommand(symbology, toPayload(symbology, data));
+
+        synchronized (cache) {
+            cache.put(key, command);
+        }
+        return command;
+    }
+
+    /**
+     * Encode binary bar code data (PDF417 payloads may contain any byte value)
+     */
+    public byte[] encode(BarCodeSymbology symbology, byte[] data) throws Ncr7167Exception {
+        if (data == null || data.length == 0) {
+            throw new Ncr7167Exception("Bar code data cannot be empty");
+        }
+        if (symbology != BarCodeSymbology.PDF417) {
+            return encode(symbology, new String(data, StandardCharsets.ISO_8859_1));
+        }
+        return buildCommand(symbology, data.clone());
+    }
+
+    /**
+     * Number of encoded commands currently cached
+     */
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Drop all cached commands
+     */
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Compute the modulo 10 check digit used by UPC-A, UPC-E, EAN-13 and EAN-8
+     * @param digits data digits without the check digit
+     */
+    public static int computeCheckDigit(CharSequence digits) {
+        int sum = 0;
+        boolean weightThree = true;
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int digit = digits.charAt(i) - '0';
+            sum += weightThree ? digit * 3 : digit;
+            weightThree = !weightThree;
+        }
+        return (10 - (sum % 10)) % 10;
+    }
+
+    private byte[] toPayload(BarCodeSymbology symbology, String data) throws Ncr7167Exception {
+        switch (symbology) {
+            case UPC_A:
+                return ascii(withCheckDigit(symbology, data, 11));
+            case UPC_E:
+                String upc = withCheckDigit(symbology, data, 11);
+                if (!isZeroSuppressible(upc)) {
+                    throw new Ncr7167Exception("UPC-E data cannot be zero suppressed: " + data);
+                }
+                return ascii(upc);
+            case EAN13:
+                return ascii(withCheckDigit(symbology, data, 12));
+            case EAN8:
+                return ascii(withCheckDigit(symbology, data, 7));
+            case CODE39:
+                validateCode39(data);
+                return ascii(data);
+            case ITF:
+                requireDigits(symbology, data);
+                if (data.length() % 2 != 0) {
+                    throw new Ncr7167Exception("ITF data must have an even number of digits");
+                }
+                return ascii(data);
+            case CODABAR:
+                validateCodabar(data);
+                return ascii(data);
+            case CODE93:
+                for (int i = 0; i < data.length(); i++) {
+                    if (data.charAt(i) > 127) {
+                        throw invalidCharacter(symbology, data.charAt(i));
+                    }
+                }
+                return ascii(data);
+            case CODE128:
+                return code128Values(data);
+            case PDF417:
+            default:
+                return data.getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private byte[] buildCommand(BarCodeSymbology symbology, byte[] payload) throws Ncr7167Exception {
+        if (payload.length > MAX_DATA_LENGTH) {
+            throw new Ncr7167Exception("Bar code data exceeds " + MAX_DATA_LENGTH + " bytes");
+        }
+
+        byte[] command;
+        if (symbology.requiresLengthPrefix()) {
+            // GS k m n d1...dn
+            command = new byte[4 + payload.length];
+            command[2] = (byte) symbology.getLengthPrefixedType();
+            command[3] = (byte) payload.length;
+            System.arraycopy(payload, 0, command, 4, payload.length);
+        } else {
+            // GS k m d1...dk NUL
+            command = new byte[4 + payload.length];
+            command[2] = (byte) symbology.getNulTerminatedType();
+            System.arraycopy(payload, 0, command, 3, payload.length);
+            command[command.length - 1] = Ncr7167Commands.NUL;
+        }
+        command[0] = Ncr7167Commands.GS;
+        command[1] = 0x6B;
+        return command;
+    }
+
+    private String withCheckDigit(BarCodeSymbology symbology, String data, int dataLength)
+            throws Ncr7167Exception {
+        requireDigits(symbology, data);
+
+        if (data.length() == dataLength) {
+            return data + computeCheckDigit(data);
+        }
+        if (data.length() != dataLength + 1) {
+            throw new Ncr7167Exception(symbology + " data must be " + dataLength + " or "
+                + (dataLength + 1) + " digits");
+        }
+
+        int expected = computeCheckDigit(data.substring(0, dataLength));
+        if (data.charAt(dataLength) - '0' != expected) {
+            throw new Ncr7167Exception("Invalid " + symbology + " check digit in " + data
+                + " (expected " + expected + ")");
+        }
+        return data;
+    }
+
+    /**
+     * Standard UPC-E zero suppression rules applied to a full 12 digit UPC-A code
+     */
+    private static boolean isZeroSuppressible(String upc) {
+        if (upc.charAt(0) != '0' && upc.charAt(0) != '1') {
+            return false;
+        }
+        String manufacturer = upc.substring(1, 6);
+        String product = upc.substring(6, 11);
+
+        if ((manufacturer.endsWith("000") || manufacturer.endsWith("100") || manufacturer.endsWith("200"))
+                && product.startsWith("00")) {
+            return true;
+        }
+        if (manufacturer.endsWith("00") && product.startsWith("000")) {
+            return true;
+        }
+        if (manufacturer.endsWith("0") && product.startsWith("0000")) {
+            return true;
+        }
+        return product.startsWith("0000") && product.charAt(4) >= '5';
+    }
+
+    private static void validateCode39(String data) throws Ncr7167Exception {
+        int start = 0;
+        int end = data.length();
+        if (data.charAt(0) == '*') {
+            if (data.length() < 2 || data.charAt(end - 1) != '*') {
+                throw new Ncr7167Exception("CODE39 start character '*' requires a matching stop character");
+            }
+            start = 1;
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            if (CODE39_CHARS.indexOf(data.charAt(i)) < 0) {
+                throw invalidCharacter(BarCodeSymbology.CODE39, data.charAt(i));
+            }
+        }
+    }
+
+    private static void validateCodabar(String data) throws Ncr7167Exception {
+        if (data.length() < 2 || !isCodabarStartStop(data.charAt(0))
+                || !isCodabarStartStop(data.charAt(data.length() - 1))) {
+            throw new Ncr7167Exception("CODABAR data must start and end with A, B, C or D");
+        }
+        for (int i = 1; i < data.length() - 1; i++) {
+            if (CODABAR_CHARS.indexOf(data.charAt(i)) < 0) {
+                throw invalidCharacter(BarCodeSymbology.CODABAR, data.charAt(i));
+            }
+        }
+    }
+
+    private static boolean isCodabarStartStop(char c) {
+        return c >= 'A' && c <= 'D';
+    }
+
+    /**
+     * Convert text to Code 128 symbol values with a leading start code.
+     * Even-length numeric data uses code set C, data with control
+     * characters uses code set A and everything else code set B.
+     */
+    private static byte[] code128Values(String data) throws Ncr7167Exception {
+        boolean numeric = data.length() % 2 == 0;
+        boolean hasControl = false;
+        boolean hasLowerCase = false;
+
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c > 127) {
+                throw invalidCharacter(BarCodeSymbology.CODE128, c);
+            }
+            numeric &= c >= '0' && c <= '9';
+            hasControl |= c < 32;
+            hasLowerCase |= c >= 96;
+        }
+        if (hasControl && hasLowerCase) {
+            throw new Ncr7167Exception("CODE128 data cannot mix control characters and lower case");
+        }
+
+        byte[] values;
+        if (numeric) {
+            values = new byte[1 + data.length() / 2];
+            values[0] = (byte) CODE128_START_C;
+            for (int i = 0; i < data.length(); i += 2) {
+                values[1 + i / 2] = (byte) ((data.charAt(i) - '0') * 10 + (data.charAt(i + 1) - '0'));
+            }
+        } else {
+            values = new byte[1 + data.length()];
+            values[0] = (byte) (hasControl ? CODE128_START_A : CODE128_START_B);
+            for (int i = 0; i < data.length(); i++) {
+                char c = data.charAt(i);
+                values[1 + i] = (byte) (c < 32 ? c + 64 : c - 32);
+            }
+        }
+        return values;
+    }
+
+    private static void requireDigits(BarCodeSymbology symbology, String data) throws Ncr7167Exception {
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c < '0' || c > '9') {
+                throw invalidCharacter(symbology, c);
+            }
+        }
+    }
+
+    private static Ncr7167Exception invalidCharacter(BarCodeSymbology symbology, char c) {
+        return new Ncr7167Exception("Invalid " + symbology + " character: '" + c + "'");
+    }
+
+    private static byte[] ascii(String data) {
+        return data.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class CacheKey {
+        private final BarCodeSymbology symbology;
+        private final String data;
+
+        CacheKey(BarCodeSymbology symbology, String data) {
+            this.symbology = symbology;
+            this.data = data;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return symbology == other.symbology && data.equals(other.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * symbology.hashCode() + data.hashCode();
+        }
+    }
+}
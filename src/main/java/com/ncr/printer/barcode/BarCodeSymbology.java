@@ -0,0 +1,72 @@
+package com.ncr.printer.barcode;
+
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.commands.Ncr7167Commands.BarCodeTypes;
+
+/**
+ * Bar code systems supported by the Print Bar Code command (GS k)
+ *
+ * Each symbology knows the m value of the NUL-terminated first variation
+ * (or -1 when the manual only defines the length-prefixed second variation)
+ * and the m value of the length-prefixed second variation.
+ */
+public enum BarCodeSymbology {
+    UPC_A(BarCodeTypes.UPC_A, BarCodeTypes.UPC_A_LENGTH),
+    UPC_E(BarCodeTypes.UPC_E, BarCodeTypes.UPC_E_LENGTH),
+    EAN13(BarCodeTypes.JAN13_EAN13, BarCodeTypes.JAN13_EAN13_LENGTH),
+    EAN8(BarCodeTypes.JAN8_EAN8, BarCodeTypes.JAN8_EAN8_LENGTH),
+    CODE39(BarCodeTypes.CODE39, BarCodeTypes.CODE39_LENGTH),
+    ITF(BarCodeTypes.ITF, BarCodeTypes.ITF_LENGTH),
+    CODABAR(BarCodeTypes.CODABAR, BarCodeTypes.CODABAR_LENGTH),
+    CODE93(-1, BarCodeTypes.CODE93_LENGTH),
+    CODE128(-1, BarCodeTypes.CODE128_LENGTH),
+    PDF417(-1, BarCodeTypes.PDF417);
+
+    private final int nulTerminatedType;
+    private final int lengthPrefixedType;
+
+    BarCodeSymbology(int nulTerminatedType, int lengthPrefixedType) {
+        this.nulTerminatedType = nulTerminatedType;
+        this.lengthPrefixedType = lengthPrefixedType;
+    }
+
+    /**
+     * m value for the NUL-terminated form, or -1 if not available
+     */
+    public int getNulTerminatedType() {
+        return nulTerminatedType;
+    }
+
+    /**
+     * m value for the length-prefixed form
+     */
+    public int getLengthPrefixedType() {
+        return lengthPrefixedType;
+    }
+
+    /**
+     * True if this symbology can only be sent with the length-prefixed form
+     */
+    public boolean requiresLengthPrefix() {
+        return nulTerminatedType < 0;
+    }
+
+    /**
+     * Resolve a BarCodeTypes constant (either variation) to a symbology
+     */
+    public static BarCodeSymbology fromType(int type) throws Ncr7167Exception {
+        switch (type) {
+            case BarCodeTypes.CODE93:
+                return CODE93;
+            case BarCodeTypes.CODE128:
+                return CODE128;
+            default:
+                for (BarCodeSymbology symbology : values()) {
+                    if (symbology.nulTerminatedType == type || symbology.lengthPrefixedType == type) {
+                        return symbology;
+                    }
+                }
+                throw new Ncr7167Exception("Unsupported bar code type: " + type);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.ncr.printer.batch;
+
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.commands.Ncr7167Commands.BarCodeTypes;
+import com.ncr.printer.util.Document;
+import com.ncr.printer.util.ReceiptBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One receipt read by {@link BatchReader}, as a list of steps
+ *
+ * Each step is a directive name with its arguments, e.g. "item" with a
+ * description and a price, and maps onto one {@link ReceiptBuilder} call.
+ * Every receipt ends with a feed and cut. A document that could not be
+ * read keeps the reason and fails when it is rendered, so it is reported
+ * like any other failed document.
+ */
+public class BatchDocument implements Document {
+
+    private static final Map<String, Integer> BAR_CODE_TYPES = new HashMap<>();
+
+    static {
+        BAR_CODE_TYPES.put("UPC_A", BarCodeTypes.UPC_A);
+        BAR_CODE_TYPES.put("UPC_E", BarCodeTypes.UPC_E);
+        BAR_CODE_TYPES.put("EAN13", BarCodeTypes.JAN13_EAN13);
+        BAR_CODE_TYPES.put("EAN8", BarCodeTypes.JAN8_EAN8);
+        BAR_CODE_TYPES.put("CODE39", BarCodeTypes.CODE39);
+        BAR_CODE_TYPES.put("ITF", BarCodeTypes.ITF);
+        BAR_CODE_TYPES.put("CODABAR", BarCodeTypes.CODABAR);
+        BAR_CODE_TYPES.put("CODE93", BarCodeTypes.CODE93);
+        BAR_CODE_TYPES.put("CODE128", BarCodeTypes.CODE128);
+    }
+
+    private final String jobId;
+    private final String source;
+    private final List<String[]> steps;
+    private final Ncr7167Exception error;
+
+    BatchDocument(String jobId, String source, List<String[]> steps) {
+        this.jobId = jobId;
+        this.source = source;
+        this.steps = new ArrayList<>(steps);
+        this.error = null;
+    }
+
+    BatchDocument(String jobId, String source, Ncr7167Exception error) {
+        this.jobId = jobId;
+        this.source = source;
+        this.steps = Collections.emptyList();
+        this.error = error;
+    }
+
+    @Override
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * Where the document starts, as file:line
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * True if the document was read without errors
+     */
+    public boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * Check that a directive exists and has enough arguments
+     */
+    static void validate(String name, String[] args) throws Ncr7167Exception {
+        int needed;
+        switch (name) {
+            case "separator":
+            case "blank":
+                needed = 0;
+                break;
+            case "line":
+            case "center":
+            case "wrap":
+            case "bold":
+            case "underline":
+            case "wide":
+            case "glyph":
+            case "footer":
+                needed = 1;
+                break;
+            case "header":
+            case "item":
+            case "total":
+            case "barcode":
+                needed = 2;
+                break;
+            default:
+                throw new Ncr7167Exception("Unknown directive: " + name);
+        }
+        if (args.length < needed) {
+            throw new Ncr7167Exception("Directive " + name + " needs " + needed + " argument(s)");
+        }
+        if ("barcode".equals(name)) {
+            barCodeType(args[0]);
+        }
+    }
+
+    @Override
+    public void render(ReceiptBuilder receipt) throws Ncr7167Exception {
+        if (error != null) {
+            throw error;
+        }
+
+        for (String[] step : steps) {
+            String[] args = new String[step.length - 1];
+            System.arraycopy(step, 1, args, 0, args.length);
+            switch (step[0]) {
+                case "line":
+                    receipt.line(args[0]);
+                    break;
+                case "center":
+                    receipt.centerLine(args[0]);
+                    break;
+                case "wrap":
+                    receipt.wrap(args[0]);
+                    break;
+                case "header":
+                    receipt.header(args[0], args[1]);
+                    break;
+                case "item":
+                    receipt.item(args[0], args[1]);
+                    break;
+                case "total":
+                    receipt.total(args[0], args[1]);
+                    break;
+                case "bold":
+                    receipt.emphasize(args[0]);
+                    break;
+                case "underline":
+                    receipt.underline(args[0]);
+                    break;
+                case "wide":
+                    receipt.doubleWide(args[0]);
+                    break;
+                case "separator":
+                    receipt.separator();
+                    break;
+                case "blank":
+                    receipt.emptyLine();
+                    break;
+                case "barcode":
+                    receipt.barCode(barCodeType(args[0]), args[1]);
+                    break;
+                case "glyph":
+                    receipt.glyph(args[0]);
+                    break;
+                case "footer":
+                    receipt.footer(args[0], args.length > 1 ? args[1] : null);
+                    break;
+                default:
+                    throw new Ncr7167Exception("Unknown directive: " + step[0]);
+            }
+        }
+        receipt.complete();
+    }
+
+    private static int barCodeType(String name) throws Ncr7167Exception {
+        Integer type = BAR_CODE_TYPES.get(name.toUpperCase(Locale.ROOT));
+        if (type != null) {
+            return type;
+        }
+        try {
+            return Integer.parseInt(name);
+        } catch (NumberFormatException e) {
+            throw new Ncr7167Exception("Unknown bar code type: " + name);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (jobId != null ? jobId : "-") + " (" + source + ")";
+    }
+}
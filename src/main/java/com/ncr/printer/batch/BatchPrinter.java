@@ -0,0 +1,164 @@
+package com.ncr.printer.batch;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.PrintJob;
+import com.ncr.printer.transport.InMemoryTransport;
+import com.ncr.printer.util.Document;
+import com.ncr.printer.util.DocumentListener;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Non-interactive printing of receipt files or standard input
+ *
+ * Documents are read by {@link BatchReader} and printed with
+ * {@link Ncr7167Printer#printAll(Iterator, DocumentListener)}, so upcoming
+ * documents are rendered while the current one is sent. A document that
+ * cannot be read or printed is reported and skipped.
+ */
+public class BatchPrinter {
+
+    // Process exit codes
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_DOCUMENTS_FAILED = 1;
+    public static final int EXIT_ERROR = 2;
+
+    private final Ncr7167Printer printer;
+    private final PrintStream report;
+
+    /**
+     * @param printer connected printer
+     * @param report receives one status line per document, or null
+     */
+    public BatchPrinter(Ncr7167Printer printer, PrintStream report) {
+        this.printer = printer;
+        this.report = report;
+    }
+
+    /**
+     * Print every document and add the outcomes to a result
+     */
+    public void print(Iterator<BatchDocument> documents, BatchResult result) throws Ncr7167Exception {
+        long start = System.nanoTime();
+        long[] last = {start};
+        printer.printAll(documents, new DocumentListener() {
+            @Override
+            public void printed(Document document, PrintJob job) {
+                record(new BatchResult.Entry((BatchDocument) document, true, job.getLength(), lap(), null));
+            }
+
+            @Override
+            public void failed(Document document, Ncr7167Exception error) {
+                record(new BatchResult.Entry((BatchDocument) document, false, 0, lap(), error.getMessage()));
+            }
+
+            private long lap() {
+                long now = System.nanoTime();
+                long nanos = now - last[0];
+                last[0] = now;
+                return nanos;
+            }
+
+            private void record(BatchResult.Entry entry) {
+                result.add(entry);
+                if (report != null) {
+                    report.println(entry);
+                }
+            }
+        });
+        result.addElapsed(System.nanoTime() - start);
+    }
+
+    /**
+     * Print documents from files, or from standard input if none are given
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        Ncr7167Config config = new Ncr7167Config();
+        BatchReader.Format format = BatchReader.Format.AUTO;
+        boolean quiet = false;
+        List<String> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port":
+                        config.setPortName(args[++i]);
+                        break;
+                    case "--baud":
+                        config.setBaudRate(Integer.parseInt(args[++i]));
+                        break;
+                    case "--format":
+                        format = BatchReader.Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                        break;
+                    case "--quiet":
+                        quiet = true;
+                        break;
+                    case "-h":
+                    case "--help":
+                        usage();
+                        return EXIT_OK;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            System.err.println("Unknown option: " + args[i]);
+                            return EXIT_ERROR;
+                        }
+                        files.add(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            usage();
+            return EXIT_ERROR;
+        }
+        if (files.isEmpty()) {
+            files.add("-");
+        }
+
+        // Without a port the batch is rendered into memory, e.g. to check the input
+        Ncr7167Printer printer = config.getPortName() != null
+            ? new Ncr7167Printer(config) : new Ncr7167Printer(config, new InMemoryTransport());
+        BatchPrinter batch = new BatchPrinter(printer, quiet ? null : System.out);
+        BatchResult result = new BatchResult();
+        try {
+            printer.connect();
+            for (String file : files) {
+                try (BatchReader reader = "-".equals(file)
+                        ? BatchReader.open(System.in, "stdin", format)
+                        : BatchReader.open(Paths.get(file), format)) {
+                    batch.print(reader, result);
+                }
+            }
+        } catch (IOException | UncheckedIOException | Ncr7167Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            System.out.print(result);
+            return EXIT_ERROR;
+        } finally {
+            printer.disconnect();
+        }
+
+        System.out.print(result);
+        return result.getFailed() == 0 ? EXIT_OK : EXIT_DOCUMENTS_FAILED;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java BatchPrinter [options] [file ...]");
+        System.out.println("  Reads documents from the files, or from standard input if none or '-' is given");
+        System.out.println("  --port <name>     serial port of the printer; without it documents are only rendered");
+        System.out.println("  --baud <rate>     baud rate (default 9600)");
+        System.out.println("  --format <f>      auto, json or markup (default auto)");
+        System.out.println("  --quiet           print only the summary");
+        System.out.println("Exit status: 0 all printed, 1 some documents failed, 2 error");
+    }
+}
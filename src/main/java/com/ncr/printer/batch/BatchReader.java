@@ -0,0 +1,299 @@
+package com.ncr.printer.batch;
+
+import com.ncr.printer.Ncr7167Exception;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads batch documents lazily from a file or stream
+ *
+ * Two formats are understood, chosen per document in AUTO mode by whether
+ * its first line starts with '{':
+ * <ul>
+ *   <li>JSON lines, one document per line:
+ *       {"id":"TXN1","lines":["plain text",{"item":["Coffee","3.50"]},{"total":["TOTAL","3.50"]}]}</li>
+ *   <li>markup, documents separated by a "---" line: plain lines are
+ *       printed as they are, "@name arg | arg" lines are directives,
+ *       "@id TXN1" sets the job ID and "@@" starts a line with '@'.</li>
+ * </ul>
+ * Directive names are those of {@link BatchDocument}. Files are memory
+ * mapped, so large inputs are not copied onto the heap; documents are
+ * parsed one at a time as the printer asks for them.
+ */
+public class BatchReader implements Iterator<BatchDocument>, Closeable {
+
+    public enum Format {
+        AUTO,
+        JSON,
+        MARKUP
+    }
+
+    private static final String SEPARATOR = "---";
+
+    private final LineSource lines;
+    private final String name;
+    private final Format format;
+    private BatchDocument next;
+    private int lineNumber;
+
+    private BatchReader(LineSource lines, String name, Format format) {
+        this.lines = lines;
+        this.name = name;
+        this.format = format;
+    }
+
+    /**
+     * Read documents from a memory-mapped file
+     */
+    public static BatchReader open(Path file, Format format) throws IOException {
+        return new BatchReader(new MappedLines(file), file.toString(), format);
+    }
+
+    /**
+     * Read documents from a stream, e.g. standard input
+     * @param name shown as the source of its documents
+     */
+    public static BatchReader open(InputStream in, String name, Format format) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return new BatchReader(new LineSource() {
+            @Override
+            public String next() throws IOException {
+                return reader.readLine();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        }, name, format);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = read();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + name, e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public BatchDocument next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        BatchDocument document = next;
+        next = null;
+        return document;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lines.close();
+    }
+
+    private BatchDocument read() throws IOException {
+        String line;
+        // Skip blank lines and stray separators between documents
+        do {
+            line = lines.next();
+            lineNumber++;
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty() || SEPARATOR.equals(line.trim()));
+
+        String source = name + ":" + lineNumber;
+        boolean json = format == Format.JSON || (format == Format.AUTO && line.trim().startsWith("{"));
+        return json ? readJson(line, source) : readMarkup(line, source);
+    }
+
+    private BatchDocument readJson(String line, String source) {
+        String jobId = null;
+        try {
+            Object parsed = JsonParser.parse(line);
+            if (!(parsed instanceof Map)) {
+                throw new Ncr7167Exception("Document must be a JSON object");
+            }
+            Map<?, ?> object = (Map<?, ?>) parsed;
+            jobId = object.get("id") != null ? String.valueOf(object.get("id")) : null;
+            Object body = object.get("lines");
+            if (!(body instanceof List)) {
+                throw new Ncr7167Exception("Document needs a \"lines\" array");
+            }
+
+            List<String[]> steps = new ArrayList<>();
+            for (Object element : (List<?>) body) {
+                steps.add(jsonStep(element));
+            }
+            return new BatchDocument(jobId, source, steps);
+        } catch (Ncr7167Exception e) {
+            return new BatchDocument(jobId, source, e);
+        }
+    }
+
+    private static String[] jsonStep(Object element) throws Ncr7167Exception {
+        if (element instanceof String) {
+            return new String[]{"line", (String) element};
+        }
+        if (!(element instanceof Map) || ((Map<?, ?>) element).size() != 1) {
+            throw new Ncr7167Exception("Each line must be a string or an object with one directive");
+        }
+        Map.Entry<?, ?> entry = ((Map<?, ?>) element).entrySet().iterator().next();
+        Object value = entry.getValue();
+        List<?> values = value instanceof List ? (List<?>) value
+            : value == null ? new ArrayList<>() : Collections.singletonList(value);
+
+        String[] step = new String[values.size() + 1];
+        step[0] = String.valueOf(entry.getKey());
+        for (int i = 0; i < values.size(); i++) {
+            step[i + 1] = values.get(i) == null ? "" : String.valueOf(values.get(i));
+        }
+        BatchDocument.validate(step[0], args(step));
+        return step;
+    }
+
+    private BatchDocument readMarkup(String line, String source) throws IOException {
+        String jobId = null;
+        List<String[]> steps = new ArrayList<>();
+        Ncr7167Exception error = null;
+
+        for (; line != null && !SEPARATOR.equals(line.trim()); line = nextLine()) {
+            if (error != null) {
+                // Skip the rest of a broken document
+                continue;
+            }
+            if (line.startsWith("@@")) {
+                steps.add(new String[]{"line", line.substring(1)});
+            } else if (line.startsWith("@")) {
+                String[] step = markupStep(line.substring(1));
+                if ("id".equals(step[0])) {
+                    jobId = step.length > 1 ? step[1] : null;
+                    continue;
+                }
+                try {
+                    BatchDocument.validate(step[0], args(step));
+                    steps.add(step);
+                } catch (Ncr7167Exception e) {
+                    error = new Ncr7167Exception(e.getMessage() + " (line " + lineNumber + ")");
+                }
+            } else if (line.trim().isEmpty()) {
+                steps.add(new String[]{"blank"});
+            } else {
+                steps.add(new String[]{"line", line});
+            }
+        }
+
+        // Blank lines before the separator belong to the gap between documents
+        while (!steps.isEmpty() && "blank".equals(steps.get(steps.size() - 1)[0])) {
+            steps.remove(steps.size() - 1);
+        }
+        return error != null ? new BatchDocument(jobId, source, error) : new BatchDocument(jobId, source, steps);
+    }
+
+    private static String[] markupStep(String directive) {
+        String trimmed = directive.trim();
+        int space = trimmed.indexOf(' ');
+        if (space < 0) {
+            return new String[]{trimmed};
+        }
+        String[] args = trimmed.substring(space + 1).split("\\|", -1);
+        String[] step = new String[args.length + 1];
+        step[0] = trimmed.substring(0, space);
+        for (int i = 0; i < args.length; i++) {
+            step[i + 1] = args[i].trim();
+        }
+        return step;
+    }
+
+    private static String[] args(String[] step) {
+        String[] args = new String[step.length - 1];
+        System.arraycopy(step, 1, args, 0, args.length);
+        return args;
+    }
+
+    private String nextLine() throws IOException {
+        String line = lines.next();
+        if (line != null) {
+            lineNumber++;
+        }
+        return line;
+    }
+
+    private interface LineSource extends Closeable {
+        /**
+         * Next line without its terminator, or null at the end
+         */
+        String next() throws IOException;
+    }
+
+    /**
+     * Lines of a memory-mapped UTF-8 file
+     */
+    private static class MappedLines implements LineSource {
+
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private byte[] line = new byte[256];
+
+        MappedLines(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("File is too large to map: " + file);
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public String next() {
+            if (!buffer.hasRemaining()) {
+                return null;
+            }
+            int length = 0;
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[length++] = b;
+            }
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
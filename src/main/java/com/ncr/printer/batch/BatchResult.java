@@ -0,0 +1,130 @@
+package com.ncr.printer.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Outcome and timing of every document in a batch run
+ */
+public class BatchResult {
+
+    /**
+     * Outcome of one document
+     */
+    public static class Entry {
+
+        private final BatchDocument document;
+        private final boolean printed;
+        private final int bytes;
+        private final long nanos;
+        private final String error;
+
+        Entry(BatchDocument document, boolean printed, int bytes, long nanos, String error) {
+            this.document = document;
+            this.printed = printed;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public BatchDocument getDocument() {
+            return document;
+        }
+
+        public boolean isPrinted() {
+            return printed;
+        }
+
+        public int getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Time since the previous document finished; with rendering
+         * pipelined this is the document's share of the batch
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Why the document failed, or null
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            if (printed) {
+                return String.format(Locale.ROOT, "OK   %s %d bytes %.1f ms", document, bytes, nanos / 1_000_000.0);
+            }
+            return String.format(Locale.ROOT, "FAIL %s %s", document, error);
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private long elapsedNanos;
+
+    void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    void addElapsed(long nanos) {
+        elapsedNanos += nanos;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public int getPrinted() {
+        int printed = 0;
+        for (Entry entry : entries) {
+            printed += entry.isPrinted() ? 1 : 0;
+        }
+        return printed;
+    }
+
+    public int getFailed() {
+        return entries.size() - getPrinted();
+    }
+
+    public long getBytes() {
+        long bytes = 0;
+        for (Entry entry : entries) {
+            bytes += entry.getBytes();
+        }
+        return bytes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Time of printed documents at a percentile
+     * @param percentile 0-100
+     */
+    public long getNanos(double percentile) {
+        long[] sorted = entries.stream().filter(Entry::isPrinted).mapToLong(Entry::getNanos).sorted().toArray();
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+    @Override
+    public String toString() {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        return String.format(Locale.ROOT,
+            "%d documents: %d printed, %d failed; %d bytes in %.3f s (%.1f documents/s)%n"
+                + "per document p50 %.1f ms, p95 %.1f ms, max %.1f ms%n",
+            entries.size(), getPrinted(), getFailed(), getBytes(), seconds,
+            seconds == 0 ? 0 : getPrinted() / seconds,
+            getNanos(50) / 1_000_000.0, getNanos(95) / 1_000_000.0, getNanos(100) / 1_000_000.0);
+    }
+}
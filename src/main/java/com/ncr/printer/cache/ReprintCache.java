@@ -0,0 +1,219 @@
+package com.ncr.printer.cache;
+
+import com.ncr.printer.PrintJob;
+import com.ncr.printer.commands.Ncr7167Commands;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of fully encoded receipts keyed by transaction ID
+ *
+ * Entries are evicted least recently used first once the total size of
+ * the cached receipts exceeds the configured limit. With off-heap storage
+ * the receipt bytes live in direct buffers, so thousands of cached
+ * receipts only cost a few small objects on the heap.
+ *
+ * Copies are produced from the cached bytes with a copy marker inserted at
+ * the job's copy slot (or at the start when the job has no slot).
+ */
+public class ReprintCache {
+
+    public static final String DEFAULT_COPY_MARKER_TEXT = "*** COPY ***";
+
+    private final long maxBytes;
+    private final boolean offHeap;
+    private final int lineWidth;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long totalBytes;
+    private byte[] copyMarker;
+
+    /**
+     * @param maxBytes maximum total size of the cached receipts
+     * @param offHeap store receipt bytes in direct buffers instead of the heap
+     */
+    public ReprintCache(long maxBytes, boolean offHeap) {
+        this(maxBytes, offHeap, Ncr7167Commands.CharacterPitch.STANDARD_80MM);
+    }
+
+    /**
+     * @param maxBytes maximum total size of the cached receipts
+     * @param offHeap store receipt bytes in direct buffers instead of the heap
+     * @param lineWidth receipt line width in characters, used to center the copy marker
+     */
+    public ReprintCache(long maxBytes, boolean offHeap, int lineWidth) {
+        this.maxBytes = maxBytes;
+        this.offHeap = offHeap;
+        this.lineWidth = lineWidth;
+        setCopyMarkerText(DEFAULT_COPY_MARKER_TEXT);
+    }
+
+    /**
+     * Cache a printed job under its job ID
+     * Jobs without an ID or larger than the whole cache are not cached.
+     */
+    public synchronized void put(PrintJob job) {
+        if (job.getJobId() == null || job.getLength() > maxBytes) {
+            return;
+        }
+
+        Entry previous = entries.remove(job.getJobId());
+        if (previous != null) {
+            totalBytes -= previous.length;
+        }
+
+        Entry entry = offHeap ? Entry.offHeap(job) : Entry.onHeap(job);
+        entries.put(job.getJobId(), entry);
+        totalBytes += entry.length;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Get the cached job for a transaction, or null if it is not cached
+     */
+    public synchronized PrintJob get(String transactionId) {
+        Entry entry = entries.get(transactionId);
+        if (entry == null) {
+            return null;
+        }
+        return new PrintJob(transactionId, entry.bytes(), entry.copySlot);
+    }
+
+    /**
+     * Get a copy of a cached job with the copy marker inserted, or null if it is not cached
+     */
+    public synchronized PrintJob getCopy(String transactionId) {
+        Entry entry = entries.get(transactionId);
+        if (entry == null) {
+            return null;
+        }
+
+        int slot = Math.max(entry.copySlot, 0);
+        byte[] data = new byte[entry.length + copyMarker.length];
+        entry.read(0, data, 0, slot);
+        System.arraycopy(copyMarker, 0, data, slot, copyMarker.length);
+        entry.read(slot, data, slot + copyMarker.length, entry.length - slot);
+
+        return new PrintJob(transactionId, data);
+    }
+
+    public synchronized boolean contains(String transactionId) {
+        return entries.containsKey(transactionId);
+    }
+
+    public synchronized void remove(String transactionId) {
+        Entry entry = entries.remove(transactionId);
+        if (entry != null) {
+            totalBytes -= entry.length;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public synchronized byte[] getCopyMarker() {
+        return copyMarker.clone();
+    }
+
+    /**
+     * Set the raw command bytes inserted at the copy slot of a reprint
+     */
+    public synchronized void setCopyMarker(byte[] copyMarker) {
+        this.copyMarker = copyMarker.clone();
+    }
+
+    /**
+     * Set the copy marker to an emphasized, centered line of text
+     */
+    public void setCopyMarkerText(String text) {
+        int padding = Math.max(0, (lineWidth - text.length()) / 2);
+        byte[] textBytes = text.getBytes(StandardCharsets.ISO_8859_1);
+
+        byte[] marker = new byte[3 + padding + textBytes.length + 1 + 3];
+        int pos = 0;
+        marker[pos++] = Ncr7167Commands.ESC;
+        marker[pos++] = 0x45;
+        marker[pos++] = 1;
+        for (int i = 0; i < padding; i++) {
+            marker[pos++] = ' ';
+        }
+        System.arraycopy(textBytes, 0, marker, pos, textBytes.length);
+        pos += textBytes.length;
+        marker[pos++] = Ncr7167Commands.PRINT_AND_FEED_ONE_LINE;
+        marker[pos++] = Ncr7167Commands.ESC;
+        marker[pos++] = 0x45;
+        marker[pos] = 0;
+
+        setCopyMarker(marker);
+    }
+
+    private static final class Entry {
+        final byte[] heap;
+        final ByteBuffer direct;
+        final int length;
+        final int copySlot;
+
+        private Entry(byte[] heap, ByteBuffer direct, int length, int copySlot) {
+            this.heap = heap;
+            this.direct = direct;
+            this.length = length;
+            this.copySlot = copySlot;
+        }
+
+        static Entry onHeap(PrintJob job) {
+            return new Entry(job.getData(), null, job.getLength(), job.getCopySlot());
+        }
+
+        static Entry offHeap(PrintJob job) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(job.getLength());
+            buffer.put(job.getData());
+            return new Entry(null, buffer, job.getLength(), job.getCopySlot());
+        }
+
+        byte[] bytes() {
+            if (heap != null) {
+                return heap;
+            }
+            byte[] data = new byte[length];
+            read(0, data, 0, length);
+            return data;
+        }
+
+        void read(int offset, byte[] target, int targetOffset, int count) {
+            if (heap != null) {
+                System.arraycopy(heap, offset, target, targetOffset, count);
+            } else {
+                ByteBuffer view = direct.duplicate();
+                view.position(offset);
+                view.get(target, targetOffset, count);
+            }
+        }
+    }
+}
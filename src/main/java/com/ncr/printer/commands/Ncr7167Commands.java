@@ -77,7 +77,10 @@ public class Ncr7167Commands {
         public static final byte[] PRINT_BAR_CODE = {GS, 0x6B}; // + parameters
         public static final byte[] SET_BAR_CODE_HEIGHT = {GS, 0x68}; // + n
         public static final byte[] SELECT_HRI_POSITION = {GS, 0x48}; // + n
+        public static final byte[] SELECT_HRI_PITCH = {GS, 0x66}; // + n
+        public static final byte[] SET_BAR_CODE_WIDTH = {GS, 0x77}; // + n
         public static final byte[] TRANSMIT_STATUS = {GS, 0x72}; // + n
+        public static final byte[] TRANSMIT_PRINTER_STATUS = {GS, 0x72, 1}; // answered after all prior data
         public static final byte[] REQUEST_PRINTER_STATUS = {GS, 0x05};
         public static final byte[] REAL_TIME_STATUS = {GS, 0x04}; // + n
     }
@@ -108,6 +111,26 @@ public class Ncr7167Commands {
         public static final int ERROR_CONDITION = 0x40;
     }
     
+    // Bits of the byte returned by Real Time Printer Status Transmission (GS ENQ)
+    public static class RealTimeStatus {
+        public static final int RECEIPT_PAPER_LOW = 0x03;
+        public static final int DOOR_OPEN = 0x04;
+        public static final int RS232_BUSY = 0x08;
+        public static final int CASH_DRAWERS_CLOSED = 0x10;
+        public static final int SLIP_PAPER_ABSENT = 0x20;
+        public static final int ERROR_CONDITION = 0x40;
+        
+        // Bit 7 is always on, so a reply is never mistaken for XON or XOFF
+        public static final int FIXED_MASK = 0x80;
+        public static final int FIXED_BITS = 0x80;
+    }
+    
+    // Transmit Status (GS r n) responses: bits 4 and 7 are always off
+    public static class TransmitStatus {
+        public static final int FIXED_MASK = 0x90;
+        public static final int FIXED_BITS = 0x00;
+    }
+    
     // Bar code types
     public static class BarCodeTypes {
         public static final int UPC_A = 0;
@@ -120,6 +143,17 @@ public class Ncr7167Commands {
         public static final int CODE93 = 9;
         public static final int CODE128 = 10;
         public static final int PDF417 = 75;
+        
+        // Second variation (length byte specified at beginning of string)
+        public static final int UPC_A_LENGTH = 65;
+        public static final int UPC_E_LENGTH = 66;
+        public static final int JAN13_EAN13_LENGTH = 67;
+        public static final int JAN8_EAN8_LENGTH = 68;
+        public static final int CODE39_LENGTH = 69;
+        public static final int ITF_LENGTH = 70;
+        public static final int CODABAR_LENGTH = 71;
+        public static final int CODE93_LENGTH = 72;
+        public static final int CODE128_LENGTH = 73;
     }
     
     // Print modes for SELECT_PRINT_MODES command
@@ -0,0 +1,515 @@
+package com.ncr.printer.decode;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Table-driven decoder for 7167 command streams
+ *
+ * Bytes are fed in chunks of any size and reported to a listener as text
+ * runs and complete commands in a single pass. Each command is looked up
+ * by its first byte and, for DLE, ESC, GS and US sequences, its second
+ * byte; the table entry gives the operand layout, so bar code, bit image
+ * and user-defined character payloads are skipped as a whole. Only a
+ * command cut by the end of a chunk is copied; everything else is
+ * reported straight from the caller's array.
+ *
+ * FS is decoded as Select Slip Station; the Kanji and scanner sequences
+ * starting with FS are not supported. Instances are not thread-safe.
+ */
+public class CommandDecoder {
+
+    private static final int NEED_MORE = -1;
+
+    // Single-byte controls, and sequence tables indexed by the second byte
+    private static final CommandSpec[] CONTROLS = new CommandSpec[0x20];
+    private static final CommandSpec[][] SEQUENCES = new CommandSpec[0x20][];
+    private static final CommandSpec[] UNKNOWN_SEQUENCES = new CommandSpec[0x20];
+
+    static {
+        control(0x09, "Horizontal Tab");
+        control(0x0A, "Print and Feed Paper One Line");
+        control(0x0C, "Print and Eject Slip");
+        control(0x0D, "Print and Carriage Return");
+        control(0x10, "Clear Printer");
+        control(0x11, "Close Form");
+        control(0x12, "Select Double-Wide Characters");
+        control(0x13, "Select Single-Wide Characters");
+        control(0x14, "Feed n Print Lines", 1);
+        control(0x15, "Feed n Dot Rows", 1);
+        control(0x16, "Add n Extra Dot Rows", 1);
+        control(0x17, "Print");
+        control(0x18, "Open Form");
+        control(0x19, "Perform Full Knife Cut");
+        control(0x1A, "Perform Partial Knife Cut");
+        control(0x1C, "Select Slip Station");
+        control(0x1E, "Select Receipt Station");
+
+        // DLE on its own is Clear Printer; these are the real-time forms
+        sequence(0x10, 0x04, "Real Time Status Transmission", 1);
+        sequence(0x10, 0x05, "Real Time Request to Printer", 1);
+
+        sequence(0x1B, 0x07, "Generate Tone", 0);
+        sequence(0x1B, 0x0C, "Print Data in Page Mode", 0);
+        sequence(0x1B, 0x12, "Select 90 Degree Counter-Clockwise Rotated Print", 0);
+        sequence(0x1B, 0x14, "Set Column", 1);
+        sequence(0x1B, 0x16, "Select Pitch", 1);
+        sequence(0x1B, 0x20, "Set Character Right-Side Spacing", 1);
+        sequence(0x1B, 0x21, "Select Print Modes", 1);
+        sequence(0x1B, 0x24, "Set Absolute Starting Position", 2);
+        sequence(0x1B, 0x25, "Select or Cancel User-Defined Character Set", 1);
+        sequence(0x1B, 0x26, "Define User-Defined Characters", CommandSpec.USER_CHARS, 3);
+        sequence(0x1B, 0x27, "Write to User Data Storage", CommandSpec.USER_DATA, 4);
+        sequence(0x1B, 0x2A, "Select Bit Image Mode", CommandSpec.BIT_IMAGE, 3);
+        sequence(0x1B, 0x2D, "Select or Cancel Underline Mode", 1);
+        sequence(0x1B, 0x32, "Set Line Spacing to 1/6 Inch", 0);
+        sequence(0x1B, 0x33, "Set Line Spacing", 1);
+        sequence(0x1B, 0x34, "Read from User Data Storage", 4);
+        sequence(0x1B, 0x3A, "Copy Character Set from ROM to RAM", 3);
+        sequence(0x1B, 0x3C, "Return Home", 0);
+        sequence(0x1B, 0x3D, "Select Peripheral Device", 1);
+        sequence(0x1B, 0x3F, "Cancel User-Defined Characters", 1);
+        sequence(0x1B, 0x40, "Initialize Printer", 0);
+        sequence(0x1B, 0x43, "Set Slip Paper Eject Length", 1);
+        sequence(0x1B, 0x44, "Set Horizontal Tabs", CommandSpec.NUL_TERMINATED, 0);
+        sequence(0x1B, 0x45, "Select or Cancel Emphasized Mode", 1);
+        sequence(0x1B, 0x47, "Select Double Strike", 0);
+        sequence(0x1B, 0x48, "Cancel Double Strike", 0);
+        sequence(0x1B, 0x49, "Set or Cancel Italic Print", 1);
+        sequence(0x1B, 0x4A, "Print and Feed Paper", 1);
+        sequence(0x1B, 0x4B, "Print and Reverse Feed Paper", 1);
+        sequence(0x1B, 0x4C, "Select Page Mode", 0);
+        sequence(0x1B, 0x52, "Select International Character Set", 1);
+        sequence(0x1B, 0x53, "Select Standard Mode", 0);
+        sequence(0x1B, 0x54, "Select Print Direction in Page Mode", 1);
+        sequence(0x1B, 0x55, "Select or Cancel Unidirectional Printing Mode", 1);
+        sequence(0x1B, 0x56, "Select or Cancel 90 Degrees Clockwise Rotated", 1);
+        sequence(0x1B, 0x57, "Set Printing Area in Page Mode", 8);
+        sequence(0x1B, 0x59, "Select Double Density Graphics", CommandSpec.COUNTED, 2);
+        sequence(0x1B, 0x5B, "Switch to Flash Download Mode", 1);
+        sequence(0x1B, 0x5C, "Set Relative Print Position", 2);
+        sequence(0x1B, 0x61, "Select Justification", 1);
+        sequence(0x1B, 0x63, "Select Station or Sensor Options", 2);
+        sequence(0x1B, 0x64, "Print and Feed n Lines", 1);
+        sequence(0x1B, 0x65, "Print and Reverse Feed n Lines", 1);
+        sequence(0x1B, 0x66, "Set Slip Paper Waiting Time", 2);
+        sequence(0x1B, 0x69, "Perform Full Knife Cut", 0);
+        sequence(0x1B, 0x6A, "Read from Non-Volatile Memory", 1);
+        sequence(0x1B, 0x6D, "Perform Partial Cut", 0);
+        sequence(0x1B, 0x70, "Generate Pulse to Open Cash Drawer", 3);
+        sequence(0x1B, 0x72, "Select Print Color", 1);
+        sequence(0x1B, 0x73, "Write to Non-Volatile Memory", 3);
+        sequence(0x1B, 0x74, "Select International Character Set", 1);
+        sequence(0x1B, 0x75, "Transmit Peripheral Device Status", 1);
+        sequence(0x1B, 0x76, "Transmit Printer Status", 0);
+        sequence(0x1B, 0x77, "MICR Function", 1);
+        sequence(0x1B, 0x7A, "Select or Cancel Parallel Printing Mode", 1);
+        sequence(0x1B, 0x7B, "Select or Cancel Upside Down Printing Mode", 1);
+
+        sequence(0x1D, 0x00, "Request Printer ID", 0);
+        sequence(0x1D, 0x01, "Return Segment Number Status of Flash Memory", 0);
+        sequence(0x1D, 0x02, "Select Flash Memory Sector to Download", 1);
+        sequence(0x1D, 0x03, "Real Time Request to Printer", 1);
+        sequence(0x1D, 0x04, "Real Time Status Transmission", 1);
+        sequence(0x1D, 0x05, "Real Time Printer Status Transmission", 0);
+        sequence(0x1D, 0x06, "Get Firmware CRC", 0);
+        sequence(0x1D, 0x07, "Return Microprocessor CRC", 0);
+        sequence(0x1D, 0x0E, "Erase the Flash Memory", 0);
+        sequence(0x1D, 0x0F, "Return Main Program Flash CRC", 0);
+        sequence(0x1D, 0x10, "Erase Selected Flash Sector", 1);
+        sequence(0x1D, 0x11, "Download to Active Flash Sector", CommandSpec.FLASH_DATA, 4);
+        sequence(0x1D, 0x14, "Reverse Feed n Lines", 1);
+        sequence(0x1D, 0x15, "Reverse Feed n Dots", 1);
+        sequence(0x1D, 0x21, "Select Character Size", 1);
+        extended(0x1D, 0x22, "Select Memory Type", 0x55, 2);
+        sequence(0x1D, 0x23, "Select the Current Logo", 1);
+        sequence(0x1D, 0x24, "Set Absolute Vertical Print Position in Page Mode", 2);
+        sequence(0x1D, 0x28, "Scanner Function", CommandSpec.BLOCK, 1);
+        sequence(0x1D, 0x2A, "Define Downloaded Bit Image", CommandSpec.DOWNLOADED_BIT_IMAGE, 2);
+        sequence(0x1D, 0x2F, "Print Downloaded Bit Image", 1);
+        sequence(0x1D, 0x3A, "Start or End Macro Definition", 0);
+        sequence(0x1D, 0x40, "Erase User Flash Sector", 1);
+        sequence(0x1D, 0x42, "Select or Cancel White/Black Reverse Print Mode", 1);
+        sequence(0x1D, 0x48, "Select Printing Position for HRI Characters", 1);
+        extended(0x1D, 0x49, "Transmit Printer ID", 0x40, 1);
+        sequence(0x1D, 0x4C, "Set Left Margin", 2);
+        sequence(0x1D, 0x50, "Set Horizontal and Vertical Minimum Motion Units", 2);
+        sequence(0x1D, 0x56, "Select Cut Mode and Cut Paper", CommandSpec.CUT, 1);
+        sequence(0x1D, 0x57, "Set Printing Area Width", 2);
+        sequence(0x1D, 0x5C, "Set Relative Vertical Print Position in Page Mode", 2);
+        sequence(0x1D, 0x5E, "Execute Macro", 3);
+        sequence(0x1D, 0x61, "Select or Cancel Automatic Status Back", 1);
+        sequence(0x1D, 0x66, "Select Pitch for HRI Characters", 1);
+        sequence(0x1D, 0x68, "Select Bar Code Height", 1);
+        sequence(0x1D, 0x6B, "Print Bar Code", CommandSpec.BAR_CODE, 1);
+        sequence(0x1D, 0x72, "Transmit Status", 1);
+        sequence(0x1D, 0x77, "Select Bar Code Width", 1);
+        sequence(0x1D, 0xFF, "Reboot Printer", 0);
+
+        sequence(0x1F, 0x04, "Convert 6 Dots/mm Bitmap to 8 Dots/mm Bitmap", 1);
+        sequence(0x1F, 0x05, "Select Superscript or Subscript Modes", 1);
+        sequence(0x1F, 0x11, "Printer Setting Change", CommandSpec.SETTING_PAIRS, 0);
+        sequence(0x1F, 0x56, "Send Printer Software Version", 0);
+        sequence(0x1F, 0x74, "Print Test Form", 0);
+
+        for (int b = 0; b < 0x20; b++) {
+            if (CONTROLS[b] == null) {
+                CONTROLS[b] = new CommandSpec("Unknown Control", new byte[]{(byte) b}, false,
+                    CommandSpec.FIXED, 0, 0, 0);
+            }
+            UNKNOWN_SEQUENCES[b] = new CommandSpec("Unknown Sequence", new byte[]{(byte) b, 0}, false,
+                CommandSpec.FIXED, 0, 0, 0);
+        }
+    }
+
+    private static void control(int code, String name) {
+        control(code, name, 0);
+    }
+
+    private static void control(int code, String name, int operands) {
+        CONTROLS[code] = new CommandSpec(name, new byte[]{(byte) code}, true, CommandSpec.FIXED, operands, 0, 0);
+    }
+
+    private static void sequence(int prefix, int code, String name, int operands) {
+        sequence(prefix, code, name, CommandSpec.FIXED, operands);
+    }
+
+    private static void sequence(int prefix, int code, String name, int layout, int operands) {
+        table(prefix)[code] = new CommandSpec(name, new byte[]{(byte) prefix, (byte) code}, true,
+            layout, operands, 0, 0);
+    }
+
+    private static void extended(int prefix, int code, String name, int extension, int extraOperands) {
+        table(prefix)[code] = new CommandSpec(name, new byte[]{(byte) prefix, (byte) code}, true,
+            CommandSpec.EXTENDED, 1, extension, extraOperands);
+    }
+
+    private static CommandSpec[] table(int prefix) {
+        if (SEQUENCES[prefix] == null) {
+            SEQUENCES[prefix] = new CommandSpec[256];
+        }
+        return SEQUENCES[prefix];
+    }
+
+    private final CommandListener listener;
+
+    // Start of a command cut off by the end of the previous chunk
+    private byte[] pending = new byte[256];
+    private int pendingLength;
+    private long position;
+
+    // Spec matched by the last call to commandLength
+    private CommandSpec spec;
+
+    public CommandDecoder(CommandListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Decode the next chunk of the stream
+     */
+    public void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = completePending(data, offset, end);
+
+        while (i < end) {
+            if ((data[i] & 0xFF) >= 0x20) {
+                int start = i;
+                while (i < end && (data[i] & 0xFF) >= 0x20) {
+                    i++;
+                }
+                listener.text(data, start, i - start, position);
+                position += i - start;
+                continue;
+            }
+
+            int total = commandLength(data, i, end - i);
+            if (total == NEED_MORE) {
+                append(data, i, end - i);
+                return;
+            }
+            listener.command(spec, data, i, total, position);
+            position += total;
+            i += total;
+        }
+    }
+
+    /**
+     * End of stream: report a command still waiting for its operands
+     */
+    public void finish() {
+        if (pendingLength > 0) {
+            commandLength(pending, 0, pendingLength);
+            if (pendingLength == 1 && spec.isKnown() && spec.layout == CommandSpec.FIXED && spec.operands == 0) {
+                // A bare DLE at the very end is a complete Clear Printer
+                listener.command(spec, pending, 0, 1, position);
+            } else {
+                listener.truncated(spec, pending, 0, pendingLength, position);
+            }
+            position += pendingLength;
+            pendingLength = 0;
+        }
+    }
+
+    /**
+     * Bytes decoded so far, including a pending incomplete command
+     */
+    public long getPosition() {
+        return position + pendingLength;
+    }
+
+    private int completePending(byte[] data, int offset, int end) {
+        int i = offset;
+        while (pendingLength > 0) {
+            int total = commandLength(pending, 0, pendingLength);
+            if (total != NEED_MORE) {
+                listener.command(spec, pending, 0, total, position);
+                position += total;
+                // Bytes taken past the end of the command came from this chunk
+                i -= pendingLength - total;
+                pendingLength = 0;
+                break;
+            }
+            if (i == end) {
+                break;
+            }
+            // Take more in growing steps so long payloads are rescanned rarely
+            int take = Math.min(end - i, Math.max(16, pendingLength));
+            append(data, i, take);
+            i += take;
+        }
+        return i;
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if (pendingLength + length > pending.length) {
+            byte[] grown = new byte[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+        }
+        System.arraycopy(data, offset, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    /**
+     * Length of the command starting at offset, or NEED_MORE if more than
+     * the available bytes are needed to tell
+     */
+    private int commandLength(byte[] d, int offset, int available) {
+        int first = d[offset] & 0xFF;
+        CommandSpec[] table = SEQUENCES[first];
+        if (table == null) {
+            spec = CONTROLS[first];
+        } else if (available < 2) {
+            spec = CONTROLS[first];
+            return NEED_MORE;
+        } else {
+            spec = table[d[offset + 1] & 0xFF];
+            if (spec == null) {
+                // A bare DLE is Clear Printer; other unknown sequences skip two bytes
+                spec = first == 0x10 ? CONTROLS[first] : UNKNOWN_SEQUENCES[first];
+            }
+        }
+
+        int p = spec.getCodeLength();
+        int total;
+        switch (spec.layout) {
+            case CommandSpec.BAR_CODE:
+                if (available < p + 1) {
+                    return NEED_MORE;
+                }
+                if ((d[offset + p] & 0xFF) >= 65) {
+                    total = available < p + 2 ? NEED_MORE : p + 2 + (d[offset + p + 1] & 0xFF);
+                } else {
+                    total = untilNul(d, offset, p + 1, available);
+                }
+                break;
+            case CommandSpec.BIT_IMAGE:
+                if (available < p + 3) {
+                    return NEED_MORE;
+                }
+                int m = d[offset + p] & 0xFF;
+                int dots = word(d, offset + p + 1);
+                total = p + 3 + (m == 32 || m == 33 ? dots * 3 : dots);
+                break;
+            case CommandSpec.DOWNLOADED_BIT_IMAGE:
+                if (available < p + 2) {
+                    return NEED_MORE;
+                }
+                total = p + 2 + 8 * (d[offset + p] & 0xFF) * (d[offset + p + 1] & 0xFF);
+                break;
+            case CommandSpec.USER_CHARS:
+                total = userCharsLength(d, offset, p, available);
+                break;
+            case CommandSpec.NUL_TERMINATED:
+                total = untilNul(d, offset, p, available);
+                break;
+            case CommandSpec.BLOCK:
+                if (available < p + spec.operands + 2) {
+                    return NEED_MORE;
+                }
+                total = p + spec.operands + 2 + word(d, offset + p + spec.operands);
+                break;
+            case CommandSpec.COUNTED:
+                if (available < p + 2) {
+                    return NEED_MORE;
+                }
+                total = p + 2 + word(d, offset + p);
+                break;
+            case CommandSpec.CUT:
+                if (available < p + 1) {
+                    return NEED_MORE;
+                }
+                total = (d[offset + p] & 0xFF) >= 65 ? p + 2 : p + 1;
+                break;
+            case CommandSpec.USER_DATA:
+                if (available < p + 1) {
+                    return NEED_MORE;
+                }
+                total = p + 4 + (d[offset + p] & 0xFF);
+                break;
+            case CommandSpec.FLASH_DATA:
+                if (available < p + 4) {
+                    return NEED_MORE;
+                }
+                total = p + 4 + word(d, offset + p + 2);
+                break;
+            case CommandSpec.SETTING_PAIRS:
+                total = NEED_MORE;
+                // [m n] pairs ending with FF
+                for (int i = p; i < available; i += 2) {
+                    if ((d[offset + i] & 0xFF) == 0xFF) {
+                        total = i + 1;
+                        break;
+                    }
+                }
+                break;
+            case CommandSpec.EXTENDED:
+                if (available < p + 1) {
+                    return NEED_MORE;
+                }
+                total = p + 1 + ((d[offset + p] & 0xFF) == spec.extension ? spec.extraOperands : 0);
+                break;
+            default:
+                total = p + spec.operands;
+        }
+        return total == NEED_MORE || total > available ? NEED_MORE : total;
+    }
+
+    private static int untilNul(byte[] d, int offset, int from, int available) {
+        for (int i = from; i < available; i++) {
+            if (d[offset + i] == 0) {
+                return i + 1;
+            }
+        }
+        return NEED_MORE;
+    }
+
+    private static int word(byte[] d, int at) {
+        return (d[at] & 0xFF) | (d[at + 1] & 0xFF) << 8;
+    }
+
+    private static int userCharsLength(byte[] d, int offset, int p, int available) {
+        if (available < p + 3) {
+            return NEED_MORE;
+        }
+        int station = d[offset + p] & 0xFF;
+        int count = (d[offset + p + 2] & 0xFF) - (d[offset + p + 1] & 0xFF) + 1;
+        if (count <= 0 || (station != 0 && station != 3)) {
+            // Invalid parameters abort the command
+            return p + 3;
+        }
+        if (station == 0) {
+            // Slip characters: 12 bytes each
+            return p + 3 + 12 * count;
+        }
+        // Receipt characters: width n, then 3 bytes per column
+        int length = p + 3;
+        for (int c = 0; c < count; c++) {
+            if (available < length + 1) {
+                return NEED_MORE;
+            }
+            length += 1 + 3 * (d[offset + length] & 0xFF);
+        }
+        return length;
+    }
+
+    /**
+     * Decode a complete byte array into a list of commands and text runs
+     */
+    public static List<DecodedCommand> decode(byte[] data) {
+        List<DecodedCommand> commands = new ArrayList<>();
+        CommandDecoder decoder = new CommandDecoder(new CommandListener() {
+            @Override
+            public void text(byte[] bytes, int offset, int length, long position) {
+                commands.add(new DecodedCommand(null, bytes, offset, length, position, false));
+            }
+
+            @Override
+            public void command(CommandSpec spec, byte[] bytes, int offset, int length, long position) {
+                commands.add(new DecodedCommand(spec, bytes, offset, length, position, false));
+            }
+
+            @Override
+            public void truncated(CommandSpec spec, byte[] bytes, int offset, int length, long position) {
+                commands.add(new DecodedCommand(spec, bytes, offset, length, position, true));
+            }
+        });
+        decoder.feed(data, 0, data.length);
+        decoder.finish();
+        return commands;
+    }
+
+    /**
+     * Readable listing of a complete byte array, one command per line
+     */
+    public static String listing(byte[] data) {
+        StringBuilder out = new StringBuilder();
+        CommandDecoder decoder = new CommandDecoder(new CommandListing(out));
+        decoder.feed(data, 0, data.length);
+        decoder.finish();
+        return out.toString();
+    }
+
+    /**
+     * Decode a stream of any length in one pass
+     * @return number of bytes decoded
+     */
+    public static long decode(InputStream in, CommandListener listener) throws IOException {
+        CommandDecoder decoder = new CommandDecoder(listener);
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            decoder.feed(buffer, 0, read);
+        }
+        decoder.finish();
+        return decoder.getPosition();
+    }
+
+    /**
+     * Print the listing of a raw command file, e.g. a port capture
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: CommandDecoder <file>");
+            System.exit(2);
+        }
+
+        Writer out = new OutputStreamWriter(System.out, StandardCharsets.ISO_8859_1);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(args[0]))) {
+            decode(in, new CommandListing(out));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ncr.printer.decode;
+
+/**
+ * Receives the commands and text runs found by a {@link CommandDecoder}
+ *
+ * The byte ranges are only valid during the call; listeners that keep
+ * them must copy the bytes.
+ */
+public interface CommandListener {
+
+    /**
+     * A run of printable bytes (0x20 and above); a run may be reported in
+     * several parts when it crosses the chunks fed to the decoder
+     * @param position stream offset of the first byte
+     */
+    void text(byte[] data, int offset, int length, long position);
+
+    /**
+     * A complete command, code bytes and operands included
+     * @param position stream offset of the first byte
+     */
+    void command(CommandSpec spec, byte[] data, int offset, int length, long position);
+
+    /**
+     * The start of a command cut off by the end of the stream
+     */
+    default void truncated(CommandSpec spec, byte[] data, int offset, int length, long position) {
+    }
+}
@@ -0,0 +1,89 @@
+package com.ncr.printer.decode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Listener writing one line per command or text run:
+ * stream offset, leading bytes in hex and the command name
+ */
+public class CommandListing implements CommandListener {
+
+    // Payload bytes shown before the rest is summarized
+    private static final int HEX_BYTES = 8;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Appendable out;
+    private final StringBuilder line = new StringBuilder(128);
+
+    public CommandListing(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public void text(byte[] data, int offset, int length, long position) {
+        start(position);
+        line.append('"');
+        for (int i = offset; i < offset + length; i++) {
+            int b = data[i] & 0xFF;
+            if (b == '"' || b == '\\') {
+                line.append('\\').append((char) b);
+            } else if (b < 0x7F) {
+                line.append((char) b);
+            } else {
+                line.append("\\x").append(HEX[b >> 4]).append(HEX[b & 15]);
+            }
+        }
+        line.append('"');
+        end();
+    }
+
+    @Override
+    public void command(CommandSpec spec, byte[] data, int offset, int length, long position) {
+        start(position);
+        appendHex(data, offset, length);
+        line.append(spec.getName());
+        end();
+    }
+
+    @Override
+    public void truncated(CommandSpec spec, byte[] data, int offset, int length, long position) {
+        start(position);
+        appendHex(data, offset, length);
+        line.append(spec.getName()).append(" (truncated)");
+        end();
+    }
+
+    private void start(long position) {
+        line.setLength(0);
+        String offset = Long.toHexString(position).toUpperCase();
+        for (int i = offset.length(); i < 8; i++) {
+            line.append('0');
+        }
+        line.append(offset).append("  ");
+    }
+
+    private void appendHex(byte[] data, int offset, int length) {
+        int shown = Math.min(length, HEX_BYTES);
+        int column = line.length();
+        for (int i = offset; i < offset + shown; i++) {
+            int b = data[i] & 0xFF;
+            line.append(HEX[b >> 4]).append(HEX[b & 15]).append(' ');
+        }
+        if (length > shown) {
+            line.append("+").append(length - shown).append(' ');
+        }
+        while (line.length() < column + HEX_BYTES * 3 + 6) {
+            line.append(' ');
+        }
+    }
+
+    private void end() {
+        line.append('\n');
+        try {
+            out.append(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.ncr.printer.decode;
+
+/**
+ * Entry of the decoder's command table: name, code bytes and operand layout
+ */
+public final class CommandSpec {
+
+    // Operand layouts
+    static final int FIXED = 0;
+    static final int BAR_CODE = 1;
+    static final int BIT_IMAGE = 2;
+    static final int DOWNLOADED_BIT_IMAGE = 3;
+    static final int USER_CHARS = 4;
+    static final int NUL_TERMINATED = 5;
+    static final int BLOCK = 6;
+    static final int COUNTED = 7;
+    static final int CUT = 8;
+    static final int USER_DATA = 9;
+    static final int FLASH_DATA = 10;
+    static final int SETTING_PAIRS = 11;
+    static final int EXTENDED = 12;
+
+    private final String name;
+    private final byte[] code;
+    private final boolean known;
+    final int layout;
+    final int operands;
+    final int extension;
+    final int extraOperands;
+
+    CommandSpec(String name, byte[] code, boolean known, int layout, int operands, int extension, int extraOperands) {
+        this.name = name;
+        this.code = code;
+        this.known = known;
+        this.layout = layout;
+        this.operands = operands;
+        this.extension = extension;
+        this.extraOperands = extraOperands;
+    }
+
+    /**
+     * Command name as given in the 7167 manual
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Number of code bytes before the operands (1 or 2)
+     */
+    public int getCodeLength() {
+        return code.length;
+    }
+
+    /**
+     * False for control bytes and sequences the 7167 does not define
+     */
+    public boolean isKnown() {
+        return known;
+    }
+
+    /**
+     * Code bytes in hex, e.g. "1B 21"
+     */
+    public String getCode() {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : code) {
+            if (hex.length() > 0) {
+                hex.append(' ');
+            }
+            hex.append(String.format("%02X", b & 0xFF));
+        }
+        return hex.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getCode() + " " + name;
+    }
+}
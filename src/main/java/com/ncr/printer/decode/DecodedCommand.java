@@ -0,0 +1,73 @@
+package com.ncr.printer.decode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Command or text run found by {@link CommandDecoder#decode(byte[])}
+ */
+public class DecodedCommand {
+
+    private final CommandSpec spec;
+    private final byte[] bytes;
+    private final long position;
+    private final boolean truncated;
+
+    DecodedCommand(CommandSpec spec, byte[] data, int offset, int length, long position, boolean truncated) {
+        this.spec = spec;
+        this.bytes = Arrays.copyOfRange(data, offset, offset + length);
+        this.position = position;
+        this.truncated = truncated;
+    }
+
+    /**
+     * Table entry of the command, or null for a text run
+     */
+    public CommandSpec getSpec() {
+        return spec;
+    }
+
+    public boolean isText() {
+        return spec == null;
+    }
+
+    /**
+     * True if the stream ended before the command was complete
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Stream offset of the first byte
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Raw bytes, code and operands included
+     */
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * Operand bytes following the command code
+     */
+    public byte[] getOperands() {
+        return spec == null ? new byte[0] : Arrays.copyOfRange(bytes, spec.getCodeLength(), bytes.length);
+    }
+
+    /**
+     * Text of a text run
+     */
+    public String getText() {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return spec == null ? '"' + getText() + '"' : spec.getName();
+    }
+}
@@ -0,0 +1,48 @@
+package com.ncr.printer.examples;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.transport.InMemoryTransport;
+import com.ncr.printer.util.ReceiptBuilder;
+
+/**
+ * Tek seferlik fiş yazdırma örneği
+ *
+ * Kasa yazılımının her işlemde yeniden başlattığı komut satırı aracını
+ * temsil eder: bağlanır, tek fiş basar ve çıkar. Port verilmezse fiş bellek
+ * içi taşımaya yazılır; AppCDS arşivi ve başlatma ölçümü bu kipte yapılır.
+ *
+ * Kullanım: QuickPrintExample [port]
+ */
+public class QuickPrintExample {
+    
+    public static void main(String[] args) {
+        Ncr7167Config config = new Ncr7167Config();
+        Ncr7167Printer printer;
+        if (args.length > 0) {
+            config.setPortName(args[0]);
+            printer = new Ncr7167Printer(config);
+        } else {
+            // Bellek içi hatta oturması beklenecek bir bağlantı yok
+            config.setConnectSettleTime(0);
+            printer = new Ncr7167Printer(config, new InMemoryTransport());
+        }
+        
+        try {
+            printer.connect();
+            new ReceiptBuilder(printer)
+                .begin("QUICK")
+                .header("NCR 7167", "HIZLI YAZDIRMA")
+                .item("URUN", "1.00")
+                .total("TOPLAM", "1.00")
+                .footer("QUICK", null)
+                .complete();
+        } catch (Ncr7167Exception e) {
+            System.err.println("Yazıcı hatası: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            printer.disconnect();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.ncr.printer.flow;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimate of how full the printer's receive buffer is
+ *
+ * The printer accepts up to its receive buffer size (one line or 4K, see
+ * SET RECEIVE BUFFER SIZE in the manual) and then throttles the host.
+ * The model tracks the bytes sent and drains them at the printer's print
+ * rate, so the writer can wait exactly as long as needed before sending
+ * the next chunk instead of blocking inside the port until the timeout.
+ *
+ * With calibration enabled, every write that blocks noticeably longer
+ * than the line needs is taken as proof that the buffer was full; the
+ * bytes sent between two such points give the real drain rate.
+ */
+public class ReceiveBufferModel {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // Extra blocking on top of the line time that counts as a throttled write
+    private static final long THROTTLE_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    // Weight of a new drain rate measurement
+    private static final double CALIBRATION_WEIGHT = 0.25;
+
+    private final int capacity;
+    private final int lineRate;
+    private final boolean calibrating;
+
+    private double drainRate;
+    private double level;
+    private long levelTime = System.nanoTime();
+    private long fullTime = -1;
+    private long bytesSinceFull;
+
+    /**
+     * @param capacity receive buffer size in bytes
+     * @param drainRate bytes the printer consumes per second while printing
+     * @param lineRate bytes per second the link carries, 0 if unknown
+     * @param calibrating true to refine the drain rate from throttled writes
+     */
+    public ReceiveBufferModel(int capacity, double drainRate, int lineRate, boolean calibrating) {
+        if (capacity < 1 || drainRate <= 0) {
+            throw new IllegalArgumentException("Buffer capacity and drain rate must be positive");
+        }
+        this.capacity = capacity;
+        this.drainRate = drainRate;
+        this.lineRate = lineRate;
+        this.calibrating = calibrating;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Current drain rate estimate in bytes per second
+     */
+    public synchronized double getDrainRate() {
+        return drainRate;
+    }
+
+    /**
+     * Estimated number of bytes waiting in the printer
+     */
+    public synchronized int getOccupancy() {
+        return (int) Math.ceil(levelAt(System.nanoTime()));
+    }
+
+    /**
+     * Reserve room for a chunk of at most {@link #getCapacity()} bytes
+     * @return nanoseconds to wait before the chunk may be sent
+     */
+    public long reserve(int bytes) {
+        return reserve(bytes, System.nanoTime());
+    }
+
+    synchronized long reserve(int bytes, long now) {
+        double current = levelAt(now);
+        double excess = current + Math.min(bytes, capacity) - capacity;
+        long wait = excess > 0 ? (long) Math.ceil(excess / drainRate * NANOS_PER_SECOND) : 0;
+
+        // The chunk lands once the wait is over
+        level = current - drained(wait) + bytes;
+        levelTime = now + wait;
+        return wait;
+    }
+
+    /**
+     * Report how long the port took to accept a chunk
+     */
+    public void written(int bytes, long writeNanos) {
+        written(bytes, writeNanos, System.nanoTime());
+    }
+
+    synchronized void written(int bytes, long writeNanos, long now) {
+        if (!calibrating) {
+            return;
+        }
+
+        bytesSinceFull += bytes;
+        long lineNanos = lineRate > 0 ? bytes * NANOS_PER_SECOND / lineRate : 0;
+        if (writeNanos <= lineNanos + THROTTLE_THRESHOLD_NANOS) {
+            return;
+        }
+
+        // Throttled: the printer's buffer is full right now
+        if (fullTime >= 0 && now > fullTime) {
+            double measured = (double) bytesSinceFull * NANOS_PER_SECOND / (now - fullTime);
+            drainRate += CALIBRATION_WEIGHT * (measured - drainRate);
+        }
+        fullTime = now;
+        bytesSinceFull = 0;
+        level = capacity;
+        levelTime = now;
+    }
+
+    /**
+     * Nanoseconds until the printer has printed everything sent so far
+     * plus the given number of bytes
+     */
+    public long estimateDrainNanos(long additionalBytes) {
+        return estimateDrainNanos(additionalBytes, System.nanoTime());
+    }
+
+    synchronized long estimateDrainNanos(long additionalBytes, long now) {
+        long pending = Math.max(0, levelTime - now);
+        double bytes = levelAt(now) + additionalBytes;
+        return pending + (long) Math.ceil(bytes / drainRate * NANOS_PER_SECOND);
+    }
+
+    private double levelAt(long now) {
+        if (now <= levelTime) {
+            return level;
+        }
+        return Math.max(0, level - drained(now - levelTime));
+    }
+
+    private double drained(long nanos) {
+        return drainRate * nanos / NANOS_PER_SECOND;
+    }
+}
@@ -0,0 +1,293 @@
+package com.ncr.printer.flow;
+
+import com.ncr.printer.trace.WireTrace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Library-level XON/XOFF flow control
+ *
+ * A reader thread takes every byte the printer sends. XOFF (0x13) pauses
+ * the port writer and XON (0x11) resumes it; all other bytes, such as
+ * status responses, are passed on through {@link #getInputStream()}.
+ * While a status request is outstanding, a byte that fits the fixed bits
+ * of the expected reply is passed on as the reply, and XON and XOFF are
+ * still handled as flow control otherwise. The replies of GS ENQ and
+ * GS r never fit the XON or XOFF pattern. Pauses are counted and timed, and a pause longer than the stall
+ * timeout usually means the printer is out of paper or its cover is open.
+ * A pause longer than the write timeout fails the waiting writes instead
+ * of holding their callers indefinitely.
+ */
+public class XonXoffController implements Closeable {
+
+    public static final int XON = 0x11;
+    public static final int XOFF = 0x13;
+
+    private static final Logger logger = LoggerFactory.getLogger(XonXoffController.class);
+    private static final long POLL_MILLIS = 10;
+    private static final int RECEIVED_CAPACITY = 4096;
+
+    private final InputStream source;
+    private final WireTrace wireTrace;
+    private final long stallNanos;
+    private final long writeTimeoutNanos;
+    private final Object lock = new Object();
+    private final InputStream inputStream = new FilteredInputStream();
+    private final Thread reader;
+
+    // Guarded by lock
+    private boolean paused;
+    private long pausedAt;
+    private long totalPausedNanos;
+    private long pauseCount;
+    private final byte[] received = new byte[RECEIVED_CAPACITY];
+    private int receivedStart;
+    private int receivedCount;
+    private boolean responseExpected;
+    private int responseMask;
+    private int responseBits;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param source stream of bytes from the printer
+     * @param wireTrace recorder of received bytes, or null
+     * @param stallTimeoutMillis pause length reported as a stall
+     */
+    public XonXoffController(InputStream source, WireTrace wireTrace, long stallTimeoutMillis) {
+        this(source, wireTrace, stallTimeoutMillis, 0);
+    }
+
+    /**
+     * @param source stream of bytes from the printer
+     * @param wireTrace recorder of received bytes, or null
+     * @param stallTimeoutMillis pause length reported as a stall
+     * @param writeTimeoutMillis pause length after which writes fail; 0 waits for XON indefinitely
+     */
+    public XonXoffController(InputStream source, WireTrace wireTrace, long stallTimeoutMillis,
+                             long writeTimeoutMillis) {
+        this.source = source;
+        this.wireTrace = wireTrace;
+        this.stallNanos = TimeUnit.MILLISECONDS.toNanos(stallTimeoutMillis);
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        this.reader = new Thread(this::read, "ncr7167-flow");
+        this.reader.setDaemon(true);
+    }
+
+    public void start() {
+        reader.start();
+    }
+
+    /**
+     * Bytes from the printer other than XON and XOFF
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Check if the printer has paused the host
+     */
+    public boolean isPaused() {
+        synchronized (lock) {
+            return paused;
+        }
+    }
+
+    /**
+     * Check if the current pause has lasted longer than the stall timeout
+     */
+    public boolean isStalled() {
+        return getCurrentPauseNanos() > stallNanos;
+    }
+
+    /**
+     * Length of the current pause, 0 when not paused
+     */
+    public long getCurrentPauseNanos() {
+        synchronized (lock) {
+            return paused ? System.nanoTime() - pausedAt : 0;
+        }
+    }
+
+    /**
+     * Total time spent paused, including the current pause
+     */
+    public long getTotalPausedNanos() {
+        synchronized (lock) {
+            return totalPausedNanos + (paused ? System.nanoTime() - pausedAt : 0);
+        }
+    }
+
+    /**
+     * Number of XOFF pauses so far
+     */
+    public long getPauseCount() {
+        synchronized (lock) {
+            return pauseCount;
+        }
+    }
+
+    /**
+     * Pass the next byte that fits a reply format on as the reply, even if
+     * it has the XON or XOFF pattern; called before sending a status request
+     * @param fixedMask bits that are fixed in every reply
+     * @param fixedBits values of those bits
+     */
+    public void expectResponse(int fixedMask, int fixedBits) {
+        synchronized (lock) {
+            responseExpected = true;
+            responseMask = fixedMask;
+            responseBits = fixedBits;
+        }
+    }
+
+    /**
+     * Go back to treating XON and XOFF as flow control after a status request
+     */
+    public void endResponse() {
+        synchronized (lock) {
+            responseExpected = false;
+        }
+    }
+
+    /**
+     * Wait while the printer has paused the host; called by the port writer
+     * @throws IOException if the pause has lasted longer than the write timeout
+     */
+    public void awaitResume() throws IOException {
+        synchronized (lock) {
+            boolean reported = false;
+            while (paused && running) {
+                long now = System.nanoTime();
+                if (writeTimeoutNanos > 0 && now - pausedAt >= writeTimeoutNanos) {
+                    throw new IOException("Printer has paused the host for "
+                        + TimeUnit.NANOSECONDS.toMillis(now - pausedAt) + " ms");
+                }
+                long remaining = pausedAt + stallNanos - now;
+                try {
+                    if (remaining > 0 || reported) {
+                        long wait = reported ? TimeUnit.SECONDS.toNanos(1) : remaining;
+                        if (writeTimeoutNanos > 0) {
+                            wait = Math.min(wait, pausedAt + writeTimeoutNanos - now);
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(lock, wait);
+                    } else {
+                        logger.warn("Printer has paused the host for {} ms; paper out or cover open?",
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pausedAt));
+                        reported = true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while paused by XOFF", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop reading; a paused writer is released
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        reader.interrupt();
+        try {
+            reader.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void process(int b) {
+        synchronized (lock) {
+            if (responseExpected && (b & responseMask) == responseBits) {
+                responseExpected = false;
+                store(b);
+            } else if (b == XOFF) {
+                if (!paused) {
+                    paused = true;
+                    pausedAt = System.nanoTime();
+                    pauseCount++;
+                }
+            } else if (b == XON) {
+                if (paused) {
+                    paused = false;
+                    totalPausedNanos += System.nanoTime() - pausedAt;
+                    lock.notifyAll();
+                }
+            } else {
+                store(b);
+            }
+        }
+    }
+
+    private void store(int b) {
+        if (receivedCount == received.length) {
+            // Drop the oldest byte nobody has read
+            receivedStart = (receivedStart + 1) % received.length;
+            receivedCount--;
+        }
+        received[(receivedStart + receivedCount) % received.length] = (byte) b;
+        receivedCount++;
+    }
+
+    private void read() {
+        byte[] buffer = new byte[64];
+        while (running) {
+            int count;
+            try {
+                count = source.read(buffer);
+            } catch (IOException e) {
+                // Read timeouts of the serial port end up here as well
+                count = 0;
+            }
+
+            if (count <= 0) {
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+
+            if (wireTrace != null) {
+                wireTrace.incoming(buffer, 0, count);
+            }
+            for (int i = 0; i < count; i++) {
+                process(buffer[i] & 0xFF);
+            }
+        }
+    }
+
+    private class FilteredInputStream extends InputStream {
+        @Override
+        public int available() {
+            synchronized (lock) {
+                return receivedCount;
+            }
+        }
+
+        @Override
+        public int read() {
+            synchronized (lock) {
+                if (receivedCount == 0) {
+                    return -1;
+                }
+                int b = received[receivedStart] & 0xFF;
+                receivedStart = (receivedStart + 1) % received.length;
+                receivedCount--;
+                return b;
+            }
+        }
+    }
+}
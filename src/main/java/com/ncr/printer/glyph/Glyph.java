@@ -0,0 +1,129 @@
+package com.ncr.printer.glyph;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.commands.Ncr7167Commands;
+
+import java.util.Arrays;
+
+/**
+ * A custom character cell for the user-defined (RAM) character set
+ *
+ * Receipt cells are up to 12 dot columns of 24 dots (3 bytes per column,
+ * top byte first, most significant bit on top); only the first 10 columns
+ * are printed in standard pitch. Slip cells are 12 columns of 7 dots, of
+ * which columns 2-11 are printed.
+ */
+public final class Glyph {
+
+    public static final int RECEIPT_HEIGHT = 24;
+    public static final int RECEIPT_MAX_COLUMNS = 12;
+    public static final int SLIP_COLUMNS = 12;
+
+    private final String name;
+    private final Ncr7167Config.Station station;
+    private final byte[] columns;
+
+    private Glyph(String name, Ncr7167Config.Station station, byte[] columns) {
+        this.name = name;
+        this.station = station;
+        this.columns = columns;
+    }
+
+    /**
+     * Receipt glyph from raw column data
+     * @param columns 3 bytes per dot column, 1-12 columns
+     */
+    public static Glyph receipt(String name, byte[] columns) throws Ncr7167Exception {
+        if (columns.length == 0 || columns.length % 3 != 0 || columns.length / 3 > RECEIPT_MAX_COLUMNS) {
+            throw new Ncr7167Exception("Receipt glyph needs 3 bytes for each of 1-12 columns: " + name);
+        }
+        return new Glyph(name, Ncr7167Config.Station.RECEIPT, columns.clone());
+    }
+
+    /**
+     * Slip glyph from raw column data
+     * @param columns 12 column bytes, 7 dots each
+     */
+    public static Glyph slip(String name, byte[] columns) throws Ncr7167Exception {
+        if (columns.length != SLIP_COLUMNS) {
+            throw new Ncr7167Exception("Slip glyph needs exactly 12 column bytes: " + name);
+        }
+        return new Glyph(name, Ncr7167Config.Station.SLIP, columns.clone());
+    }
+
+    /**
+     * Receipt glyph drawn as text, one string per dot row from the top;
+     * '#' marks a printed dot, anything else is blank
+     */
+    public static Glyph receiptPattern(String name, String... rows) throws Ncr7167Exception {
+        if (rows.length == 0 || rows.length > RECEIPT_HEIGHT) {
+            throw new Ncr7167Exception("Receipt glyph pattern needs 1-24 rows: " + name);
+        }
+        int width = 0;
+        for (String row : rows) {
+            width = Math.max(width, row.length());
+        }
+        if (width == 0 || width > RECEIPT_MAX_COLUMNS) {
+            throw new Ncr7167Exception("Receipt glyph pattern needs 1-12 columns: " + name);
+        }
+
+        byte[] columns = new byte[width * 3];
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < rows[y].length(); x++) {
+                if (rows[y].charAt(x) == '#') {
+                    columns[x * 3 + y / 8] |= (byte) (0x80 >>> (y % 8));
+                }
+            }
+        }
+        return new Glyph(name, Ncr7167Config.Station.RECEIPT, columns);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Ncr7167Config.Station getStation() {
+        return station;
+    }
+
+    /**
+     * Number of dot columns in the cell
+     */
+    public int getWidth() {
+        return station == Ncr7167Config.Station.RECEIPT ? columns.length / 3 : SLIP_COLUMNS;
+    }
+
+    /**
+     * ESC & command that defines this glyph at the given character code
+     */
+    public byte[] toDefineCommand(int code) {
+        boolean receipt = station == Ncr7167Config.Station.RECEIPT;
+        byte[] define = Ncr7167Commands.EscCommands.DEFINE_USER_DEFINED_CHARS;
+        byte[] command = new byte[define.length + 3 + (receipt ? 1 : 0) + columns.length];
+        int position = define.length;
+        System.arraycopy(define, 0, command, 0, position);
+        command[position++] = (byte) (receipt ? 3 : 0);
+        command[position++] = (byte) code;
+        command[position++] = (byte) code;
+        if (receipt) {
+            command[position++] = (byte) getWidth();
+        }
+        System.arraycopy(columns, 0, command, position, columns.length);
+        return command;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Glyph)) {
+            return false;
+        }
+        Glyph other = (Glyph) o;
+        return name.equals(other.name) && station == other.station && Arrays.equals(columns, other.columns);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * name.hashCode() + Arrays.hashCode(columns);
+    }
+}
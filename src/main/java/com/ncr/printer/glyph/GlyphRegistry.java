@@ -0,0 +1,94 @@
+package com.ncr.printer.glyph;
+
+import com.ncr.printer.Ncr7167Exception;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Host-side registry mapping custom glyphs to user-defined character codes
+ *
+ * Each registered glyph gets its own code from the configured range. The
+ * printer downloads a glyph the first time it is used after a reset and
+ * from then on prints it as that single code byte.
+ */
+public class GlyphRegistry {
+
+    // C1 control range: never produced by ISO-8859-1 text
+    public static final int DEFAULT_FIRST_CODE = 0x80;
+    public static final int DEFAULT_LAST_CODE = 0x9F;
+
+    private final int firstCode;
+    private final int lastCode;
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final Glyph[] glyphs = new Glyph[256];
+    private int nextCode;
+
+    public GlyphRegistry() {
+        this(DEFAULT_FIRST_CODE, DEFAULT_LAST_CODE);
+    }
+
+    /**
+     * @param firstCode first character code handed out (0x21-0xFF)
+     * @param lastCode last character code handed out
+     */
+    public GlyphRegistry(int firstCode, int lastCode) {
+        if (firstCode <= 0x20 || lastCode > 0xFF || firstCode > lastCode) {
+            throw new IllegalArgumentException("Glyph codes must be within 0x21-0xFF");
+        }
+        this.firstCode = firstCode;
+        this.lastCode = lastCode;
+        this.nextCode = firstCode;
+    }
+
+    /**
+     * Register a glyph, replacing an earlier glyph of the same name
+     * @return character code the glyph is printed with
+     */
+    public synchronized int register(Glyph glyph) throws Ncr7167Exception {
+        Integer code = codes.get(glyph.getName());
+        if (code == null) {
+            if (nextCode > lastCode) {
+                throw new Ncr7167Exception("No free user-defined character code for glyph " + glyph.getName());
+            }
+            code = nextCode++;
+            codes.put(glyph.getName(), code);
+        }
+        glyphs[code] = glyph;
+        return code;
+    }
+
+    /**
+     * Character code of a registered glyph
+     */
+    public synchronized int getCode(String name) throws Ncr7167Exception {
+        Integer code = codes.get(name);
+        if (code == null) {
+            throw new Ncr7167Exception("Glyph is not registered: " + name);
+        }
+        return code;
+    }
+
+    /**
+     * Glyph registered at a character code, or null
+     */
+    public synchronized Glyph getGlyph(int code) {
+        return code >= 0 && code < glyphs.length ? glyphs[code] : null;
+    }
+
+    public synchronized boolean contains(String name) {
+        return codes.containsKey(name);
+    }
+
+    public synchronized int size() {
+        return codes.size();
+    }
+
+    public int getFirstCode() {
+        return firstCode;
+    }
+
+    public int getLastCode() {
+        return lastCode;
+    }
+}
@@ -0,0 +1,12 @@
+package com.ncr.printer.health;
+
+/**
+ * Notified by the {@link PrinterWatchdog} when the printer's health changes
+ */
+public interface HealthListener {
+
+    /**
+     * Called on the watchdog thread; must not block
+     */
+    void healthChanged(PrinterHealth previous, PrinterHealth current);
+}
@@ -0,0 +1,13 @@
+package com.ncr.printer.health;
+
+/**
+ * Printer state as seen by the {@link PrinterWatchdog}
+ */
+public enum PrinterHealth {
+    // Answering status probes, or printing
+    CONNECTED,
+    // Missed a status probe; probed again quickly
+    DEGRADED,
+    // Missed too many probes or the port is closed; reconnects are attempted
+    OFFLINE
+}
@@ -0,0 +1,233 @@
+package com.ncr.printer.health;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background health check of one printer
+ *
+ * A watchdog thread sends real-time status requests on an adaptive
+ * schedule: every idle interval while the printer is healthy, every
+ * recovery interval after a missed probe or a failed write, and not at
+ * all while jobs are flowing, since their traffic already shows the port
+ * is alive. After too many missed probes the printer is reported offline
+ * and reconnected with growing delays, so the next sale does not have to
+ * wait out the detection and reconnect itself.
+ */
+public class PrinterWatchdog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrinterWatchdog.class);
+
+    // Errors this recent keep probes at the recovery interval
+    private static final long RECENT_ERROR_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long MAX_RECONNECT_DELAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final Ncr7167Printer printer;
+    private final long idleIntervalNanos;
+    private final long recoveryIntervalNanos;
+    private final int offlineThreshold;
+    private final List<HealthListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private volatile PrinterHealth health;
+    private volatile long probeCount;
+    private volatile long reconnectCount;
+
+    // Used by the watchdog thread only
+    private int missedProbes;
+    private int reconnectAttempts;
+    private long lastProbeNanos;
+    private long lastProbeFailureNanos;
+
+    /**
+     * Create a watchdog using the printer's watchdog settings
+     */
+    public PrinterWatchdog(Ncr7167Printer printer) {
+        Ncr7167Config config = printer.getConfig();
+        this.printer = printer;
+        this.idleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getWatchdogIdleInterval());
+        this.recoveryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getWatchdogRecoveryInterval());
+        this.offlineThreshold = Math.max(1, config.getWatchdogOfflineThreshold());
+        this.health = printer.isConnected() ? PrinterHealth.CONNECTED : PrinterHealth.OFFLINE;
+        this.thread = new Thread(this::run, "ncr7167-watchdog");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void addListener(HealthListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(HealthListener listener) {
+        listeners.remove(listener);
+    }
+
+    public PrinterHealth getHealth() {
+        return health;
+    }
+
+    /**
+     * Number of status probes sent so far
+     */
+    public long getProbeCount() {
+        return probeCount;
+    }
+
+    /**
+     * Number of reconnect attempts so far
+     */
+    public long getReconnectCount() {
+        return reconnectCount;
+    }
+
+    /**
+     * Stop the watchdog thread; the printer is left as it is
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                synchronized (lock) {
+                    if (running) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, nextDelayNanos());
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!running) {
+                return;
+            }
+
+            try {
+                check();
+            } catch (RuntimeException e) {
+                logger.warn("Printer health check failed", e);
+            }
+        }
+    }
+
+    private long nextDelayNanos() {
+        switch (health) {
+            case OFFLINE:
+                // Back off between reconnect attempts
+                int doublings = Math.min(Math.max(0, reconnectAttempts - 1), 16);
+                return Math.min(recoveryIntervalNanos << doublings, MAX_RECONNECT_DELAY_NANOS);
+            case DEGRADED:
+                return recoveryIntervalNanos;
+            default:
+                return recentlyFailed() ? recoveryIntervalNanos : idleIntervalNanos;
+        }
+    }
+
+    private boolean recentlyFailed() {
+        long now = System.nanoTime();
+        long lastError = printer.getLastErrorNanos();
+        return lastError != 0 && now - lastError < RECENT_ERROR_NANOS
+            || lastProbeFailureNanos != 0 && now - lastProbeFailureNanos < RECENT_ERROR_NANOS;
+    }
+
+    private void check() {
+        if (health == PrinterHealth.OFFLINE || !printer.isConnected()) {
+            reconnect();
+        } else if (health != PrinterHealth.CONNECTED || !isTrafficFlowing()) {
+            probe();
+        }
+    }
+
+    /**
+     * True while jobs are queued or the port accepted other traffic since the last probe
+     */
+    private boolean isTrafficFlowing() {
+        if (printer.getPendingBytes() > 0) {
+            return true;
+        }
+        long lastWrite = printer.getLastWriteNanos();
+        return lastWrite != 0 && lastWrite - lastProbeNanos > 0
+            && System.nanoTime() - lastWrite < idleIntervalNanos;
+    }
+
+    private void probe() {
+        try {
+            probeCount++;
+            printer.requestStatus();
+            missedProbes = 0;
+            setHealth(PrinterHealth.CONNECTED);
+        } catch (Ncr7167Exception e) {
+            missedProbes++;
+            lastProbeFailureNanos = System.nanoTime();
+            logger.debug("Status probe {} of {} missed: {}", missedProbes, offlineThreshold, e.getMessage());
+            setHealth(missedProbes >= offlineThreshold ? PrinterHealth.OFFLINE : PrinterHealth.DEGRADED);
+        } finally {
+            lastProbeNanos = System.nanoTime();
+        }
+    }
+
+    private void reconnect() {
+        reconnectAttempts++;
+        reconnectCount++;
+        setHealth(PrinterHealth.OFFLINE);
+        logger.info("Reconnecting to printer (attempt {})", reconnectAttempts);
+
+        printer.disconnect();
+        try {
+            printer.connect();
+        } catch (Ncr7167Exception e) {
+            logger.warn("Reconnect failed: {}", e.getMessage());
+            return;
+        }
+
+        // Only a printer that answers counts as back
+        missedProbes = 0;
+        probe();
+        if (health == PrinterHealth.CONNECTED) {
+            logger.info("Printer is back after {} reconnect attempt(s)", reconnectAttempts);
+            reconnectAttempts = 0;
+        } else {
+            setHealth(PrinterHealth.OFFLINE);
+        }
+    }
+
+    private void setHealth(PrinterHealth current) {
+        PrinterHealth previous = health;
+        if (previous == current) {
+            return;
+        }
+        health = current;
+        logger.info("Printer health changed from {} to {}", previous, current);
+        for (HealthListener listener : listeners) {
+            try {
+                listener.healthChanged(previous, current);
+            } catch (RuntimeException e) {
+                logger.warn("Health listener failed", e);
+            }
+        }
+    }
+}
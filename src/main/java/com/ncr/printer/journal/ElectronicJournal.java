@@ -0,0 +1,514 @@
+package com.ncr.printer.journal;
+
+import com.ncr.printer.PrintJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Searchable electronic journal of everything printed
+ *
+ * Each printed job (decoded text plus raw bytes) is compressed and
+ * appended to a segment file. Segments are per day and roll over when
+ * they reach the size limit. Every segment has a small index file with
+ * the time, lane and transaction ID of each record, which is loaded into
+ * memory so lookups by transaction ID or date only read the matching
+ * records.
+ *
+ * Records are written by a background thread; {@link #record(PrintJob)}
+ * only enqueues the job, so journaling never delays a receipt. If the
+ * queue is full the job is dropped and counted rather than blocking the
+ * print path.
+ */
+public class ElectronicJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ElectronicJournal.class);
+
+    public static final long DEFAULT_SEGMENT_SIZE = 16L * 1024 * 1024;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final long DEFAULT_FLUSH_TIMEOUT = 10000; // 10 seconds
+
+    // How often a flush checks that the writer thread is still running
+    private static final long WRITER_CHECK_MILLIS = 100;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String DATA_SUFFIX = ".ej";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final Path directory;
+    private final String lane;
+    private final long segmentSize;
+    private final ZoneId zone;
+    private final BlockingQueue<Object> queue;
+    private final Thread writer;
+    private final AtomicLong dropped = new AtomicLong();
+
+    // In-memory index, both maps guarded by byTransaction
+    private final Map<String, List<Location>> byTransaction = new HashMap<>();
+    private final TreeMap<Long, List<Location>> byTime = new TreeMap<>();
+
+    // Owned by the writer thread
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private String currentSegment;
+    private LocalDate currentDay;
+    private DataOutputStream dataOut;
+    private DataOutputStream indexOut;
+    private long dataPosition;
+    private final List<Location> unflushed = new ArrayList<>();
+
+    private volatile boolean closed;
+
+    public ElectronicJournal(Path directory, String lane) throws IOException {
+        this(directory, lane, DEFAULT_SEGMENT_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param directory directory holding the journal segments
+     * @param lane lane (terminal) identifier recorded with each job
+     * @param segmentSize size at which a segment rolls over
+     * @param queueCapacity number of jobs that may wait for the writer thread
+     */
+    public ElectronicJournal(Path directory, String lane, long segmentSize, int queueCapacity) throws IOException {
+        this.directory = directory;
+        this.lane = lane;
+        this.segmentSize = segmentSize;
+        this.zone = ZoneId.systemDefault();
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        Files.createDirectories(directory);
+        loadIndexes();
+
+        this.writer = new Thread(this::writeLoop, "ncr7167-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue a printed job for journaling; never blocks
+     */
+    public void record(PrintJob job) {
+        if (closed) {
+            return;
+        }
+        Record record = new Record(job.getJobId(), lane, System.currentTimeMillis(), job.getData());
+        if (!queue.offer(record)) {
+            long count = dropped.incrementAndGet();
+            logger.warn("Journal queue full, job {} not journaled ({} dropped)", job.getJobId(), count);
+        }
+    }
+
+    /**
+     * Wait until all jobs queued so far are written, at most {@link #DEFAULT_FLUSH_TIMEOUT} ms
+     * @return true if they were written, false after close, timeout or writer failure
+     */
+    public boolean flush() throws InterruptedException {
+        return flush(DEFAULT_FLUSH_TIMEOUT);
+    }
+
+    /**
+     * Wait until all jobs queued so far are written
+     * @param timeoutMillis longest time to wait
+     * @return true if they were written, false after close, timeout or writer failure
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        CountDownLatch latch = new CountDownLatch(1);
+        while (!queue.offer(latch, WRITER_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!isWriting() || System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+        }
+        while (!latch.await(WRITER_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!isWriting()) {
+                return false;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                logger.warn("Journal flush timed out after {} ms", timeoutMillis);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isWriting() {
+        return !closed && writer.isAlive();
+    }
+
+    /**
+     * Number of jobs dropped because the writer could not keep up
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Find all journaled jobs of a transaction
+     */
+    public List<JournalEntry> findByTransaction(String transactionId) throws IOException {
+        List<Location> locations;
+        synchronized (byTransaction) {
+            List<Location> found = byTransaction.get(transactionId);
+            locations = found == null ? Collections.<Location>emptyList() : new ArrayList<>(found);
+        }
+        return read(locations);
+    }
+
+    /**
+     * Find all jobs printed on a day
+     * @param lane lane to match, or null for all lanes
+     */
+    public List<JournalEntry> findByDate(LocalDate date, String lane) throws IOException {
+        Instant from = date.atStartOfDay(zone).toInstant();
+        Instant to = date.plusDays(1).atStartOfDay(zone).toInstant();
+        return findByTime(from, to, lane);
+    }
+
+    /**
+     * Find all jobs printed in [from, to)
+     * @param lane lane to match, or null for all lanes
+     */
+    public List<JournalEntry> findByTime(Instant from, Instant to, String lane) throws IOException {
+        List<Location> locations = new ArrayList<>();
+        synchronized (byTransaction) {
+            for (List<Location> atTime : byTime.subMap(from.toEpochMilli(), to.toEpochMilli()).values()) {
+                for (Location location : atTime) {
+                    if (lane == null || lane.equals(location.lane)) {
+                        locations.add(location);
+                    }
+                }
+            }
+        }
+        return read(locations);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Object item = queue.take();
+                if (item instanceof CountDownLatch) {
+                    flushStreams();
+                    ((CountDownLatch) item).countDown();
+                    continue;
+                }
+
+                try {
+                    write((Record) item);
+                } catch (RuntimeException e) {
+                    // A bad record must not stop the writer, flush() would wait on it
+                    logger.error("Failed to journal job {}", ((Record) item).transactionId, e);
+                }
+                if (queue.isEmpty()) {
+                    flushStreams();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closing
+        } finally {
+            closeStreams();
+            deflater.end();
+        }
+    }
+
+    private void write(Record record) {
+        try {
+            LocalDate day = Instant.ofEpochMilli(record.timestamp).atZone(zone).toLocalDate();
+            if (dataOut == null || !day.equals(currentDay) || dataPosition >= segmentSize) {
+                openSegment(day);
+            }
+
+            byte[] compressed = compress(record);
+            long offset = dataPosition;
+            dataOut.writeInt(compressed.length);
+            dataOut.write(compressed);
+            dataPosition += 4 + compressed.length;
+
+            indexOut.writeLong(record.timestamp);
+            indexOut.writeLong(offset);
+            indexOut.writeUTF(record.lane == null ? "" : record.lane);
+            indexOut.writeUTF(record.transactionId == null ? "" : record.transactionId);
+
+            unflushed.add(new Location(currentSegment, offset, record.timestamp, record.lane, record.transactionId));
+
+        } catch (IOException e) {
+            logger.error("Failed to journal job {}", record.transactionId, e);
+        }
+    }
+
+    private void openSegment(LocalDate day) throws IOException {
+        closeStreams();
+
+        String prefix = SEGMENT_PREFIX + DAY_FORMAT.format(day) + "-";
+        int number = 1;
+        while (Files.exists(directory.resolve(prefix + String.format("%03d", number) + DATA_SUFFIX))) {
+            number++;
+        }
+
+        currentSegment = prefix + String.format("%03d", number);
+        currentDay = day;
+        dataPosition = 0;
+        dataOut = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(directory.resolve(currentSegment + DATA_SUFFIX).toFile())));
+        indexOut = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(directory.resolve(currentSegment + INDEX_SUFFIX).toFile())));
+    }
+
+    private void flushStreams() {
+        try {
+            if (dataOut != null) {
+                // Data first, so an index entry never points past the data file
+                dataOut.flush();
+                indexOut.flush();
+            }
+            // Records become searchable once they are readable from the file
+            for (Location location : unflushed) {
+                index(location);
+            }
+            unflushed.clear();
+        } catch (IOException e) {
+            logger.error("Failed to flush journal segment {}", currentSegment, e);
+        }
+    }
+
+    private void closeStreams() {
+        flushStreams();
+        try {
+            if (dataOut != null) {
+                dataOut.close();
+                indexOut.close();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to close journal segment {}", currentSegment, e);
+        }
+        dataOut = null;
+        indexOut = null;
+    }
+
+    private byte[] compress(Record record) throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream(record.data.length * 2 + 64);
+        DataOutputStream out = new DataOutputStream(plain);
+        out.writeLong(record.timestamp);
+        out.writeUTF(record.lane == null ? "" : record.lane);
+        out.writeUTF(record.transactionId == null ? "" : record.transactionId);
+        byte[] text = JournalText.extract(record.data).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(text.length);
+        out.write(text);
+        out.writeInt(record.data.length);
+        out.write(record.data);
+
+        byte[] input = plain.toByteArray();
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(input.length / 2 + 16);
+        byte[] chunk = new byte[4096];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(chunk);
+            compressed.write(chunk, 0, count);
+        }
+        return compressed.toByteArray();
+    }
+
+    private List<JournalEntry> read(List<Location> locations) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>(locations.size());
+        if (locations.isEmpty()) {
+            return entries;
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            RandomAccessFile file = null;
+            String open = null;
+            try {
+                for (Location location : locations) {
+                    if (!location.segment.equals(open)) {
+                        if (file != null) {
+                            file.close();
+                        }
+                        file = new RandomAccessFile(directory.resolve(location.segment + DATA_SUFFIX).toFile(), "r");
+                        open = location.segment;
+                    }
+                    entries.add(readEntry(file, location.offset, inflater));
+                }
+            } finally {
+                if (file != null) {
+                    file.close();
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return entries;
+    }
+
+    private static JournalEntry readEntry(RandomAccessFile file, long offset, Inflater inflater) throws IOException {
+        file.seek(offset);
+        byte[] compressed = new byte[file.readInt()];
+        file.readFully(compressed);
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream(compressed.length * 3);
+        inflater.reset();
+        inflater.setInput(compressed);
+        byte[] chunk = new byte[4096];
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(chunk);
+                if (count == 0 && inflater.needsInput()) {
+                    throw new IOException("Truncated journal record at offset " + offset);
+                }
+                plain.write(chunk, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt journal record at offset " + offset, e);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain.toByteArray()));
+        long timestamp = in.readLong();
+        String lane = in.readUTF();
+        String transactionId = in.readUTF();
+        byte[] text = new byte[in.readInt()];
+        in.readFully(text);
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+
+        return new JournalEntry(transactionId, lane, timestamp, new String(text, StandardCharsets.UTF_8), data);
+    }
+
+    private void loadIndexes() throws IOException {
+        List<Path> indexes = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + INDEX_SUFFIX)) {
+            for (Path file : stream) {
+                indexes.add(file);
+            }
+        }
+        Collections.sort(indexes);
+
+        for (Path file : indexes) {
+            String name = file.getFileName().toString();
+            String segment = name.substring(0, name.length() - INDEX_SUFFIX.length());
+            Path data = directory.resolve(segment + DATA_SUFFIX);
+            if (!Files.exists(data)) {
+                continue;
+            }
+            long dataSize = Files.size(data);
+
+            try (InputStream stream = new BufferedInputStream(Files.newInputStream(file))) {
+                DataInputStream in = new DataInputStream(stream);
+                while (true) {
+                    long timestamp = in.readLong();
+                    long offset = in.readLong();
+                    String recordLane = in.readUTF();
+                    String transactionId = in.readUTF();
+                    if (offset >= dataSize) {
+                        break;
+                    }
+                    index(new Location(segment, offset, timestamp, recordLane, transactionId));
+                }
+            } catch (EOFException e) {
+                // End of index (a torn last entry is ignored)
+            }
+        }
+    }
+
+    private void index(Location location) {
+        synchronized (byTransaction) {
+            if (location.transactionId != null && !location.transactionId.isEmpty()) {
+                addTo(byTransaction, location.transactionId, location);
+            }
+            addTo(byTime, location.timestamp, location);
+        }
+    }
+
+    private static <K> void addTo(Map<K, List<Location>> map, K key, Location location) {
+        List<Location> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(key, list);
+        }
+        list.add(location);
+    }
+
+    private static final class Record {
+        final String transactionId;
+        final String lane;
+        final long timestamp;
+        final byte[] data;
+
+        Record(String transactionId, String lane, long timestamp, byte[] data) {
+            this.transactionId = transactionId;
+            this.lane = lane;
+            this.timestamp = timestamp;
+            this.data = data;
+        }
+    }
+
+    private static final class Location {
+        final String segment;
+        final long offset;
+        final long timestamp;
+        final String lane;
+        final String transactionId;
+
+        Location(String segment, long offset, long timestamp, String lane, String transactionId) {
+            this.segment = segment;
+            this.offset = offset;
+            this.timestamp = timestamp;
+            this.lane = lane;
+            this.transactionId = transactionId;
+        }
+    }
+}
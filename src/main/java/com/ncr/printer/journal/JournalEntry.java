@@ -0,0 +1,40 @@
+package com.ncr.printer.journal;
+
+/**
+ * One printed job as stored in the electronic journal
+ */
+public class JournalEntry {
+
+    private final String transactionId;
+    private final String lane;
+    private final long timestamp;
+    private final String text;
+    private final byte[] data;
+
+    public JournalEntry(String transactionId, String lane, long timestamp, String text, byte[] data) {
+        this.transactionId = transactionId;
+        this.lane = lane;
+        this.timestamp = timestamp;
+        this.text = text;
+        this.data = data;
+    }
+
+    public String getTransactionId() { return transactionId; }
+
+    public String getLane() { return lane; }
+
+    /**
+     * Time the job was printed, in epoch milliseconds
+     */
+    public long getTimestamp() { return timestamp; }
+
+    /**
+     * Printable text of the job with control sequences removed
+     */
+    public String getText() { return text; }
+
+    /**
+     * Raw command bytes as sent to the printer
+     */
+    public byte[] getData() { return data; }
+}
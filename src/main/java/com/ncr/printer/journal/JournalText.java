@@ -0,0 +1,42 @@
+package com.ncr.printer.journal;
+
+import com.ncr.printer.commands.Ncr7167Commands;
+import com.ncr.printer.decode.CommandDecoder;
+import com.ncr.printer.decode.CommandListener;
+import com.ncr.printer.decode.CommandSpec;
+
+/**
+ * Extracts the printable text from an encoded job for the journal
+ */
+final class JournalText {
+
+    private JournalText() {
+    }
+
+    static String extract(byte[] data) {
+        StringBuilder text = new StringBuilder(data.length);
+        CommandDecoder decoder = new CommandDecoder(new CommandListener() {
+            @Override
+            public void text(byte[] bytes, int offset, int length, long position) {
+                for (int i = offset; i < offset + length; i++) {
+                    text.append((char) (bytes[i] & 0xFF));
+                }
+            }
+
+            @Override
+            public void command(CommandSpec spec, byte[] bytes, int offset, int length, long position) {
+                if (length == 1 && bytes[offset] == Ncr7167Commands.PRINT_AND_FEED_ONE_LINE) {
+                    text.append('\n');
+                } else if (length == 3 && bytes[offset] == Ncr7167Commands.ESC && bytes[offset + 1] == 0x64) {
+                    // Print and Feed n Lines, as merged line feeds come out of the optimizer
+                    for (int i = 0; i < (bytes[offset + 2] & 0xFF); i++) {
+                        text.append('\n');
+                    }
+                }
+            }
+        });
+        decoder.feed(data, 0, data.length);
+        decoder.finish();
+        return text.toString();
+    }
+}
@@ -0,0 +1,278 @@
+package com.ncr.printer.layout;
+
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+
+import java.util.Arrays;
+
+/**
+ * Lays out text lines for the printer's active station and pitch
+ *
+ * Text is encoded straight into a reusable line buffer and padded from
+ * precomputed tables, so laying out a line creates no intermediate
+ * Strings; each finished line, including its line feed, is handed to the
+ * printer as one command. Trailing padding is never sent. Instances keep
+ * per-line state and must not be shared between threads.
+ */
+public class LineLayout {
+
+    public enum Align {
+        LEFT, CENTER, RIGHT
+    }
+
+    // Wider than any station and pitch (56 columns compressed receipt)
+    private static final int MAX_WIDTH = 64;
+
+    // Pad tables: one full-width line of each byte value, built once so layouts on any thread can share them
+    private static final byte[][] FILLS = new byte[256][];
+
+    static {
+        for (int b = 0; b < FILLS.length; b++) {
+            FILLS[b] = new byte[MAX_WIDTH];
+            Arrays.fill(FILLS[b], (byte) b);
+        }
+    }
+
+    private final Ncr7167Printer printer;
+    private final byte[] line = new byte[MAX_WIDTH + 1];
+    private int length;
+
+    // Column widths of the table last laid out, for the width they were resolved for
+    private Table resolvedTable;
+    private int resolvedWidth = -1;
+    private int[] widths = new int[0];
+
+    public LineLayout(Ncr7167Printer printer) {
+        this.printer = printer;
+    }
+
+    /**
+     * Columns per line for the printer's current station, pitch and width mode
+     */
+    public int getWidth() {
+        return Math.min(MAX_WIDTH, printer.getLineWidth());
+    }
+
+    /**
+     * Print one line of text with the given alignment, truncated to the width
+     */
+    public void text(CharSequence text, Align align) throws Ncr7167Exception {
+        int width = getWidth();
+        int count = Math.min(text.length(), width);
+        length = 0;
+        pad(' ', leftPadding(align, width, count));
+        append(text, 0, count);
+        flushLine();
+    }
+
+    /**
+     * Print a line filled with one character, e.g. a separator
+     */
+    public void fill(char c) throws Ncr7167Exception {
+        length = 0;
+        pad(c, getWidth());
+        flushLine();
+    }
+
+    /**
+     * Print a left-aligned label and a right-aligned value on one line;
+     * the label is shortened so at least one space separates the two
+     */
+    public void pair(CharSequence left, CharSequence right) throws Ncr7167Exception {
+        int width = getWidth();
+        int rightCount = Math.min(right.length(), width);
+        int leftCount = left.length();
+        if (leftCount + rightCount >= width) {
+            leftCount = Math.max(0, width - rightCount - 1);
+        }
+
+        length = 0;
+        append(left, 0, leftCount);
+        pad(' ', width - leftCount - rightCount);
+        append(right, right.length() - rightCount, right.length());
+        flushLine();
+    }
+
+    /**
+     * Print text word-wrapped over as many lines as needed; words longer
+     * than a line are split
+     */
+    public void wrap(CharSequence text, Align align) throws Ncr7167Exception {
+        int width = getWidth();
+        int position = 0;
+        int end = text.length();
+        while (position < end) {
+            while (position < end && text.charAt(position) == ' ') {
+                position++;
+            }
+            if (position == end) {
+                break;
+            }
+
+            int lineEnd = Math.min(end, position + width);
+            if (lineEnd < end && text.charAt(lineEnd) != ' ') {
+                // Break after the last space that fits, if there is one
+                int space = lineEnd - 1;
+                while (space > position && text.charAt(space) != ' ') {
+                    space--;
+                }
+                if (space > position) {
+                    lineEnd = space;
+                }
+            }
+            int contentEnd = lineEnd;
+            while (contentEnd > position && text.charAt(contentEnd - 1) == ' ') {
+                contentEnd--;
+            }
+
+            length = 0;
+            pad(' ', leftPadding(align, width, contentEnd - position));
+            append(text, position, contentEnd);
+            flushLine();
+            position = lineEnd;
+        }
+    }
+
+    /**
+     * Create a table whose columns share the line; a column of width 0
+     * takes whatever the fixed columns leave
+     */
+    public Table table(Column... columns) {
+        return new Table(columns);
+    }
+
+    /**
+     * Print one row of a table; missing cells are blank, text is cut at
+     * the column width
+     */
+    public void row(Table table, CharSequence... cells) throws Ncr7167Exception {
+        int width = getWidth();
+        if (resolvedTable != table || resolvedWidth != width) {
+            resolve(table, width);
+        }
+
+        Column[] columns = table.columns;
+        length = 0;
+        int columnStart = 0;
+        for (int i = 0; i < columns.length; i++) {
+            CharSequence cell = i < cells.length && cells[i] != null ? cells[i] : "";
+            int count = Math.min(cell.length(), widths[i]);
+            int from = columns[i].align == Align.RIGHT ? cell.length() - count : 0;
+
+            pad(' ', columnStart - length);
+            pad(' ', leftPadding(columns[i].align, widths[i], count));
+            append(cell, from, from + count);
+            columnStart += widths[i] + 1;
+        }
+        flushLine();
+    }
+
+    private void resolve(Table table, int width) {
+        Column[] columns = table.columns;
+        if (widths.length < columns.length) {
+            widths = new int[columns.length];
+        }
+        int fixed = columns.length - 1;
+        int flexible = 0;
+        for (Column column : columns) {
+            fixed += column.width;
+            if (column.width == 0) {
+                flexible++;
+            }
+        }
+        int remaining = Math.max(0, width - fixed);
+        int used = 0;
+        for (int i = 0; i < columns.length; i++) {
+            int w = columns[i].width;
+            if (w == 0) {
+                w = remaining / flexible;
+                remaining -= w;
+                flexible--;
+            }
+            // Columns past the line width are cut off
+            w = Math.max(0, Math.min(w, width - used));
+            widths[i] = w;
+            used = Math.min(width, used + w + 1);
+        }
+        resolvedTable = table;
+        resolvedWidth = width;
+    }
+
+    private static int leftPadding(Align align, int width, int count) {
+        switch (align) {
+            case CENTER:
+                return (width - count) / 2;
+            case RIGHT:
+                return width - count;
+            default:
+                return 0;
+        }
+    }
+
+    private void append(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            line[length++] = c < 256 ? (byte) c : (byte) '?';
+        }
+    }
+
+    private void pad(char c, int count) {
+        if (count <= 0) {
+            return;
+        }
+        System.arraycopy(fillTable(c), 0, line, length, count);
+        length += count;
+    }
+
+    private static byte[] fillTable(char c) {
+        return FILLS[c < 256 ? c : '?'];
+    }
+
+    private void flushLine() throws Ncr7167Exception {
+        // Drop trailing blanks; the printer does not need them
+        while (length > 0 && line[length - 1] == ' ') {
+            length--;
+        }
+        line[length++] = 0x0A;
+        printer.sendCommand(line, 0, length);
+    }
+
+    /**
+     * Fixed or flexible column of a table
+     */
+    public static final class Column {
+        private final int width;
+        private final Align align;
+
+        /**
+         * @param width column width in characters, 0 for the remaining space
+         * @param align alignment of cell text within the column
+         */
+        public Column(int width, Align align) {
+            this.width = width;
+            this.align = align;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public Align getAlign() {
+            return align;
+        }
+    }
+
+    /**
+     * Columns laid out side by side, separated by one space
+     * A table holds only its columns; rows are printed with
+     * {@link LineLayout#row(Table, CharSequence...)}, so one table can be
+     * shared by layouts on any thread.
+     */
+    public static final class Table {
+        private final Column[] columns;
+
+        public Table(Column... columns) {
+            this.columns = columns.clone();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.ncr.printer.optimize;
+
+import com.ncr.printer.commands.Ncr7167Commands;
+import com.ncr.printer.decode.CommandDecoder;
+import com.ncr.printer.decode.CommandListener;
+import com.ncr.printer.decode.CommandSpec;
+
+import java.util.Arrays;
+
+/**
+ * Rewrites an encoded command stream into a shorter equivalent
+ *
+ * The stream is decoded in one pass and two kinds of waste are removed:
+ * <ul>
+ *   <li>runs of LF and ESC d are merged into the fewest feed commands;</li>
+ *   <li>consecutive print mode commands (DC2, DC3, ESC E, ESC -, ESC 16,
+ *       ESC !) are reduced to the settings that actually change, or to a
+ *       single ESC ! when every mode bit is known.</li>
+ * </ul>
+ * Mode settings are only dropped as redundant once the stream itself has
+ * set them, so the result does not depend on the printer's state before
+ * the job. Marked offsets (copy slots, urgent-command boundaries) are
+ * never merged across and are moved to their new positions.
+ * Instances are not thread-safe.
+ */
+public class PeepholeOptimizer {
+
+    // Print mode attributes, in ESC ! bit order
+    private static final int PITCH = 0;
+    private static final int EMPHASIZED = 1;
+    private static final int DOUBLE_HIGH = 2;
+    private static final int DOUBLE_WIDE = 3;
+    private static final int UNDERLINE = 4;
+    private static final int[] MODE_BITS = {0x01, 0x08, 0x10, 0x20, 0x80};
+    private static final int UNKNOWN = -1;
+
+    private static final int MAX_FEED = 255;
+
+    private byte[] out;
+    private int outLength;
+    private int[] marks;
+    private int nextMark;
+
+    // Line feeds waiting to be written
+    private int feedLines;
+
+    // Mode settings in effect before the pending mode commands, and after them
+    private final int[] modes = new int[MODE_BITS.length];
+    private final int[] targetModes = new int[MODE_BITS.length];
+    private final byte[] modeCommands = new byte[64];
+    private int modeCommandsLength;
+
+    /**
+     * Optimize a complete stream
+     */
+    public byte[] optimize(byte[] data) {
+        return optimize(data, new int[0]);
+    }
+
+    /**
+     * Optimize a complete stream, keeping marked offsets between commands
+     * @param marks ascending offsets in data; replaced in place with the
+     *              matching offsets in the result
+     * @return the shorter stream, or data itself if nothing was saved
+     */
+    public byte[] optimize(byte[] data, int[] marks) {
+        this.out = new byte[data.length];
+        this.outLength = 0;
+        this.marks = marks;
+        this.nextMark = 0;
+        this.feedLines = 0;
+        this.modeCommandsLength = 0;
+        Arrays.fill(modes, UNKNOWN);
+
+        CommandDecoder decoder = new CommandDecoder(new CommandListener() {
+            @Override
+            public void text(byte[] bytes, int offset, int length, long position) {
+                writeText(bytes, offset, length, (int) position);
+            }
+
+            @Override
+            public void command(CommandSpec spec, byte[] bytes, int offset, int length, long position) {
+                markUpTo((int) position + length - 1);
+                handle(bytes, offset, length);
+            }
+
+            @Override
+            public void truncated(CommandSpec spec, byte[] bytes, int offset, int length, long position) {
+                markUpTo((int) position);
+                flush();
+                write(bytes, offset, length);
+            }
+        });
+        decoder.feed(data, 0, data.length);
+        decoder.finish();
+        flush();
+        markUpTo(Integer.MAX_VALUE);
+
+        byte[] result = outLength < data.length ? Arrays.copyOf(out, outLength) : data;
+        this.out = null;
+        this.marks = null;
+        return result;
+    }
+
+    private void writeText(byte[] bytes, int offset, int length, int position) {
+        int end = offset + length;
+        while (offset < end) {
+            // Split runs at marks so each mark stays between two writes
+            int split = end;
+            if (nextMark < marks.length && marks[nextMark] < position + length) {
+                split = offset + Math.max(0, marks[nextMark] - position);
+            }
+            if (split > offset) {
+                markUpTo(position);
+                flush();
+                write(bytes, offset, split - offset);
+                position += split - offset;
+                length -= split - offset;
+                offset = split;
+            } else {
+                markUpTo(position);
+            }
+        }
+    }
+
+    /**
+     * Move marks at or before position to the current output offset
+     */
+    private void markUpTo(int position) {
+        if (nextMark < marks.length && marks[nextMark] <= position) {
+            flush();
+            while (nextMark < marks.length && marks[nextMark] <= position) {
+                marks[nextMark++] = outLength;
+            }
+        }
+    }
+
+    private void handle(byte[] bytes, int offset, int length) {
+        int code = bytes[offset] & 0xFF;
+        int second = length > 1 ? bytes[offset + 1] & 0xFF : -1;
+        int operand = length > 2 ? bytes[offset + 2] & 0xFF : -1;
+
+        if (length == 1 && code == Ncr7167Commands.PRINT_AND_FEED_ONE_LINE) {
+            addFeed(1);
+        } else if (length == 3 && code == Ncr7167Commands.ESC && second == 0x64 && operand > 0) {
+            addFeed(operand);
+        } else if (isModeCommand(code, second, length)) {
+            flushFeed();
+            if (modeCommandsLength + length > modeCommands.length) {
+                flushModes();
+            }
+            if (modeCommandsLength == 0) {
+                System.arraycopy(modes, 0, targetModes, 0, modes.length);
+            }
+            applyMode(targetModes, code, second, operand);
+            System.arraycopy(bytes, offset, modeCommands, modeCommandsLength, length);
+            modeCommandsLength += length;
+        } else {
+            flush();
+            write(bytes, offset, length);
+            if (code == Ncr7167Commands.ESC && second == 0x40) {
+                // Initialize Printer cancels every print mode
+                Arrays.fill(modes, 0);
+            } else if (code == Ncr7167Commands.GS && second == 0x21) {
+                // Character size overrides the double-wide and double-high bits
+                modes[DOUBLE_HIGH] = UNKNOWN;
+                modes[DOUBLE_WIDE] = UNKNOWN;
+            }
+        }
+    }
+
+    private void addFeed(int lines) {
+        flushModes();
+        feedLines += lines;
+    }
+
+    private static boolean isModeCommand(int code, int second, int length) {
+        if (length == 1) {
+            return code == Ncr7167Commands.SELECT_DOUBLE_WIDE || code == Ncr7167Commands.SELECT_SINGLE_WIDE;
+        }
+        return length == 3 && code == Ncr7167Commands.ESC
+            && (second == 0x45 || second == 0x2D || second == 0x16 || second == 0x21);
+    }
+
+    private static void applyMode(int[] state, int code, int second, int operand) {
+        if (code == Ncr7167Commands.SELECT_DOUBLE_WIDE) {
+            state[DOUBLE_WIDE] = 1;
+        } else if (code == Ncr7167Commands.SELECT_SINGLE_WIDE) {
+            state[DOUBLE_WIDE] = 0;
+        } else if (second == 0x45) {
+            state[EMPHASIZED] = operand & 1;
+        } else if (second == 0x16) {
+            state[PITCH] = operand & 1;
+        } else if (second == 0x2D) {
+            // 0/48 off, 1/49 one-dot, 2/50 two-dot underline
+            state[UNDERLINE] = operand >= 48 ? operand - 48 : operand;
+        } else {
+            for (int i = 0; i < MODE_BITS.length; i++) {
+                state[i] = (operand & MODE_BITS[i]) != 0 ? 1 : 0;
+            }
+        }
+    }
+
+    private void flush() {
+        flushFeed();
+        flushModes();
+    }
+
+    private void flushFeed() {
+        while (feedLines > 0) {
+            int lines = Math.min(feedLines, MAX_FEED);
+            if (lines <= 3) {
+                for (int i = 0; i < lines; i++) {
+                    writeByte(Ncr7167Commands.PRINT_AND_FEED_ONE_LINE);
+                }
+            } else {
+                write(new byte[]{Ncr7167Commands.ESC, 0x64, (byte) lines}, 0, 3);
+            }
+            feedLines -= lines;
+        }
+    }
+
+    private void flushModes() {
+        if (modeCommandsLength == 0) {
+            return;
+        }
+
+        // Cost of setting each changed attribute with its own command
+        int separateCost = 0;
+        boolean separatePossible = true;
+        boolean allKnown = true;
+        for (int i = 0; i < MODE_BITS.length; i++) {
+            int target = targetModes[i];
+            if (target == UNKNOWN || (i == UNDERLINE && target > 1)) {
+                allKnown = false;
+            }
+            if (target == UNKNOWN || target == modes[i]) {
+                continue;
+            }
+            if (i == DOUBLE_HIGH) {
+                separatePossible = false;
+            }
+            separateCost += i == DOUBLE_WIDE ? 1 : 3;
+        }
+
+        if (separatePossible && separateCost < Math.min(modeCommandsLength, allKnown ? 3 : Integer.MAX_VALUE)) {
+            writeSeparateModes();
+        } else if (allKnown && modeCommandsLength > 3) {
+            int n = 0;
+            for (int i = 0; i < MODE_BITS.length; i++) {
+                n |= targetModes[i] == 1 ? MODE_BITS[i] : 0;
+            }
+            write(new byte[]{Ncr7167Commands.ESC, 0x21, (byte) n}, 0, 3);
+        } else {
+            write(modeCommands, 0, modeCommandsLength);
+        }
+
+        System.arraycopy(targetModes, 0, modes, 0, modes.length);
+        modeCommandsLength = 0;
+    }
+
+    private void writeSeparateModes() {
+        for (int i = 0; i < MODE_BITS.length; i++) {
+            int target = targetModes[i];
+            if (target == UNKNOWN || target == modes[i]) {
+                continue;
+            }
+            switch (i) {
+                case DOUBLE_WIDE:
+                    writeByte(target == 1 ? Ncr7167Commands.SELECT_DOUBLE_WIDE : Ncr7167Commands.SELECT_SINGLE_WIDE);
+                    break;
+                case EMPHASIZED:
+                    write(new byte[]{Ncr7167Commands.ESC, 0x45, (byte) target}, 0, 3);
+                    break;
+                case UNDERLINE:
+                    write(new byte[]{Ncr7167Commands.ESC, 0x2D, (byte) target}, 0, 3);
+                    break;
+                default:
+                    write(new byte[]{Ncr7167Commands.ESC, 0x16, (byte) target}, 0, 3);
+            }
+        }
+    }
+
+    private void writeByte(byte b) {
+        ensureCapacity(1);
+        out[outLength++] = b;
+    }
+
+    private void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, out, outLength, length);
+        outLength += length;
+    }
+
+    private void ensureCapacity(int length) {
+        if (outLength + length > out.length) {
+            out = Arrays.copyOf(out, Math.max(out.length * 2, outLength + length));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.ncr.printer.paper;
+
+/**
+ * Notified by a {@link PaperTracker} when the receipt roll is running out
+ */
+public interface PaperListener {
+
+    /**
+     * Called once per roll, on the writer thread or the thread that read
+     * the status; must not block
+     */
+    void paperLow(PaperTracker tracker);
+}
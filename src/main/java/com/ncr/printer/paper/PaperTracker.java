@@ -0,0 +1,410 @@
+package com.ncr.printer.paper;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.commands.Ncr7167Commands;
+import com.ncr.printer.decode.CommandDecoder;
+import com.ncr.printer.decode.CommandListener;
+import com.ncr.printer.decode.CommandSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Estimate of the paper left on the receipt roll
+ *
+ * The bytes accepted by the port are decoded as they go out and every
+ * paper motion is added up per station: line feeds (LF, ESC d, Feed n
+ * Print Lines) at the current line spacing or the height of the line's
+ * text and images, dot feeds (ESC J, Feed n Dot Rows), bar codes, and
+ * reverse feeds taken back off. Each knife cut ends a receipt, so the
+ * average receipt length gives the receipts that still fit on the roll.
+ *
+ * Once the remaining length drops to the warning length, listeners are
+ * told once per roll, well before the near-end sensor trips. The count
+ * starts over when {@link #paperLoaded()} is called, or when real-time
+ * status bytes (GS ENQ) show the receipt door opened and closed again or
+ * the paper-low sensor clearing. Paper fed with the printer's feed
+ * button is not seen.
+ */
+public class PaperTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaperTracker.class);
+
+    // Receipt station resolution, and 1/6 inch at that resolution
+    private static final int DOTS_PER_MM = 8;
+    private static final int DEFAULT_LINE_SPACING = 34;
+
+    // Height of a single-size character and of the HRI line under a bar code
+    private static final int CHARACTER_HEIGHT = 24;
+
+    private final long rollLengthDots;
+    private final long warningDots;
+    private final int cutterDistance;
+    private final List<PaperListener> listeners = new CopyOnWriteArrayList<>();
+    private final CommandDecoder decoder;
+
+    // Paper moved per station, in dot rows and in print lines
+    private final long[] dotRows = new long[Ncr7167Config.Station.values().length];
+    private final long[] lines = new long[Ncr7167Config.Station.values().length];
+
+    // Printer state followed through the stream
+    private Ncr7167Config.Station station = Ncr7167Config.Station.RECEIPT;
+    private int lineSpacing = DEFAULT_LINE_SPACING;
+    private boolean doubleHigh;
+    private int heightMultiplier = 1;
+    private int lineHeight;
+    private int barCodeHeight = 162;
+    private int hriLines;
+    private int downloadedImageHeight;
+
+    // Current roll
+    private long usedDots;
+    private long receiptStartDots;
+    private long receiptCount;
+    private boolean warned;
+    private boolean sensorLow;
+    private boolean doorOpen;
+
+    // Receipts over all rolls, for the average length
+    private long totalReceiptDots;
+    private long totalReceipts;
+
+    /**
+     * Create a tracker for the configured roll length and warning length
+     */
+    public PaperTracker(Ncr7167Config config) {
+        this.rollLengthDots = (long) config.getPaperRollLength() * DOTS_PER_MM;
+        this.warningDots = (long) config.getPaperLowWarning() * DOTS_PER_MM;
+        this.cutterDistance = config.getPaperCutterDistance();
+        this.decoder = new CommandDecoder(new CommandListener() {
+            @Override
+            public void text(byte[] data, int offset, int length, long position) {
+                lineHeight = Math.max(lineHeight, CHARACTER_HEIGHT * Math.max(heightMultiplier, doubleHigh ? 2 : 1));
+            }
+
+            @Override
+            public void command(CommandSpec spec, byte[] data, int offset, int length, long position) {
+                handle(data, offset, length);
+            }
+        });
+    }
+
+    public void addListener(PaperListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PaperListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Count bytes the port has accepted
+     */
+    public void outgoing(byte[] data, int offset, int length) {
+        boolean low;
+        synchronized (this) {
+            decoder.feed(data, offset, length);
+            low = !warned && rollLengthDots > 0 && rollLengthDots - usedDots <= warningDots;
+            if (low) {
+                warned = true;
+                long receiptsLeft = getReceiptsLeft();
+                if (receiptsLeft < 0) {
+                    logger.warn("Receipt paper is running low: about {} mm left", getRemainingLength());
+                } else {
+                    logger.warn("Receipt paper is running low: about {} mm left, {} receipt(s)",
+                        getRemainingLength(), receiptsLeft);
+                }
+            }
+        }
+        if (low) {
+            notifyLow();
+        }
+    }
+
+    /**
+     * Follow the paper sensors and door in a real-time status byte (GS ENQ)
+     */
+    public void statusReceived(int status) {
+        boolean low = (status & Ncr7167Commands.RealTimeStatus.RECEIPT_PAPER_LOW) != 0;
+        boolean open = (status & Ncr7167Commands.RealTimeStatus.DOOR_OPEN) != 0;
+        boolean notify = false;
+        synchronized (this) {
+            if (open) {
+                // Sensors are not trusted while the door is open
+                doorOpen = true;
+                return;
+            }
+            if (doorOpen) {
+                // The door was opened and closed, so the roll may have been replaced
+                doorOpen = false;
+                sensorLow = false;
+                resetRoll();
+            } else if (!low && sensorLow) {
+                // The sensor cleared again, so a new roll went in
+                resetRoll();
+            }
+            if (low && !sensorLow) {
+                logger.info("Paper sensor reports low paper with {} mm predicted left", getRemainingLength());
+                notify = !warned;
+                warned = true;
+            }
+            sensorLow = low;
+        }
+        if (notify) {
+            notifyLow();
+        }
+    }
+
+    /**
+     * Start counting a full roll
+     */
+    public synchronized void paperLoaded() {
+        resetRoll();
+    }
+
+    /**
+     * Configured roll length in mm
+     */
+    public long getRollLength() {
+        return rollLengthDots / DOTS_PER_MM;
+    }
+
+    /**
+     * Receipt paper used from the current roll in mm
+     */
+    public synchronized long getUsedLength() {
+        return usedDots / DOTS_PER_MM;
+    }
+
+    /**
+     * Carry the used length over from an earlier run, e.g. after a restart
+     */
+    public synchronized void setUsedLength(long usedLength) {
+        usedDots = Math.max(0, usedLength * DOTS_PER_MM);
+        receiptStartDots = usedDots;
+        warned = rollLengthDots > 0 && rollLengthDots - usedDots <= warningDots;
+    }
+
+    /**
+     * Predicted receipt paper left on the roll in mm
+     */
+    public synchronized long getRemainingLength() {
+        return Math.max(0, rollLengthDots - usedDots) / DOTS_PER_MM;
+    }
+
+    /**
+     * Predicted receipts left at the average receipt length, or -1 before the first cut
+     */
+    public synchronized long getReceiptsLeft() {
+        if (totalReceipts == 0) {
+            return -1;
+        }
+        long average = Math.max(1, totalReceiptDots / totalReceipts);
+        return Math.max(0, rollLengthDots - usedDots) / average;
+    }
+
+    /**
+     * Average receipt length in mm, or 0 before the first cut
+     */
+    public synchronized long getAverageReceiptLength() {
+        return totalReceipts == 0 ? 0 : totalReceiptDots / totalReceipts / DOTS_PER_MM;
+    }
+
+    /**
+     * Receipts cut from the current roll
+     */
+    public synchronized long getReceiptCount() {
+        return receiptCount;
+    }
+
+    /**
+     * True once the remaining length is down to the warning length or the sensor reports low paper
+     */
+    public synchronized boolean isPaperLow() {
+        return warned;
+    }
+
+    /**
+     * Dot rows fed on a station since the tracker was created
+     */
+    public synchronized long getFedDotRows(Ncr7167Config.Station station) {
+        return dotRows[station.ordinal()];
+    }
+
+    /**
+     * Print lines fed on a station since the tracker was created
+     */
+    public synchronized long getFedLines(Ncr7167Config.Station station) {
+        return lines[station.ordinal()];
+    }
+
+    private void resetRoll() {
+        if (usedDots > 0) {
+            logger.info("Receipt roll replaced after {} mm and {} receipt(s)", usedDots / DOTS_PER_MM, receiptCount);
+        }
+        usedDots = 0;
+        receiptStartDots = 0;
+        receiptCount = 0;
+        warned = false;
+    }
+
+    private void notifyLow() {
+        for (PaperListener listener : listeners) {
+            try {
+                listener.paperLow(this);
+            } catch (RuntimeException e) {
+                logger.warn("Paper listener failed", e);
+            }
+        }
+    }
+
+    private void handle(byte[] data, int offset, int length) {
+        int code = data[offset] & 0xFF;
+        int second = length > 1 ? data[offset + 1] & 0xFF : -1;
+        int operand = length > 2 ? data[offset + 2] & 0xFF : -1;
+
+        switch (code) {
+            case Ncr7167Commands.PRINT_AND_FEED_ONE_LINE:
+                feedLines(1);
+                break;
+            case Ncr7167Commands.FEED_N_PRINT_LINES:
+                feedLines(second);
+                break;
+            case Ncr7167Commands.FEED_N_DOT_ROWS:
+            case 0x16:
+                feedDots(second);
+                break;
+            case 0x19:
+            case 0x1A:
+                cut();
+                break;
+            case 0x1C:
+                station = Ncr7167Config.Station.SLIP;
+                lineHeight = 0;
+                break;
+            case 0x1E:
+                station = Ncr7167Config.Station.RECEIPT;
+                lineHeight = 0;
+                break;
+            case Ncr7167Commands.ESC:
+                handleEsc(second, operand);
+                break;
+            case Ncr7167Commands.GS:
+                handleGs(data, offset, length, second, operand);
+                break;
+            default:
+        }
+    }
+
+    private void handleEsc(int second, int operand) {
+        switch (second) {
+            case 0x21:
+                doubleHigh = (operand & 0x10) != 0;
+                break;
+            case 0x2A:
+                // 8-dot or 24-dot band on the current line
+                lineHeight = Math.max(lineHeight, operand == 32 || operand == 33 ? 24 : 8);
+                break;
+            case 0x32:
+                lineSpacing = DEFAULT_LINE_SPACING;
+                break;
+            case 0x33:
+                lineSpacing = operand;
+                break;
+            case 0x40:
+                lineSpacing = DEFAULT_LINE_SPACING;
+                doubleHigh = false;
+                heightMultiplier = 1;
+                lineHeight = 0;
+                break;
+            case 0x4A:
+                feedDots(operand);
+                break;
+            case 0x4B:
+                feedDots(-operand);
+                break;
+            case 0x64:
+                feedLines(operand);
+                break;
+            case 0x65:
+                move(-operand * lineSpacing);
+                break;
+            case 0x69:
+            case 0x6D:
+                cut();
+                break;
+            default:
+        }
+    }
+
+    private void handleGs(byte[] data, int offset, int length, int second, int operand) {
+        switch (second) {
+            case 0x14:
+                move(-operand * lineSpacing);
+                break;
+            case 0x15:
+                move(-operand);
+                break;
+            case 0x21:
+                heightMultiplier = (operand & 0x0F) + 1;
+                break;
+            case 0x2A:
+                downloadedImageHeight = 8 * (data[offset + 3] & 0xFF);
+                break;
+            case 0x2F:
+                // Modes 2 and 3 print the image double-high
+                lineHeight = Math.max(lineHeight, downloadedImageHeight * ((operand & 2) != 0 ? 2 : 1));
+                break;
+            case 0x48:
+                hriLines = operand == 3 || operand == 51 ? 2 : operand == 0 || operand == 48 ? 0 : 1;
+                break;
+            case 0x68:
+                barCodeHeight = operand;
+                break;
+            case 0x6B:
+                move(barCodeHeight + hriLines * CHARACTER_HEIGHT);
+                break;
+            case 0x56:
+                // Modes 65 and 66 feed to the knife plus n dot rows before cutting
+                if (length > 3) {
+                    move(cutterDistance + (data[offset + 3] & 0xFF));
+                }
+                cut();
+                break;
+            default:
+        }
+    }
+
+    private void feedLines(int count) {
+        if (count > 0) {
+            move(Math.max(lineSpacing, lineHeight) + (count - 1) * lineSpacing);
+            lines[station.ordinal()] += count;
+        }
+        lineHeight = 0;
+    }
+
+    private void feedDots(int dots) {
+        move(dots);
+        lineHeight = 0;
+    }
+
+    private void move(int dots) {
+        dotRows[station.ordinal()] += dots;
+        if (station == Ncr7167Config.Station.RECEIPT) {
+            usedDots = Math.max(0, usedDots + dots);
+        }
+    }
+
+    private void cut() {
+        long receiptDots = usedDots - receiptStartDots;
+        if (receiptDots > 0) {
+            receiptCount++;
+            totalReceiptDots += receiptDots;
+            totalReceipts++;
+        }
+        receiptStartDots = usedDots;
+        lineHeight = 0;
+    }
+}
@@ -0,0 +1,83 @@
+package com.ncr.printer.replay;
+
+/**
+ * Byte-level comparison of two printer byte streams
+ */
+public class CaptureDiff {
+
+    private static final int CONTEXT = 8;
+
+    private final byte[] expected;
+    private final byte[] actual;
+    private final int firstMismatch;
+    private final int mismatchCount;
+
+    public CaptureDiff(byte[] expected, byte[] actual) {
+        this.expected = expected;
+        this.actual = actual;
+
+        int common = Math.min(expected.length, actual.length);
+        int first = -1;
+        int count = Math.abs(expected.length - actual.length);
+        for (int i = 0; i < common; i++) {
+            if (expected[i] != actual[i]) {
+                count++;
+                if (first < 0) {
+                    first = i;
+                }
+            }
+        }
+        if (first < 0 && expected.length != actual.length) {
+            first = common;
+        }
+        this.firstMismatch = first;
+        this.mismatchCount = count;
+    }
+
+    public boolean isIdentical() {
+        return firstMismatch < 0;
+    }
+
+    /**
+     * Offset of the first differing byte, or -1 if the streams are identical
+     */
+    public int getFirstMismatch() {
+        return firstMismatch;
+    }
+
+    /**
+     * Number of differing positions, counting the length difference
+     */
+    public int getMismatchCount() {
+        return mismatchCount;
+    }
+
+    public int getExpectedLength() {
+        return expected.length;
+    }
+
+    public int getActualLength() {
+        return actual.length;
+    }
+
+    @Override
+    public String toString() {
+        if (isIdentical()) {
+            return "identical (" + expected.length + " bytes)";
+        }
+        int from = Math.max(0, firstMismatch - CONTEXT);
+        return String.format("%d differing bytes, first at offset %d (expected %d bytes, got %d)%n"
+                + "  expected: %s%n  actual:   %s",
+            mismatchCount, firstMismatch, expected.length, actual.length,
+            hex(expected, from), hex(actual, from));
+    }
+
+    private static String hex(byte[] data, int from) {
+        StringBuilder out = new StringBuilder();
+        int to = Math.min(data.length, from + 3 * CONTEXT);
+        for (int i = from; i < to; i++) {
+            out.append(String.format("%02X ", data[i] & 0xFF));
+        }
+        return out.toString().trim();
+    }
+}
@@ -0,0 +1,174 @@
+package com.ncr.printer.replay;
+
+import com.ncr.printer.transport.PrinterTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Transport decorator that records every write with its timing
+ *
+ * Wrap the production transport with it to collect captures that can
+ * later be replayed with {@link TrafficReplayer}. Captures kept in memory
+ * are limited to the most recent writes; for a complete capture of a
+ * long run, stream it to a file instead. A capture file that cannot be
+ * written is given up on without failing the printer.
+ */
+public class CapturingTransport implements PrinterTransport {
+
+    public static final long DEFAULT_MEMORY_LIMIT = 16L * 1024 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(CapturingTransport.class);
+
+    private final PrinterTransport delegate;
+    private final TrafficCapture capture;
+    private final Path file;
+    private final OutputStream outputStream = new RecordingOutputStream();
+    private long startNanos = -1;
+
+    // Guarded by this; open between open() and close() when streaming to a file
+    private DataOutputStream fileStream;
+
+    /**
+     * Keep the most recent {@link #DEFAULT_MEMORY_LIMIT} bytes in memory
+     */
+    public CapturingTransport(PrinterTransport delegate) {
+        this(delegate, DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * Keep the most recent writes in memory, up to a number of bytes
+     */
+    public CapturingTransport(PrinterTransport delegate, long memoryLimit) {
+        this.delegate = delegate;
+        this.capture = new TrafficCapture(memoryLimit);
+        this.file = null;
+    }
+
+    /**
+     * Stream every write to a capture file, see {@link TrafficCapture#load(Path)}
+     * Writes are appended when the transport is opened again.
+     */
+    public CapturingTransport(PrinterTransport delegate, Path file) {
+        this.delegate = delegate;
+        this.capture = null;
+        this.file = file;
+    }
+
+    @Override
+    public void open() throws IOException {
+        delegate.open();
+        if (file != null) {
+            openFile();
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+        synchronized (this) {
+            if (fileStream != null) {
+                try {
+                    fileStream.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close capture file {}: {}", file, e.getMessage());
+                }
+                fileStream = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return delegate.getInputStream();
+    }
+
+    /**
+     * Traffic recorded in memory so far, or null when streaming to a file
+     */
+    public TrafficCapture getCapture() {
+        return capture;
+    }
+
+    /**
+     * File the traffic is streamed to, or null when it is kept in memory
+     */
+    public Path getCaptureFile() {
+        return file;
+    }
+
+    private synchronized void openFile() {
+        try {
+            boolean empty = !Files.exists(file) || Files.size(file) == 0;
+            fileStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            if (empty) {
+                TrafficCapture.writeHeader(fileStream);
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot write capture file {}: {}", file, e.getMessage());
+            fileStream = null;
+        }
+    }
+
+    private synchronized void record(long now, byte[] b, int off, int len) {
+        if (startNanos < 0) {
+            startNanos = now;
+        }
+        if (capture != null) {
+            capture.add(now - startNanos, Arrays.copyOfRange(b, off, off + len));
+            return;
+        }
+        if (fileStream == null) {
+            return;
+        }
+        try {
+            TrafficCapture.writeRecord(fileStream, now - startNanos, b, off, len);
+        } catch (IOException e) {
+            logger.warn("Stopped writing capture file {}: {}", file, e.getMessage());
+            try {
+                fileStream.close();
+            } catch (IOException ignored) {
+                // Already failing
+            }
+            fileStream = null;
+        }
+    }
+
+    private class RecordingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            record(System.nanoTime(), b, off, len);
+            delegate.getOutputStream().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.getOutputStream().flush();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.ncr.printer.replay;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Throughput and latency of one replay run
+ */
+public class ReplayResult {
+
+    private final int writes;
+    private final long bytes;
+    private final long elapsedNanos;
+    private final long[] sortedLatencies;
+    private final CaptureDiff diff;
+
+    ReplayResult(long bytes, long elapsedNanos, long[] latencies, CaptureDiff diff) {
+        this.writes = latencies.length;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+        this.sortedLatencies = latencies.clone();
+        Arrays.sort(this.sortedLatencies);
+        this.diff = diff;
+    }
+
+    public int getWrites() {
+        return writes;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Bytes per second over the whole run
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : bytes * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    /**
+     * Write latency at the given percentile
+     * @param percentile 0-100
+     */
+    public long getLatencyNanos(double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length);
+        return sortedLatencies[Math.min(sortedLatencies.length - 1, Math.max(0, rank - 1))];
+    }
+
+    /**
+     * Comparison of the bytes the printer received with the capture, or
+     * null if the transport does not expose what it received
+     */
+    public CaptureDiff getDiff() {
+        return diff;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%d writes, %d bytes in %.3f ms (%.1f bytes/s)%n",
+            writes, bytes, elapsedNanos / 1_000_000.0, getThroughput()));
+        out.append(String.format(Locale.ROOT, "write latency p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+            getLatencyNanos(50) / 1_000_000.0, getLatencyNanos(90) / 1_000_000.0,
+            getLatencyNanos(99) / 1_000_000.0, getLatencyNanos(100) / 1_000_000.0));
+        if (diff != null) {
+            out.append("received bytes: ").append(diff).append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+}
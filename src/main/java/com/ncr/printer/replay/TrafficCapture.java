@@ -0,0 +1,173 @@
+package com.ncr.printer.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Recorded printer traffic: the byte stream of a lane split into the
+ * original writes, each with its offset from the start of the capture
+ *
+ * File layout: a magic number and version, then one record per write
+ * (offset in nanoseconds, length, bytes) until the end of the file.
+ * A capture with a byte limit keeps only the most recent writes.
+ */
+public class TrafficCapture {
+
+    private static final int MAGIC = 0x4E374350; // "N7CP"
+    private static final int VERSION = 1;
+
+    private final Deque<Write> writes = new ArrayDeque<>();
+    private final long maxBytes;
+    private long totalBytes;
+    private long droppedWrites;
+
+    /**
+     * Create a capture that keeps every write
+     */
+    public TrafficCapture() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * Create a capture that drops the oldest writes beyond a number of bytes
+     */
+    public TrafficCapture(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Append a write
+     * @param offsetNanos time since the start of the capture
+     * @param data bytes written
+     */
+    public synchronized void add(long offsetNanos, byte[] data) {
+        writes.addLast(new Write(offsetNanos, data));
+        totalBytes += data.length;
+        while (totalBytes > maxBytes && writes.size() > 1) {
+            totalBytes -= writes.removeFirst().data.length;
+            droppedWrites++;
+        }
+    }
+
+    public synchronized List<Write> getWrites() {
+        return Collections.unmodifiableList(new ArrayList<>(writes));
+    }
+
+    public synchronized int getWriteCount() {
+        return writes.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Writes dropped to stay within the byte limit
+     */
+    public synchronized long getDroppedWrites() {
+        return droppedWrites;
+    }
+
+    /**
+     * Offset of the last write
+     */
+    public synchronized long getDurationNanos() {
+        return writes.isEmpty() ? 0 : writes.getLast().getOffsetNanos();
+    }
+
+    /**
+     * All written bytes concatenated
+     */
+    public synchronized byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(totalBytes, Integer.MAX_VALUE));
+        for (Write write : writes) {
+            out.write(write.data, 0, write.data.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Save the capture to a file
+     */
+    public synchronized void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            writeHeader(out);
+            for (Write write : writes) {
+                writeRecord(out, write.offsetNanos, write.data, 0, write.data.length);
+            }
+        }
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    static void writeRecord(DataOutputStream out, long offsetNanos, byte[] data, int offset, int length)
+            throws IOException {
+        out.writeLong(offsetNanos);
+        out.writeInt(length);
+        out.write(data, offset, length);
+    }
+
+    /**
+     * Load a capture saved with {@link #save(Path)}
+     */
+    public static TrafficCapture load(Path file) throws IOException {
+        TrafficCapture capture = new TrafficCapture();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a traffic capture: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported traffic capture version " + version + ": " + file);
+            }
+            while (true) {
+                long offsetNanos;
+                try {
+                    offsetNanos = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                capture.add(offsetNanos, data);
+            }
+        }
+        return capture;
+    }
+
+    /**
+     * A single recorded write
+     */
+    public static final class Write {
+        private final long offsetNanos;
+        private final byte[] data;
+
+        Write(long offsetNanos, byte[] data) {
+            this.offsetNanos = offsetNanos;
+            this.data = data;
+        }
+
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.ncr.printer.replay;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.transport.InMemoryTransport;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays captured printer traffic through a printer and measures it
+ *
+ * Every recorded write goes through {@link Ncr7167Printer#sendCommand(byte[])},
+ * so the replay exercises the same writer and transport path as production.
+ * Writes are either paced at their recorded offsets or sent back to back.
+ */
+public class TrafficReplayer {
+
+    private final Ncr7167Printer printer;
+
+    /**
+     * @param printer connected printer to replay through
+     */
+    public TrafficReplayer(Ncr7167Printer printer) {
+        this.printer = printer;
+    }
+
+    /**
+     * Replay a capture
+     * @param capture recorded traffic
+     * @param realTime true to keep the recorded gaps between writes,
+     *                 false to send as fast as possible
+     */
+    public ReplayResult replay(TrafficCapture capture, boolean realTime) throws Ncr7167Exception {
+        InMemoryTransport received = printer.getTransport() instanceof InMemoryTransport
+            ? (InMemoryTransport) printer.getTransport() : null;
+        if (received != null) {
+            received.clearWritten();
+        }
+
+        List<TrafficCapture.Write> writes = capture.getWrites();
+        long[] latencies = new long[writes.size()];
+        long start = System.nanoTime();
+
+        // A capture limited to its most recent writes does not start at offset 0
+        long first = writes.isEmpty() ? 0 : writes.get(0).getOffsetNanos();
+
+        for (int i = 0; i < writes.size(); i++) {
+            TrafficCapture.Write write = writes.get(i);
+            if (realTime) {
+                waitUntil(start + write.getOffsetNanos() - first);
+            }
+            long before = System.nanoTime();
+            printer.sendCommand(write.getData());
+            latencies[i] = System.nanoTime() - before;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        CaptureDiff diff = received != null
+            ? new CaptureDiff(capture.toByteArray(), received.getWrittenBytes())
+            : null;
+        return new ReplayResult(capture.getTotalBytes(), elapsed, latencies, diff);
+    }
+
+    private static void waitUntil(long deadline) throws Ncr7167Exception {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Ncr7167Exception("Replay interrupted", e);
+        }
+    }
+
+    /**
+     * Replay a capture file against the in-memory printer
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java TrafficReplayer <capture> [--realtime] [--baud <rate>] [--baseline <capture>]");
+            System.out.println("  --realtime   keep the recorded gaps between writes");
+            System.out.println("  --baud       simulate a serial line of the given speed");
+            System.out.println("  --baseline   also replay a reference capture and diff the byte streams");
+            return;
+        }
+
+        boolean realTime = false;
+        int baudRate = 0;
+        String baseline = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--realtime":
+                    realTime = true;
+                    break;
+                case "--baud":
+                    baudRate = Integer.parseInt(args[++i]);
+                    break;
+                case "--baseline":
+                    baseline = args[++i];
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        Ncr7167Printer printer = new Ncr7167Printer(new Ncr7167Config(), new InMemoryTransport(baudRate));
+        try {
+            printer.connect();
+            TrafficReplayer replayer = new TrafficReplayer(printer);
+            TrafficCapture capture = TrafficCapture.load(Paths.get(args[0]));
+
+            if (baseline != null) {
+                TrafficCapture reference = TrafficCapture.load(Paths.get(baseline));
+                System.out.println("Baseline " + baseline);
+                System.out.print(replayer.replay(reference, realTime));
+                System.out.println("Diff against baseline: "
+                    + new CaptureDiff(reference.toByteArray(), capture.toByteArray()));
+            }
+
+            System.out.println("Capture " + args[0]);
+            System.out.print(replayer.replay(capture, realTime));
+
+        } catch (IOException | Ncr7167Exception e) {
+            System.err.println("Error: " + e.getMessage());
+        } finally {
+            printer.disconnect();
+        }
+    }
+}
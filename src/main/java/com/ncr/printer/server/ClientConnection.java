@@ -0,0 +1,148 @@
+package com.ncr.printer.server;
+
+import com.ncr.printer.PrintJob;
+import com.ncr.printer.decode.CommandDecoder;
+import com.ncr.printer.decode.CommandListener;
+import com.ncr.printer.decode.CommandSpec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * State of one print server client connection
+ *
+ * Incoming data and framing are touched by the selector thread only; the
+ * job queue is guarded by the server's lock, and replies may be queued
+ * from any thread.
+ */
+class ClientConnection {
+
+    // Replies beyond this are dropped for clients that never read them
+    private static final int MAX_PENDING_REPLY_BYTES = 64 * 1024;
+
+    // Flash and NVRAM maintenance commands, never accepted from the network
+    private static final Set<String> MAINTENANCE_COMMANDS = new HashSet<>(Arrays.asList(
+        "1B 5B", "1B 73", "1D 0E"));
+
+    final int id;
+    final SocketChannel channel;
+    final String name;
+    SelectionKey key;
+
+    // Selector thread
+    ByteArrayOutputStream current = new ByteArrayOutputStream();
+    private CommandDecoder decoder;
+    private String problem;
+    long lastDataNanos;
+    boolean rejecting;
+    boolean inputClosed;
+    int sequence;
+
+    // Server lock
+    final Deque<PrintJob> jobs = new ArrayDeque<>();
+    boolean paused;
+    int printing;
+
+    private final Queue<ByteBuffer> replies = new ConcurrentLinkedQueue<>();
+    private volatile int pendingReplyBytes;
+
+    ClientConnection(int id, SocketChannel channel, String name) {
+        this.id = id;
+        this.channel = channel;
+        this.name = name;
+        resetJob();
+    }
+
+    /**
+     * Add received bytes to the current job, checking its commands as they arrive
+     */
+    void append(byte[] data, int offset, int length) {
+        current.write(data, offset, length);
+        decoder.feed(data, offset, length);
+    }
+
+    /**
+     * End the current job
+     * @return why the job must not be printed, or null if it may
+     */
+    String finishJob() {
+        decoder.finish();
+        return problem;
+    }
+
+    /**
+     * Drop the current job's data and start checking a new one
+     */
+    void resetJob() {
+        current.reset();
+        problem = null;
+        decoder = new CommandDecoder(new CommandListener() {
+            @Override
+            public void text(byte[] data, int offset, int length, long position) {
+            }
+
+            @Override
+            public void command(CommandSpec spec, byte[] data, int offset, int length, long position) {
+                if (problem == null && MAINTENANCE_COMMANDS.contains(spec.getCode())) {
+                    problem = "job contains " + spec.getName();
+                }
+            }
+
+            @Override
+            public void truncated(CommandSpec spec, byte[] data, int offset, int length, long position) {
+                // The rest of the command would be taken from the next client's job
+                if (problem == null) {
+                    problem = "job ends inside " + spec.getName();
+                }
+            }
+        });
+    }
+
+    String nextJobId() {
+        return "client" + id + "-" + (++sequence);
+    }
+
+    /**
+     * Queue a status line for the client
+     * @return false if it was dropped because too many replies are unread
+     */
+    synchronized boolean reply(String line) {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        if (pendingReplyBytes + bytes.length > MAX_PENDING_REPLY_BYTES) {
+            return false;
+        }
+        pendingReplyBytes += bytes.length;
+        replies.add(ByteBuffer.wrap(bytes));
+        return true;
+    }
+
+    /**
+     * Next reply with bytes left to write, or null
+     */
+    ByteBuffer pendingReply() {
+        ByteBuffer reply = replies.peek();
+        while (reply != null && !reply.hasRemaining()) {
+            synchronized (this) {
+                pendingReplyBytes -= reply.capacity();
+            }
+            replies.poll();
+            reply = replies.peek();
+        }
+        return reply;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,516 @@
+package com.ncr.printer.server;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.PrintJob;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Raw TCP print server that shares one printer among many clients
+ *
+ * Works like a port 9100 printer: whatever a client sends is printed as
+ * is. A job ends when the client closes its side of the connection, or
+ * after {@link Ncr7167Config#getPrintServerJobTimeout()} of silence on a
+ * connection kept open. One selector thread does all network I/O; a
+ * dispatcher thread prints waiting jobs one at a time, taking them from
+ * the clients in turn so a busy client cannot hold up the others.
+ *
+ * Each client may have {@link Ncr7167Config#getPrintServerClientQueue()}
+ * jobs waiting before the server stops reading from it, and jobs larger
+ * than {@link Ncr7167Config#getPrintServerMaxJobSize()} are rejected.
+ * Jobs that end in the middle of a command are rejected too, since the
+ * printer would take the rest of the command from the next job, and so
+ * are jobs with flash or NVRAM maintenance commands. The server listens
+ * on {@link Ncr7167Config#getPrintServerBindAddress()}, the loopback
+ * interface unless configured otherwise.
+ * The server answers on the same connection with one line per job:
+ * <pre>
+ * QUEUED client3-1 2        job accepted, 2 jobs ahead of it
+ * OK client3-1 1840         job printed, 1840 bytes
+ * ERROR client3-1 reason    printing failed
+ * REJECTED client3-2 reason job not accepted
+ * </pre>
+ * Clients that do not need the replies can ignore them.
+ */
+public class PrintServer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrintServer.class);
+
+    private final Ncr7167Printer printer;
+    private final String bindAddress;
+    private final int port;
+    private final long jobTimeoutNanos;
+    private final int maxJobSize;
+    private final int clientQueue;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final List<ClientConnection> clients = new ArrayList<>();
+    private final Thread selectorThread;
+    private final Thread dispatcherThread;
+
+    // Clients with waiting jobs, in the order they are served
+    private final Object lock = new Object();
+    private final Deque<ClientConnection> ready = new ArrayDeque<>();
+    private int waitingJobs;
+
+    private volatile boolean running = true;
+    private int nextClientId;
+    private final AtomicLong jobsPrinted = new AtomicLong();
+    private final AtomicLong jobsFailed = new AtomicLong();
+    private final AtomicLong jobsRejected = new AtomicLong();
+
+    /**
+     * Create a server using the printer's print server settings
+     */
+    public PrintServer(Ncr7167Printer printer) throws IOException {
+        Ncr7167Config config = printer.getConfig();
+        this.printer = printer;
+        this.bindAddress = config.getPrintServerBindAddress();
+        this.port = config.getPrintServerPort();
+        this.jobTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getPrintServerJobTimeout());
+        this.maxJobSize = config.getPrintServerMaxJobSize();
+        this.clientQueue = Math.max(1, config.getPrintServerClientQueue());
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.selectorThread = new Thread(this::runSelector, "ncr7167-server");
+        this.dispatcherThread = new Thread(this::runDispatcher, "ncr7167-server-dispatch");
+        selectorThread.setDaemon(true);
+        dispatcherThread.setDaemon(true);
+    }
+
+    /**
+     * Start listening; port 0 picks a free port, see {@link #getPort()}
+     */
+    public void start() throws IOException {
+        serverChannel.bind(new InetSocketAddress(InetAddress.getByName(bindAddress), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        selectorThread.start();
+        dispatcherThread.start();
+        logger.info("Print server listening on {} port {}", bindAddress, getPort());
+    }
+
+    /**
+     * Port the server is listening on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Number of connected clients
+     */
+    public int getClientCount() {
+        synchronized (clients) {
+            return clients.size();
+        }
+    }
+
+    public long getJobsPrinted() {
+        return jobsPrinted.get();
+    }
+
+    public long getJobsFailed() {
+        return jobsFailed.get();
+    }
+
+    public long getJobsRejected() {
+        return jobsRejected.get();
+    }
+
+    /**
+     * Stop accepting clients and close all connections
+     * A job being printed is finished; jobs still waiting are dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (lock) {
+            if (waitingJobs > 0) {
+                logger.warn("Print server closed with {} jobs waiting", waitingJobs);
+            }
+            lock.notifyAll();
+        }
+        selector.wakeup();
+        try {
+            selectorThread.join();
+            dispatcherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runSelector() {
+        try {
+            while (running) {
+                selector.select(selectTimeoutMillis());
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    ClientConnection client = (ClientConnection) key.attachment();
+                    if (key.isReadable()) {
+                        read(client);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(client);
+                    }
+                }
+                endIdleJobs();
+            }
+        } catch (IOException e) {
+            logger.error("Print server stopped", e);
+        } finally {
+            List<ClientConnection> open;
+            synchronized (clients) {
+                open = new ArrayList<>(clients);
+            }
+            for (ClientConnection client : open) {
+                closeQuietly(client);
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                logger.warn("Error while closing print server", e);
+            }
+        }
+    }
+
+    /**
+     * Wait no longer than the earliest job timeout of an open job
+     */
+    private long selectTimeoutMillis() {
+        long now = System.nanoTime();
+        long earliest = Long.MAX_VALUE;
+        synchronized (clients) {
+            for (ClientConnection client : clients) {
+                if (client.current.size() > 0 || client.rejecting) {
+                    earliest = Math.min(earliest, client.lastDataNanos + jobTimeoutNanos - now);
+                }
+            }
+        }
+        if (earliest == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(earliest) + 1);
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        ClientConnection client = new ClientConnection(++nextClientId, channel, String.valueOf(channel.getRemoteAddress()));
+        client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        synchronized (clients) {
+            clients.add(client);
+        }
+        logger.debug("Print server client {} connected from {}", client.id, client.name);
+    }
+
+    private void read(ClientConnection client) {
+        int count;
+        readBuffer.clear();
+        try {
+            count = client.channel.read(readBuffer);
+        } catch (IOException e) {
+            // A reset connection leaves its open job incomplete
+            logger.debug("Print server client {} failed: {}", client.id, e.getMessage());
+            client.resetJob();
+            client.inputClosed = true;
+            closeQuietly(client);
+            return;
+        }
+
+        if (count < 0) {
+            endJob(client);
+            client.inputClosed = true;
+            updateInterest(client);
+            closeIfDone(client);
+            return;
+        }
+        client.lastDataNanos = System.nanoTime();
+        if (client.rejecting) {
+            return;
+        }
+        if (client.current.size() + count > maxJobSize) {
+            // Drop the rest of this job as it arrives
+            client.rejecting = true;
+            client.resetJob();
+            jobsRejected.incrementAndGet();
+            client.reply("REJECTED " + client.nextJobId() + " job exceeds " + maxJobSize + " bytes");
+            updateInterest(client);
+            return;
+        }
+        client.append(readBuffer.array(), 0, count);
+    }
+
+    private void write(ClientConnection client) {
+        try {
+            ByteBuffer reply;
+            while ((reply = client.pendingReply()) != null) {
+                client.channel.write(reply);
+                if (reply.hasRemaining()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Print server client {} stopped reading replies: {}", client.id, e.getMessage());
+            closeQuietly(client);
+            return;
+        }
+        updateInterest(client);
+        closeIfDone(client);
+    }
+
+    private void endIdleJobs() {
+        long now = System.nanoTime();
+        List<ClientConnection> idle = new ArrayList<>();
+        synchronized (clients) {
+            for (ClientConnection client : clients) {
+                if ((client.current.size() > 0 || client.rejecting) && now - client.lastDataNanos >= jobTimeoutNanos) {
+                    idle.add(client);
+                }
+            }
+        }
+        for (ClientConnection client : idle) {
+            endJob(client);
+        }
+    }
+
+    private void endJob(ClientConnection client) {
+        if (client.rejecting) {
+            client.rejecting = false;
+            return;
+        }
+        if (client.current.size() == 0) {
+            return;
+        }
+
+        String problem = client.finishJob();
+        PrintJob job = new PrintJob(client.nextJobId(), client.current.toByteArray());
+        client.resetJob();
+        if (problem != null) {
+            jobsRejected.incrementAndGet();
+            client.reply("REJECTED " + job.getJobId() + " " + problem);
+            updateInterest(client);
+            return;
+        }
+        synchronized (lock) {
+            // Queued before the dispatcher can see the job, so it always precedes OK
+            client.reply("QUEUED " + job.getJobId() + " " + waitingJobs);
+            client.jobs.add(job);
+            waitingJobs++;
+            if (!ready.contains(client)) {
+                ready.add(client);
+            }
+            if (client.jobs.size() >= clientQueue) {
+                client.paused = true;
+            }
+            lock.notifyAll();
+        }
+        updateInterest(client);
+    }
+
+    /**
+     * Read while the client may queue more jobs, write while replies are pending
+     */
+    private void updateInterest(ClientConnection client) {
+        if (!client.key.isValid()) {
+            return;
+        }
+        int ops = 0;
+        synchronized (lock) {
+            if (!client.inputClosed && !client.paused) {
+                ops |= SelectionKey.OP_READ;
+            }
+        }
+        if (client.pendingReply() != null) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        client.key.interestOps(ops);
+    }
+
+    /**
+     * Close a client that has sent its last job and received every reply
+     */
+    private void closeIfDone(ClientConnection client) {
+        if (!client.inputClosed || client.pendingReply() != null) {
+            return;
+        }
+        synchronized (lock) {
+            if (!client.jobs.isEmpty() || client.printing > 0) {
+                return;
+            }
+        }
+        closeQuietly(client);
+    }
+
+    private void closeQuietly(ClientConnection client) {
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            logger.debug("Error while closing print server client {}", client.id, e);
+        }
+        synchronized (clients) {
+            clients.remove(client);
+        }
+    }
+
+    private void runDispatcher() {
+        while (true) {
+            ClientConnection client;
+            PrintJob job;
+            boolean resumed = false;
+            synchronized (lock) {
+                while (ready.isEmpty() || !running) {
+                    if (!running) {
+                        return;
+                    }
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                // Round robin: one job from the first client, then it goes to the back
+                client = ready.poll();
+                job = client.jobs.poll();
+                waitingJobs--;
+                client.printing++;
+                if (!client.jobs.isEmpty()) {
+                    ready.add(client);
+                }
+                if (client.paused && client.jobs.size() < clientQueue) {
+                    client.paused = false;
+                    resumed = true;
+                }
+            }
+            if (resumed) {
+                schedule(() -> updateInterest(client));
+            }
+
+            String reply;
+            try {
+                printer.printJob(job);
+                jobsPrinted.incrementAndGet();
+                reply = "OK " + job.getJobId() + " " + job.getLength();
+            } catch (Ncr7167Exception e) {
+                jobsFailed.incrementAndGet();
+                logger.warn("Print server job {} failed: {}", job.getJobId(), e.getMessage());
+                reply = "ERROR " + job.getJobId() + " " + e.getMessage();
+            }
+
+            synchronized (lock) {
+                client.printing--;
+            }
+            client.reply(reply);
+            schedule(() -> {
+                updateInterest(client);
+                closeIfDone(client);
+            });
+        }
+    }
+
+    /**
+     * Run a task on the selector thread
+     */
+    private void schedule(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Share a serial printer on the network until the process is stopped
+     */
+    public static void main(String[] args) {
+        Ncr7167Config config = new Ncr7167Config();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port":
+                        config.setPortName(args[++i]);
+                        break;
+                    case "--baud":
+                        config.setBaudRate(Integer.parseInt(args[++i]));
+                        break;
+                    case "--listen":
+                        config.setPrintServerPort(Integer.parseInt(args[++i]));
+                        break;
+                    case "--bind":
+                        config.setPrintServerBindAddress(args[++i]);
+                        break;
+                    default:
+                        System.out.println("Usage: java PrintServer [--port <name>] [--baud <rate>] [--listen <tcp port>]"
+                            + " [--bind <address>]");
+                        System.out.println("  Listens on the loopback interface unless --bind is given, e.g. 0.0.0.0");
+                        System.out.println("  Without --port jobs are printed into memory, e.g. to test clients");
+                        return;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            return;
+        }
+
+        Ncr7167Printer printer = config.getPortName() != null
+            ? new Ncr7167Printer(config) : new Ncr7167Printer(config, new InMemoryTransport());
+        try {
+            printer.connect();
+            PrintServer server = new PrintServer(printer);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                printer.disconnect();
+            }));
+            server.selectorThread.join();
+        } catch (IOException | Ncr7167Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            printer.disconnect();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.ncr.printer.spool;
+
+import com.ncr.printer.PrintJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe write-ahead spool for rendered print jobs
+ *
+ * Jobs are appended to memory-mapped, checksummed segment files before
+ * they are transmitted and marked complete once the printer has accepted
+ * them. Because the segments are mapped, an append is a memory copy: the
+ * data survives a crash of the POS process as soon as it is in the page
+ * cache. Flushing to the storage device (for power loss) is done by a
+ * background group commit every commit interval, so many appends share
+ * one force().
+ *
+ * Record layout (big endian):
+ * <pre>
+ *   int   record length (written last; 0 marks the end of the log)
+ *   byte  state (PENDING / COMPLETE)
+ *   int   CRC32 of everything after this field
+ *   long  sequence number
+ *   short job id length
+ *   ...   job id (UTF-8), job data
+ * </pre>
+ */
+public class JobSpool implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobSpool.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    public static final long DEFAULT_COMMIT_INTERVAL_MS = 20;
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final byte STATE_PENDING = 1;
+    private static final byte STATE_COMPLETE = 2;
+
+    private static final int STATE_OFFSET = 4;
+    private static final int CRC_OFFSET = 5;
+    private static final int SEQUENCE_OFFSET = 9;
+    private static final int HEADER_SIZE = 19;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final List<SpooledJob> unfinishedJobs = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService committer;
+
+    private Segment active;
+    private long nextSequence = 1;
+    private volatile boolean dirty;
+    private boolean closed;
+
+    public JobSpool(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_INTERVAL_MS);
+    }
+
+    /**
+     * @param directory directory holding the segment files
+     * @param segmentSize size of each memory-mapped segment in bytes
+     * @param commitIntervalMillis group commit interval; 0 forces every append
+     */
+    public JobSpool(Path directory, int segmentSize, long commitIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+        recover();
+
+        if (commitIntervalMillis > 0) {
+            committer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ncr7167-spool-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            committer.scheduleWithFixedDelay(this::commit, commitIntervalMillis, commitIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        } else {
+            committer = null;
+        }
+    }
+
+    /**
+     * Jobs found in the spool when it was opened that were never marked complete
+     */
+    public synchronized List<SpooledJob> getUnfinishedJobs() {
+        return new ArrayList<>(unfinishedJobs);
+    }
+
+    /**
+     * Append a rendered job ahead of transmission
+     * @return ticket to pass to {@link #complete(long)} once the job is printed
+     */
+    public synchronized long append(PrintJob job) throws IOException {
+        if (closed) {
+            throw new IOException("Spool is closed");
+        }
+
+        byte[] id = job.getJobId() == null ? new byte[0] : job.getJobId().getBytes(StandardCharsets.UTF_8);
+        byte[] data = job.getData();
+        int length = HEADER_SIZE + id.length + data.length;
+
+        if (active == null || active.writePosition + length > active.size) {
+            roll(length);
+        }
+
+        MappedByteBuffer buffer = active.buffer;
+        int position = active.writePosition;
+        long sequence = nextSequence++;
+
+        buffer.put(position + STATE_OFFSET, STATE_PENDING);
+        buffer.putLong(position + SEQUENCE_OFFSET, sequence);
+        buffer.putShort(position + SEQUENCE_OFFSET + 8, (short) id.length);
+        buffer.position(position + HEADER_SIZE);
+        buffer.put(id);
+        buffer.put(data);
+        buffer.putInt(position + CRC_OFFSET, checksum(buffer, position + SEQUENCE_OFFSET, position + length));
+
+        // The length is written last so a torn append reads as end of log
+        buffer.putInt(position, length);
+
+        active.writePosition += length;
+        active.pending++;
+        markDirty(active);
+
+        return ticket(active.number, position);
+    }
+
+    /**
+     * Mark a spooled job as printed
+     */
+    public synchronized void complete(long ticket) {
+        Segment segment = segments.get((int) (ticket >>> 32));
+        if (segment == null) {
+            return;
+        }
+
+        int position = (int) ticket;
+        if (segment.buffer.get(position + STATE_OFFSET) != STATE_PENDING) {
+            return;
+        }
+        segment.buffer.put(position + STATE_OFFSET, STATE_COMPLETE);
+        segment.pending--;
+        markDirty(segment);
+
+        for (Iterator<SpooledJob> it = unfinishedJobs.iterator(); it.hasNext(); ) {
+            if (it.next().getTicket() == ticket) {
+                it.remove();
+            }
+        }
+
+        if (segment.pending == 0 && segment != active) {
+            release(segment);
+        }
+    }
+
+    /**
+     * Force all appended data to the storage device now
+     */
+    public void commit() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+
+        List<Segment> toForce;
+        synchronized (this) {
+            toForce = new ArrayList<>(segments.values());
+        }
+        for (Segment segment : toForce) {
+            try {
+                segment.buffer.force();
+            } catch (RuntimeException e) {
+                // The segment may have been released concurrently
+                logger.debug("Failed to force spool segment {}", segment.number, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (committer != null) {
+            committer.shutdown();
+        }
+        commit();
+
+        synchronized (this) {
+            closed = true;
+            for (Segment segment : segments.values()) {
+                closeQuietly(segment);
+            }
+            segments.clear();
+        }
+    }
+
+    private void markDirty(Segment segment) {
+        if (committer == null) {
+            segment.buffer.force();
+        } else {
+            dirty = true;
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+
+        boolean reusable = false;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                name.length() - SEGMENT_SUFFIX.length()));
+
+            Segment segment = map(number, (int) Files.size(file));
+            reusable = scan(segment);
+            segments.put(number, segment);
+            active = segment;
+        }
+
+        // Fully printed segments are no longer needed
+        for (Iterator<Map.Entry<Integer, Segment>> it = segments.entrySet().iterator(); it.hasNext(); ) {
+            Segment segment = it.next().getValue();
+            if (segment.pending == 0 && segment != active) {
+                it.remove();
+                closeQuietly(segment);
+                Files.deleteIfExists(segment.file);
+            }
+        }
+
+        // Never append behind a torn or corrupt record
+        if (active != null && !reusable) {
+            active = null;
+        }
+
+        if (!unfinishedJobs.isEmpty()) {
+            logger.warn("Spool {} contains {} unfinished job(s)", directory, unfinishedJobs.size());
+        }
+    }
+
+    /**
+     * Read all records of a segment
+     * @return true if the segment ended cleanly and can be appended to
+     */
+    private boolean scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+
+        while (position + HEADER_SIZE <= segment.size) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                segment.writePosition = position;
+                return true;
+            }
+            if (length < HEADER_SIZE || position + length > segment.size
+                    || buffer.getInt(position + CRC_OFFSET)
+                        != checksum(buffer, position + SEQUENCE_OFFSET, position + length)) {
+                logger.warn("Corrupt spool record in {} at offset {}", segment.file, position);
+                segment.writePosition = position;
+                return false;
+            }
+
+            long sequence = buffer.getLong(position + SEQUENCE_OFFSET);
+            nextSequence = Math.max(nextSequence, sequence + 1);
+
+            if (buffer.get(position + STATE_OFFSET) == STATE_PENDING) {
+                int idLength = buffer.getShort(position + SEQUENCE_OFFSET + 8);
+                byte[] id = new byte[idLength];
+                byte[] data = new byte[length - HEADER_SIZE - idLength];
+                buffer.position(position + HEADER_SIZE);
+                buffer.get(id);
+                buffer.get(data);
+
+                PrintJob job = new PrintJob(new String(id, StandardCharsets.UTF_8), data);
+                unfinishedJobs.add(new SpooledJob(ticket(segment.number, position), sequence, job));
+                segment.pending++;
+            }
+            position += length;
+        }
+
+        segment.writePosition = position;
+        return true;
+    }
+
+    private void roll(int recordLength) throws IOException {
+        Segment previous = active;
+        int number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+
+        active = map(number, Math.max(segmentSize, recordLength));
+        segments.put(number, active);
+
+        if (previous != null && previous.pending == 0) {
+            release(previous);
+        }
+    }
+
+    private Segment map(int number, int size) throws IOException {
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+        try {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(number, file, raf, buffer, size);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private void release(Segment segment) {
+        segments.remove(segment.number);
+        closeQuietly(segment);
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            // Still mapped on some platforms; removed on the next open instead
+            logger.debug("Could not delete spool segment {}", segment.file, e);
+        }
+    }
+
+    private int checksum(MappedByteBuffer buffer, int from, int to) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(to);
+        view.position(from);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private static long ticket(int segmentNumber, int position) {
+        return ((long) segmentNumber << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.raf.close();
+        } catch (IOException e) {
+            logger.debug("Error closing spool segment {}", segment.file, e);
+        }
+    }
+
+    private static final class Segment {
+        final int number;
+        final Path file;
+        final RandomAccessFile raf;
+        final MappedByteBuffer buffer;
+        final int size;
+        int writePosition;
+        int pending;
+
+        Segment(int number, Path file, RandomAccessFile raf, MappedByteBuffer buffer, int size) {
+            this.number = number;
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.ncr.printer.spool;
+
+import com.ncr.printer.commands.Ncr7167Commands;
+import com.ncr.printer.trace.WireTrace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completes spooled jobs as the printer confirms them
+ *
+ * Every spooled job is followed by a Transmit Status request (GS r 1).
+ * GS r is a batch command, answered only after all data before it in the
+ * receive buffer has been processed, so each answer confirms the oldest
+ * job still waiting. A reader thread takes the answers off the printer's
+ * stream and completes the jobs in order; callers never wait for the
+ * printer. All other bytes, such as GS ENQ replies whose bit 7 is on, are
+ * passed on through {@link #getInputStream()}. A job not confirmed within
+ * the timeout is reported and stays unfinished in the spool until its
+ * answer arrives.
+ */
+public class SpoolConfirmer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpoolConfirmer.class);
+    private static final long POLL_MILLIS = 10;
+    private static final int RECEIVED_CAPACITY = 4096;
+
+    private final JobSpool spool;
+    private final InputStream source;
+    private final WireTrace wireTrace;
+    private final long timeoutNanos;
+    private final Object lock = new Object();
+    private final InputStream inputStream = new PassedInputStream();
+    private final Thread reader;
+
+    // Guarded by lock; jobs in the order their requests were sent
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final byte[] received = new byte[RECEIVED_CAPACITY];
+    private int receivedStart;
+    private int receivedCount;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param spool spool the confirmed jobs are completed in
+     * @param source stream of bytes from the printer
+     * @param wireTrace recorder of received bytes, or null
+     * @param timeoutMillis time after which an unconfirmed job is reported
+     */
+    public SpoolConfirmer(JobSpool spool, InputStream source, WireTrace wireTrace, long timeoutMillis) {
+        this.spool = spool;
+        this.source = source;
+        this.wireTrace = wireTrace;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.reader = new Thread(this::read, "ncr7167-spool-confirm");
+        this.reader.setDaemon(true);
+    }
+
+    public void start() {
+        reader.start();
+    }
+
+    /**
+     * Bytes from the printer other than the answers to Transmit Status
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Register a job whose Transmit Status request is about to be sent
+     * Jobs must be registered in the order their requests reach the port.
+     */
+    public void expect(long ticket, String jobId) {
+        synchronized (lock) {
+            pending.addLast(new Pending(ticket, jobId, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Forget a registered job whose request could not be sent
+     */
+    public void cancel(long ticket) {
+        synchronized (lock) {
+            Iterator<Pending> it = pending.descendingIterator();
+            while (it.hasNext()) {
+                if (it.next().ticket == ticket) {
+                    it.remove();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of jobs sent but not confirmed yet
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Wait until every job registered so far is confirmed
+     * @return false if some job was still unconfirmed after the timeout
+     */
+    public boolean awaitConfirmed(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (lock) {
+            while (!pending.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !running) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stop reading; unconfirmed jobs stay unfinished in the spool
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        reader.interrupt();
+        try {
+            reader.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void process(int b) {
+        synchronized (lock) {
+            if (!pending.isEmpty() && (b & Ncr7167Commands.TransmitStatus.FIXED_MASK)
+                    == Ncr7167Commands.TransmitStatus.FIXED_BITS) {
+                // Completed before waiters see the job gone from pending
+                spool.complete(pending.removeFirst().ticket);
+                lock.notifyAll();
+            } else {
+                store(b);
+            }
+        }
+    }
+
+    private void reportOverdue() {
+        synchronized (lock) {
+            Pending oldest = pending.peekFirst();
+            if (oldest != null && !oldest.reported && System.nanoTime() - oldest.sentNanos > timeoutNanos) {
+                oldest.reported = true;
+                logger.warn("Printer has not confirmed job {} after {} ms; it stays unfinished in the spool",
+                    oldest.jobId, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.sentNanos));
+            }
+        }
+    }
+
+    private void store(int b) {
+        if (receivedCount == received.length) {
+            // Drop the oldest byte nobody has read
+            receivedStart = (receivedStart + 1) % received.length;
+            receivedCount--;
+        }
+        received[(receivedStart + receivedCount) % received.length] = (byte) b;
+        receivedCount++;
+    }
+
+    private void read() {
+        byte[] buffer = new byte[64];
+        while (running) {
+            int count;
+            try {
+                count = source.read(buffer);
+            } catch (IOException e) {
+                // Read timeouts of the serial port end up here as well
+                count = 0;
+            }
+
+            if (count <= 0) {
+                reportOverdue();
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+
+            if (wireTrace != null) {
+                wireTrace.incoming(buffer, 0, count);
+            }
+            for (int i = 0; i < count; i++) {
+                process(buffer[i] & 0xFF);
+            }
+        }
+    }
+
+    private static class Pending {
+        final long ticket;
+        final String jobId;
+        final long sentNanos;
+        boolean reported;
+
+        Pending(long ticket, String jobId, long sentNanos) {
+            this.ticket = ticket;
+            this.jobId = jobId;
+            this.sentNanos = sentNanos;
+        }
+    }
+
+    private class PassedInputStream extends InputStream {
+        @Override
+        public int available() {
+            synchronized (lock) {
+                return receivedCount;
+            }
+        }
+
+        @Override
+        public int read() {
+            synchronized (lock) {
+                if (receivedCount == 0) {
+                    return -1;
+                }
+                int b = received[receivedStart] & 0xFF;
+                receivedStart = (receivedStart + 1) % received.length;
+                receivedCount--;
+                return b;
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.ncr.printer.spool;
+
+import com.ncr.printer.PrintJob;
+
+/**
+ * A job recovered from the spool that was never marked complete
+ */
+public class SpooledJob {
+
+    private final long ticket;
+    private final long sequence;
+    private final PrintJob job;
+
+    SpooledJob(long ticket, long sequence, PrintJob job) {
+        this.ticket = ticket;
+        this.sequence = sequence;
+        this.job = job;
+    }
+
+    /**
+     * Handle to pass to {@link JobSpool#complete(long)}
+     */
+    public long getTicket() { return ticket; }
+
+    public long getSequence() { return sequence; }
+
+    public PrintJob getJob() { return job; }
+}
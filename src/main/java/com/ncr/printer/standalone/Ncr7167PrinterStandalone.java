@@ -1,11 +1,20 @@
 package com.ncr.printer.standalone;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Standalone NCR 7167 Printer class that doesn't require external dependencies
  * This version uses basic Java I/O for serial communication
+ *
+ * In channel mode commands are collected in a direct buffer and written
+ * to the device through a FileChannel only when the buffer fills, a job
+ * ends or {@link #flush()} is called, instead of one write per command.
  */
 public class Ncr7167PrinterStandalone {
     
@@ -19,12 +28,39 @@ public class Ncr7167PrinterStandalone {
     private static final byte SELECT_SLIP = 0x1C;       // FS
     private static final byte CLEAR_PRINTER = 0x10;     // DLE
     
+    private static final int CHANNEL_BUFFER_SIZE = 8192;
+    
+    // Most recent bytes sent, kept for dumpWireTrace()
+    private static final int TRACE_CAPACITY = 4096;
+    
     private String portName;
     private FileOutputStream outputStream;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private final boolean channelMode;
+    private boolean tracing = false;
     private boolean isConnected = false;
+    private final byte[] trace = new byte[TRACE_CAPACITY];
+    private long traceWritten;
     
     public Ncr7167PrinterStandalone(String portName) {
+        this(portName, false);
+    }
+    
+    /**
+     * @param portName port or device node, e.g. COM1 or /dev/ttyS0
+     * @param channelMode true to buffer commands and write them through a FileChannel
+     */
+    public Ncr7167PrinterStandalone(String portName, boolean channelMode) {
         this.portName = portName;
+        this.channelMode = channelMode;
+    }
+    
+    /**
+     * Print connection events and every command to the console
+     */
+    public void setTracing(boolean tracing) {
+        this.tracing = tracing;
     }
     
     /**
@@ -32,10 +68,16 @@ public class Ncr7167PrinterStandalone {
      */
     public void connect() throws IOException {
         try {
-            // On Windows, we can try to open COM port as a file
-            outputStream = new FileOutputStream(portName);
+            if (channelMode) {
+                // Without CREATE a missing device fails instead of becoming a plain file
+                channel = FileChannel.open(Paths.get(portName), StandardOpenOption.WRITE);
+                buffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+            } else {
+                // On Windows, we can try to open COM port as a file
+                outputStream = new FileOutputStream(portName);
+            }
             isConnected = true;
-            System.out.println("Connected to printer on " + portName);
+            trace("Connected to printer on " + portName);
         } catch (IOException e) {
             throw new IOException("Failed to connect to " + portName + ": " + e.getMessage());
         }
@@ -45,15 +87,21 @@ public class Ncr7167PrinterStandalone {
      * Disconnect from printer
      */
     public void disconnect() {
-        if (outputStream != null) {
-            try {
+        try {
+            if (channel != null) {
+                if (isConnected) {
+                    flush();
+                }
+                channel.close();
+            }
+            if (outputStream != null) {
                 outputStream.close();
-            } catch (IOException e) {
-                System.err.println("Error closing connection: " + e.getMessage());
             }
+        } catch (IOException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
         }
         isConnected = false;
-        System.out.println("Disconnected from printer");
+        trace("Disconnected from printer");
     }
     
     /**
@@ -67,13 +115,102 @@ public class Ncr7167PrinterStandalone {
      * Send raw command to printer
      */
     public void sendCommand(byte[] command) throws IOException {
-        if (!isConnected || outputStream == null) {
+        if (!isConnected) {
             throw new IOException("Printer not connected");
         }
         
-        System.out.println("Sending command: " + Arrays.toString(command));
-        outputStream.write(command);
-        outputStream.flush();
+        recordTrace(command);
+        if (tracing) {
+            System.out.println("Sending command: " + Arrays.toString(command));
+        }
+        
+        if (!channelMode) {
+            outputStream.write(command);
+            outputStream.flush();
+            return;
+        }
+        
+        if (command.length <= buffer.remaining()) {
+            buffer.put(command);
+            return;
+        }
+        
+        // Gather the buffered commands and this one into a single write
+        buffer.flip();
+        ByteBuffer[] buffers = {buffer, ByteBuffer.wrap(command)};
+        while (buffers[1].hasRemaining()) {
+            channel.write(buffers);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * Mark the start of a print job; in channel mode its commands are
+     * held back until {@link #endJob()} unless the buffer fills first
+     */
+    public void beginJob() throws IOException {
+        flush();
+    }
+    
+    /**
+     * Write out the commands of the current job
+     */
+    public void endJob() throws IOException {
+        flush();
+    }
+    
+    /**
+     * Write out all buffered commands
+     */
+    public void flush() throws IOException {
+        if (!channelMode || !isConnected) {
+            return;
+        }
+        
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    private void trace(String message) {
+        if (tracing) {
+            System.out.println(message);
+        }
+    }
+    
+    /**
+     * Recent bytes sent to the printer as an annotated hex listing
+     */
+    public synchronized String dumpWireTrace() {
+        int count = (int) Math.min(traceWritten, trace.length);
+        if (count == 0) {
+            return "(wire trace is empty)\n";
+        }
+        
+        StringBuilder out = new StringBuilder();
+        out.append("Last ").append(count).append(" of ").append(traceWritten).append(" bytes sent\n");
+        long first = traceWritten - count;
+        for (int i = 0; i < count; i++) {
+            if (i % 16 == 0) {
+                out.append(String.format("%08X ", first + i));
+            }
+            out.append(String.format(" %02X", trace[(int) ((first + i) % trace.length)] & 0xFF));
+            if (i % 16 == 15 || i == count - 1) {
+                out.append('\n');
+            }
+        }
+        return out.toString();
+    }
+    
+    private synchronized void recordTrace(byte[] command) {
+        // Only the tail of a command larger than the ring is kept
+        int stored = Math.min(command.length, trace.length);
+        traceWritten += command.length - stored;
+        for (int i = command.length - stored; i < command.length; i++) {
+            trace[(int) (traceWritten++ % trace.length)] = command[i];
+        }
     }
     
     /**
@@ -90,6 +227,7 @@ public class Ncr7167PrinterStandalone {
      */
     public void initialize() throws IOException {
         sendCommand(new byte[]{ESC, INITIALIZE_PRINTER});
+        flush();
         // Wait for initialization
         try {
             Thread.sleep(1000);
@@ -174,9 +312,10 @@ public class Ncr7167PrinterStandalone {
      * Simple test method
      */
     public void performSimpleTest() throws IOException {
-        System.out.println("Performing simple printer test...");
+        trace("Performing simple printer test...");
         
         initialize();
+        beginJob();
         selectReceiptStation();
         
         printLine("=== NCR 7167 SIMPLE TEST ===");
@@ -197,8 +336,9 @@ public class Ncr7167PrinterStandalone {
         printLine("Test completed!");
         
         feedPaper(3);
+        endJob();
         
-        System.out.println("Test completed successfully!");
+        trace("Test completed successfully!");
     }
     
     /**
@@ -206,13 +346,17 @@ public class Ncr7167PrinterStandalone {
      */
     public static void main(String[] args) {
         if (args.length == 0) {
-            System.out.println("Usage: java Ncr7167PrinterStandalone <COM_PORT>");
+            System.out.println("Usage: java Ncr7167PrinterStandalone <COM_PORT> [--channel] [--trace]");
             System.out.println("Example: java Ncr7167PrinterStandalone COM1");
+            System.out.println("         java Ncr7167PrinterStandalone /dev/ttyS0 --channel");
             return;
         }
         
         String portName = args[0];
-        Ncr7167PrinterStandalone printer = new Ncr7167PrinterStandalone(portName);
+        List<String> options = Arrays.asList(args).subList(1, args.length);
+        Ncr7167PrinterStandalone printer =
+            new Ncr7167PrinterStandalone(portName, options.contains("--channel"));
+        printer.setTracing(options.contains("--trace"));
         
         try {
             printer.connect();
@@ -220,6 +364,7 @@ public class Ncr7167PrinterStandalone {
         } catch (IOException e) {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
+            System.err.print(printer.dumpWireTrace());
         } finally {
             printer.disconnect();
         }
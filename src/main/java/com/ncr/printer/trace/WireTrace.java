@@ -0,0 +1,210 @@
+package com.ncr.printer.trace;
+
+import com.ncr.printer.decode.CommandDecoder;
+import com.ncr.printer.decode.CommandListing;
+
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Binary recorder of the bytes exchanged with a printer
+ *
+ * Outgoing and incoming bytes are copied with a nanosecond timestamp into
+ * a preallocated ring, so recording costs one array copy and nothing is
+ * formatted until {@link #dump()} is called. Only the most recent bytes
+ * are kept: when the ring is full the oldest records are overwritten.
+ */
+public class WireTrace {
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    public enum Direction {
+        TX, RX
+    }
+
+    private static final String[] CONTROL_NAMES = {
+        "NUL", "SOH", "STX", "ETX", "EOT", "ENQ", "ACK", "BEL",
+        "BS", "HT", "LF", "VT", "FF", "CR", "SO", "SI",
+        "DLE", "DC1", "DC2", "DC3", "DC4", "NAK", "SYN", "ETB",
+        "CAN", "EM", "SUB", "ESC", "FS", "GS", "RS", "US"
+    };
+
+    private final byte[] data;
+    private final long[] starts;
+    private final int[] lengths;
+    private final int[] storedLengths;
+    private final long[] timestamps;
+    private final byte[] directions;
+
+    // Wall-clock reference for converting nanoTime stamps in dumps
+    private final long baseNanos = System.nanoTime();
+    private final long baseMillis = System.currentTimeMillis();
+
+    private long bytesWritten;
+    private long recordsWritten;
+
+    public WireTrace() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of bytes kept; records are limited to capacity / 16
+     */
+    public WireTrace(int capacity) {
+        if (capacity < 16) {
+            throw new IllegalArgumentException("Trace capacity must be at least 16 bytes");
+        }
+        int maxRecords = capacity / 16;
+        this.data = new byte[capacity];
+        this.starts = new long[maxRecords];
+        this.lengths = new int[maxRecords];
+        this.storedLengths = new int[maxRecords];
+        this.timestamps = new long[maxRecords];
+        this.directions = new byte[maxRecords];
+    }
+
+    /**
+     * Record bytes sent to the printer
+     */
+    public void outgoing(byte[] bytes, int offset, int length) {
+        record(Direction.TX, bytes, offset, length);
+    }
+
+    /**
+     * Record bytes received from the printer
+     */
+    public void incoming(byte[] bytes, int offset, int length) {
+        record(Direction.RX, bytes, offset, length);
+    }
+
+    /**
+     * Record a single byte received from the printer
+     */
+    public synchronized void incoming(int b) {
+        int slot = nextSlot(Direction.RX, 1, 1);
+        data[(int) (starts[slot] % data.length)] = (byte) b;
+        bytesWritten++;
+    }
+
+    private synchronized void record(Direction direction, byte[] bytes, int offset, int length) {
+        // Keep only the tail of writes larger than the ring
+        int stored = Math.min(length, data.length);
+        int slot = nextSlot(direction, length, stored);
+
+        int from = offset + length - stored;
+        int position = (int) (starts[slot] % data.length);
+        int first = Math.min(stored, data.length - position);
+        System.arraycopy(bytes, from, data, position, first);
+        System.arraycopy(bytes, from + first, data, 0, stored - first);
+        bytesWritten += stored;
+    }
+
+    private int nextSlot(Direction direction, int length, int stored) {
+        int slot = (int) (recordsWritten++ % starts.length);
+        starts[slot] = bytesWritten;
+        lengths[slot] = length;
+        storedLengths[slot] = stored;
+        timestamps[slot] = System.nanoTime();
+        directions[slot] = (byte) direction.ordinal();
+        return slot;
+    }
+
+    /**
+     * Forget all recorded bytes
+     */
+    public synchronized void clear() {
+        bytesWritten = 0;
+        recordsWritten = 0;
+    }
+
+    /**
+     * Number of records still held in the ring
+     */
+    public synchronized int getRecordCount() {
+        return (int) (recordsWritten - firstRecord());
+    }
+
+    /**
+     * Annotated hex listing of the recorded traffic, oldest first
+     */
+    public synchronized String dump() {
+        StringBuilder out = new StringBuilder();
+        long first = firstRecord();
+        if (first == recordsWritten) {
+            return "(wire trace is empty)\n";
+        }
+
+        long firstNanos = timestamps[(int) (first % starts.length)];
+        out.append("Wire trace from ")
+           .append(Instant.ofEpochMilli(baseMillis + (firstNanos - baseNanos) / 1_000_000))
+           .append(", ").append(recordsWritten - first).append(" records\n");
+
+        for (long i = first; i < recordsWritten; i++) {
+            int slot = (int) (i % starts.length);
+            appendRecord(out, slot, firstNanos);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Decoded command listing of the recorded outgoing bytes, oldest first
+     * The oldest record may start in the middle of a command, so its first
+     * bytes can be listed as text or unknown controls.
+     */
+    public synchronized String dumpCommands() {
+        StringBuilder out = new StringBuilder();
+        CommandDecoder decoder = new CommandDecoder(new CommandListing(out));
+        for (long i = firstRecord(); i < recordsWritten; i++) {
+            int slot = (int) (i % starts.length);
+            if (directions[slot] != Direction.TX.ordinal()) {
+                continue;
+            }
+            int position = (int) (starts[slot] % data.length);
+            int first = Math.min(storedLengths[slot], data.length - position);
+            decoder.feed(data, position, first);
+            decoder.feed(data, 0, storedLengths[slot] - first);
+        }
+        decoder.finish();
+        return out.toString();
+    }
+
+    private long firstRecord() {
+        long oldestByte = bytesWritten - data.length;
+        long first = Math.max(0, recordsWritten - starts.length);
+        // Skip records whose bytes have been overwritten
+        while (first < recordsWritten && starts[(int) (first % starts.length)] < oldestByte) {
+            first++;
+        }
+        return first;
+    }
+
+    private void appendRecord(StringBuilder out, int slot, long firstNanos) {
+        int stored = storedLengths[slot];
+        out.append(String.format(Locale.ROOT, "+%.6f ms %s %d bytes",
+            (timestamps[slot] - firstNanos) / 1_000_000.0, Direction.values()[directions[slot]], lengths[slot]));
+        if (stored < lengths[slot]) {
+            out.append(" (last ").append(stored).append(" kept)");
+        }
+        out.append('\n');
+
+        long start = starts[slot];
+        StringBuilder hex = new StringBuilder();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < stored; i++) {
+            int b = data[(int) ((start + i) % data.length)] & 0xFF;
+            hex.append(String.format("%02X ", b));
+            if (b < CONTROL_NAMES.length) {
+                text.append('<').append(CONTROL_NAMES[b]).append('>');
+            } else if (b < 0x7F) {
+                text.append((char) b);
+            } else {
+                text.append('.');
+            }
+            if ((i & 15) == 15 || i == stored - 1) {
+                out.append(String.format("    %-48s %s%n", hex, text));
+                hex.setLength(0);
+                text.setLength(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.ncr.printer.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory stand-in for a printer link
+ *
+ * Everything written is captured and can be inspected with
+ * {@link #getWrittenBytes()}; bytes queued with {@link #addInput(byte...)}
+ * are returned to readers as if the printer had sent them. An optional
+ * baud rate makes writes take as long as they would on a serial line.
+ */
+public class InMemoryTransport implements PrinterTransport {
+
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    private final Object inputLock = new Object();
+    private final OutputStream outputStream = new CaptureOutputStream();
+    private final InputStream inputStream = new QueuedInputStream();
+
+    private volatile boolean open;
+    private volatile int baudRate;
+    private byte[] input = new byte[64];
+    private int inputStart;
+    private int inputEnd;
+
+    public InMemoryTransport() {
+        this(0);
+    }
+
+    /**
+     * @param baudRate simulated line speed in bits per second; 0 for no delay
+     */
+    public InMemoryTransport(int baudRate) {
+        this.baudRate = baudRate;
+    }
+
+    @Override
+    public void open() {
+        open = true;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    public void setBaudRate(int baudRate) {
+        this.baudRate = baudRate;
+    }
+
+    /**
+     * All bytes written so far
+     */
+    public byte[] getWrittenBytes() {
+        synchronized (written) {
+            return written.toByteArray();
+        }
+    }
+
+    /**
+     * Number of bytes written so far
+     */
+    public int getWrittenCount() {
+        synchronized (written) {
+            return written.size();
+        }
+    }
+
+    /**
+     * Discard the captured output
+     */
+    public void clearWritten() {
+        synchronized (written) {
+            written.reset();
+        }
+    }
+
+    /**
+     * Queue bytes to be read as printer responses
+     */
+    public void addInput(byte... data) {
+        synchronized (inputLock) {
+            if (inputEnd + data.length > input.length) {
+                int count = inputEnd - inputStart;
+                byte[] grown = input.length - count >= data.length
+                    ? input : new byte[Math.max(input.length * 2, count + data.length)];
+                System.arraycopy(input, inputStart, grown, 0, count);
+                input = grown;
+                inputStart = 0;
+                inputEnd = count;
+            }
+            System.arraycopy(data, 0, input, inputEnd, data.length);
+            inputEnd += data.length;
+        }
+    }
+
+    private void simulateLine(int count) throws IOException {
+        int baud = baudRate;
+        if (baud <= 0 || count == 0) {
+            return;
+        }
+        // 10 bits per byte: start + 8 data + stop
+        long nanos = TimeUnit.SECONDS.toNanos(count * 10L) / baud;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing", e);
+        }
+    }
+
+    private class CaptureOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!open) {
+                throw new IOException("Transport is closed");
+            }
+            simulateLine(len);
+            synchronized (written) {
+                written.write(b, off, len);
+            }
+        }
+    }
+
+    private class QueuedInputStream extends InputStream {
+        @Override
+        public int available() {
+            synchronized (inputLock) {
+                return inputEnd - inputStart;
+            }
+        }
+
+        @Override
+        public int read() {
+            synchronized (inputLock) {
+                if (inputStart == inputEnd) {
+                    return -1;
+                }
+                return input[inputStart++] & 0xFF;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.ncr.printer.transport;
+
+import com.ncr.printer.Ncr7167Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Byte-level link to the printer (serial port, in-memory stand-in, ...)
+ */
+public interface PrinterTransport {
+
+    /**
+     * Open the link
+     */
+    void open() throws IOException;
+
+    /**
+     * Close the link; never throws
+     */
+    void close();
+
+    /**
+     * Check if the link is open
+     */
+    boolean isOpen();
+
+    /**
+     * Stream of bytes to the printer; valid while the link is open
+     */
+    OutputStream getOutputStream();
+
+    /**
+     * Stream of bytes from the printer; valid while the link is open
+     */
+    InputStream getInputStream();
+
+    /**
+     * Transport for the configured interface: the USB printer-class device
+     * for {@link Ncr7167Config.InterfaceType#USB}, unless the port name is a
+     * virtual COM port, and the serial port otherwise
+     */
+    static PrinterTransport forConfig(Ncr7167Config config) {
+        if (config.getInterfaceType() == Ncr7167Config.InterfaceType.USB
+                && !UsbPrinterTransport.isSerialPortName(config.getPortName())) {
+            return new UsbPrinterTransport(config);
+        }
+        return new SerialPortTransport(config);
+    }
+}
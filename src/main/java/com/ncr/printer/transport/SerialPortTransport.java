@@ -0,0 +1,106 @@
+package com.ncr.printer.transport;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.ncr.printer.Ncr7167Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * RS-232C link through jSerialComm, configured from Ncr7167Config
+ */
+public class SerialPortTransport implements PrinterTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(SerialPortTransport.class);
+
+    private final Ncr7167Config config;
+    private SerialPort serialPort;
+    private OutputStream outputStream;
+    private InputStream inputStream;
+
+    public SerialPortTransport(Ncr7167Config config) {
+        this.config = config;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (config.getPortName() == null || config.getPortName().isEmpty()) {
+            throw new IOException("Port name is not configured");
+        }
+
+        serialPort = SerialPort.getCommPort(config.getPortName());
+
+        // Configure serial port based on config
+        serialPort.setBaudRate(config.getBaudRate());
+        serialPort.setNumDataBits(config.getDataBits());
+        serialPort.setNumStopBits(config.getStopBits());
+        serialPort.setParity(config.getParity());
+
+        // Set flow control
+        switch (config.getFlowControl()) {
+            case XON_XOFF:
+                if (config.isSoftwareFlowControl()) {
+                    // XON/XOFF is handled by the library
+                    serialPort.setFlowControl(SerialPort.FLOW_CONTROL_DISABLED);
+                    break;
+                }
+                serialPort.setFlowControl(SerialPort.FLOW_CONTROL_XONXOFF_IN_ENABLED |
+                                         SerialPort.FLOW_CONTROL_XONXOFF_OUT_ENABLED);
+                break;
+            case DTR_DSR:
+                serialPort.setFlowControl(SerialPort.FLOW_CONTROL_DTR_ENABLED |
+                                         SerialPort.FLOW_CONTROL_DSR_ENABLED);
+                break;
+            default:
+                serialPort.setFlowControl(SerialPort.FLOW_CONTROL_DISABLED);
+        }
+
+        // Set timeouts
+        serialPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING |
+                                     SerialPort.TIMEOUT_WRITE_BLOCKING,
+                                     config.getTimeout(), config.getTimeout());
+
+        // Open the port
+        if (!serialPort.openPort()) {
+            throw new IOException("Failed to open serial port: " + config.getPortName());
+        }
+
+        outputStream = serialPort.getOutputStream();
+        inputStream = serialPort.getInputStream();
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (outputStream != null) {
+                outputStream.close();
+            }
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error while closing serial port streams", e);
+        }
+        if (serialPort != null && serialPort.isOpen()) {
+            serialPort.closePort();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return serialPort != null && serialPort.isOpen();
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+}
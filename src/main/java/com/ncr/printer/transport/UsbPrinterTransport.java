@@ -0,0 +1,200 @@
+package com.ncr.printer.transport;
+
+import com.ncr.printer.Ncr7167Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * USB printer-class link through the Linux usblp device (/dev/usb/lp*)
+ *
+ * The device is opened once for reading and writing, since usblp allows
+ * only one open handle. Writes are gathered into bulk-sized transfers
+ * and sent on flush; there is no baud rate or flow control emulation in
+ * between. A reader thread takes the printer's replies from the same
+ * handle so status requests can poll {@link InputStream#available()}.
+ * Any file or FIFO can stand in for the device.
+ */
+public class UsbPrinterTransport implements PrinterTransport {
+
+    public static final String DEFAULT_DEVICE = "/dev/usb/lp0";
+
+    private static final Logger logger = LoggerFactory.getLogger(UsbPrinterTransport.class);
+    private static final long POLL_MILLIS = 10;
+    private static final int RECEIVED_CAPACITY = 4096;
+
+    private final Ncr7167Config config;
+    private final Object lock = new Object();
+    private final InputStream inputStream = new ReceivedInputStream();
+    private RandomAccessFile device;
+    private FileChannel readChannel;
+    private OutputStream outputStream;
+    private Thread reader;
+
+    private volatile boolean open;
+
+    // Guarded by lock
+    private final byte[] received = new byte[RECEIVED_CAPACITY];
+    private int receivedStart;
+    private int receivedCount;
+
+    public UsbPrinterTransport(Ncr7167Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Check if a port name refers to a serial port, real or virtual, rather than a printer-class device
+     */
+    public static boolean isSerialPortName(String portName) {
+        return portName != null && (portName.toUpperCase().startsWith("COM")
+            || portName.startsWith("/dev/tty") || portName.startsWith("/dev/cu."));
+    }
+
+    /**
+     * Device path from the port name, or {@link #DEFAULT_DEVICE}
+     */
+    public String getDevicePath() {
+        String portName = config.getPortName();
+        return portName == null || portName.isEmpty() ? DEFAULT_DEVICE : portName;
+    }
+
+    @Override
+    public void open() throws IOException {
+        String path = getDevicePath();
+        // "rw" would create a plain file where the device node is missing
+        if (!Files.exists(Paths.get(path))) {
+            throw new NoSuchFileException(path, null, "USB printer device not found");
+        }
+        device = new RandomAccessFile(path, "rw");
+        FileDescriptor fd = device.getFD();
+
+        // Separate streams on one handle, so a blocked read never holds up a write
+        readChannel = new FileInputStream(fd).getChannel();
+        outputStream = new BufferedOutputStream(new FileOutputStream(fd), Math.max(1, config.getUsbTransferSize()));
+        synchronized (lock) {
+            receivedStart = 0;
+            receivedCount = 0;
+        }
+        open = true;
+
+        reader = new Thread(this::read, "ncr7167-usb-reader");
+        reader.setDaemon(true);
+        reader.start();
+        logger.debug("Opened USB printer device {}", path);
+    }
+
+    @Override
+    public void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            outputStream.flush();
+        } catch (IOException e) {
+            logger.warn("Error while flushing USB printer device: {}", e.getMessage());
+        }
+        try {
+            // Closing the channel wakes the reader and releases the handle
+            readChannel.close();
+            device.close();
+        } catch (IOException e) {
+            logger.error("Error while closing USB printer device", e);
+        }
+        try {
+            reader.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    private void read() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        while (open) {
+            int count;
+            try {
+                buffer.clear();
+                count = readChannel.read(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                logger.debug("USB printer read failed: {}", e.getMessage());
+                count = 0;
+            }
+
+            if (count <= 0) {
+                // End of a stand-in file, or nothing from the printer yet
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+
+            synchronized (lock) {
+                for (int i = 0; i < count; i++) {
+                    if (receivedCount == received.length) {
+                        // Drop the oldest byte nobody has read
+                        receivedStart = (receivedStart + 1) % received.length;
+                        receivedCount--;
+                    }
+                    received[(receivedStart + receivedCount) % received.length] = buffer.get(i);
+                    receivedCount++;
+                }
+            }
+        }
+    }
+
+    private class ReceivedInputStream extends InputStream {
+        @Override
+        public int available() {
+            synchronized (lock) {
+                return receivedCount;
+            }
+        }
+
+        @Override
+        public int read() {
+            synchronized (lock) {
+                if (receivedCount == 0) {
+                    return -1;
+                }
+                int b = received[receivedStart] & 0xFF;
+                receivedStart = (receivedStart + 1) % received.length;
+                receivedCount--;
+                return b;
+            }
+        }
+    }
+}
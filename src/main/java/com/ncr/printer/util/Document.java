@@ -0,0 +1,27 @@
+package com.ncr.printer.util;
+
+import com.ncr.printer.Ncr7167Exception;
+
+/**
+ * A printable document, rendered through a ReceiptBuilder
+ *
+ * Documents passed to {@link com.ncr.printer.Ncr7167Printer#printAll} are
+ * rendered on worker threads, so render() must not depend on state shared
+ * with other documents. The receipt is already captured as one job, so
+ * render() must not call {@link ReceiptBuilder#begin(String)}.
+ */
+@FunctionalInterface
+public interface Document {
+
+    /**
+     * Render the document
+     */
+    void render(ReceiptBuilder receipt) throws Ncr7167Exception;
+
+    /**
+     * Job or transaction ID of the document, or null
+     */
+    default String getJobId() {
+        return null;
+    }
+}
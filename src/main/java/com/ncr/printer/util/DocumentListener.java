@@ -0,0 +1,21 @@
+package com.ncr.printer.util;
+
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.PrintJob;
+
+/**
+ * Outcome of each document printed by
+ * {@link com.ncr.printer.Ncr7167Printer#printAll(java.util.Iterator, DocumentListener)}
+ */
+public interface DocumentListener {
+
+    /**
+     * The document was rendered and the port accepted all of its bytes
+     */
+    void printed(Document document, PrintJob job);
+
+    /**
+     * The document could not be rendered or printed; the batch goes on
+     */
+    void failed(Document document, Ncr7167Exception error);
+}
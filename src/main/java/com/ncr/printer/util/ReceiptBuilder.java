@@ -3,36 +3,71 @@ package com.ncr.printer.util;
 import com.ncr.printer.Ncr7167Config;
 import com.ncr.printer.Ncr7167Exception;
 import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.barcode.BarCodeConfig;
 import com.ncr.printer.commands.Ncr7167Commands;
+import com.ncr.printer.layout.LineLayout;
+import com.ncr.printer.layout.LineLayout.Align;
+
+import java.util.List;
 
 /**
  * Builder class for creating formatted receipts
  */
 public class ReceiptBuilder {
     
+    // Sections with at least this many rows are rendered in parallel
+    private static final int PARALLEL_ROW_THRESHOLD = 1024;
+    
     private final StringBuilder content;
     private final Ncr7167Printer printer;
+    private final LineLayout layout;
     private boolean headerSet = false;
+    private boolean ownsJob = false;
     
     public ReceiptBuilder(Ncr7167Printer printer) {
         this.printer = printer;
+        this.layout = new LineLayout(printer);
         this.content = new StringBuilder();
     }
     
+    /**
+     * Start rendering the receipt as a single print job
+     * The job is printed in one write by {@link #complete()}.
+     */
+    public ReceiptBuilder begin(String transactionId) throws Ncr7167Exception {
+        printer.beginJob(transactionId);
+        ownsJob = true;
+        return this;
+    }
+    
     /**
      * Add header with store information
      */
     public ReceiptBuilder header(String storeName, String address) throws Ncr7167Exception {
         printer.setDoubleWide(true);
-        printer.printLine(center(storeName, 22)); // 22 chars for double-wide on 44 char line
+        layout.text(storeName, Align.CENTER);
         printer.setDoubleWide(false);
         
         if (address != null && !address.isEmpty()) {
-            printer.printLine(center(address, 44));
+            layout.text(address, Align.CENTER);
         }
         
-        printer.printLine(repeatChar('=', 44));
+        layout.fill('=');
         headerSet = true;
+        
+        // Reprints carry their copy marker right below the header
+        if (printer.isJobOpen()) {
+            printer.markCopySlot();
+        }
+        return this;
+    }
+    
+    /**
+     * Mark where the copy marker goes when this receipt is reprinted
+     * (the default slot is right below the header)
+     */
+    public ReceiptBuilder copySlot() throws Ncr7167Exception {
+        printer.markCopySlot();
         return this;
     }
     
@@ -40,10 +75,33 @@ public class ReceiptBuilder {
      * Add a centered line
      */
     public ReceiptBuilder centerLine(String text) throws Ncr7167Exception {
-        printer.printLine(center(text, 44));
+        layout.text(text, Align.CENTER);
         return this;
     }
     
+    /**
+     * Add text word-wrapped to the line width
+     */
+    public ReceiptBuilder wrap(String text) throws Ncr7167Exception {
+        layout.wrap(text, Align.LEFT);
+        return this;
+    }
+    
+    /**
+     * Add one row of a table, laid out for this receipt's printer
+     */
+    public ReceiptBuilder row(LineLayout.Table table, String... cells) throws Ncr7167Exception {
+        layout.row(table, cells);
+        return this;
+    }
+    
+    /**
+     * Line layout sized to the printer's station and pitch, e.g. to define tables
+     */
+    public LineLayout getLayout() {
+        return layout;
+    }
+    
     /**
      * Add a regular line
      */
@@ -52,6 +110,14 @@ public class ReceiptBuilder {
         return this;
     }
     
+    /**
+     * Add a registered custom glyph inline, e.g. before a line of text
+     */
+    public ReceiptBuilder glyph(String name) throws Ncr7167Exception {
+        printer.sendGlyph(name);
+        return this;
+    }
+    
     /**
      * Add an empty line
      */
@@ -64,7 +130,7 @@ public class ReceiptBuilder {
      * Add a separator line
      */
     public ReceiptBuilder separator() throws Ncr7167Exception {
-        printer.printLine(repeatChar('-', 44));
+        layout.fill('-');
         return this;
     }
     
@@ -72,8 +138,23 @@ public class ReceiptBuilder {
      * Add item line with left-aligned description and right-aligned price
      */
     public ReceiptBuilder item(String description, String price) throws Ncr7167Exception {
-        String line = formatItemLine(description, price, 44);
-        printer.printLine(line);
+        layout.pair(description, price);
+        return this;
+    }
+    
+    /**
+     * Add a tabular section, one formatted row per element
+     * Large sections are formatted and encoded in parallel; the printed
+     * bytes are the same as formatting the rows one by one.
+     */
+    public <T> ReceiptBuilder rows(List<T> rows, RowFormatter<T> formatter) throws Ncr7167Exception {
+        if (rows.size() < PARALLEL_ROW_THRESHOLD) {
+            for (T row : rows) {
+                formatter.format(this, row);
+            }
+        } else {
+            printer.replay(new ReportRenderer(printer).render(rows, formatter));
+        }
         return this;
     }
     
@@ -102,7 +183,7 @@ public class ReceiptBuilder {
      */
     public ReceiptBuilder doubleWide(String text) throws Ncr7167Exception {
         printer.setDoubleWide(true);
-        printer.printLine(center(text, 22)); // 22 chars for double-wide
+        layout.text(text, Align.CENTER);
         printer.setDoubleWide(false);
         return this;
     }
@@ -116,14 +197,22 @@ public class ReceiptBuilder {
         return this;
     }
     
+    /**
+     * Add bar code with height, width and HRI settings
+     */
+    public ReceiptBuilder barCode(int type, String data, BarCodeConfig barCodeConfig) throws Ncr7167Exception {
+        printer.printBarCode(type, data, barCodeConfig);
+        printer.printLine(""); // Add line after bar code
+        return this;
+    }
+    
     /**
      * Add total line
      */
     public ReceiptBuilder total(String label, String amount) throws Ncr7167Exception {
-        printer.printLine(repeatChar('=', 44));
+        layout.fill('=');
         printer.setEmphasized(true);
-        String totalLine = formatItemLine(label, amount, 44);
-        printer.printLine(totalLine);
+        layout.pair(label, amount);
         printer.setEmphasized(false);
         return this;
     }
@@ -132,8 +221,8 @@ public class ReceiptBuilder {
      * Add footer with date/time and transaction info
      */
     public ReceiptBuilder footer(String transactionId, String dateTime) throws Ncr7167Exception {
-        printer.printLine(repeatChar('=', 44));
-        printer.printLine(center("THANK YOU!", 44));
+        layout.fill('=');
+        layout.text("THANK YOU!", Align.CENTER);
         
         if (transactionId != null) {
             printer.printLine("Trans ID: " + transactionId);
@@ -148,6 +237,7 @@ public class ReceiptBuilder {
     
     /**
      * Feed paper and cut
+     * If the receipt was started with {@link #begin(String)} the job is printed now.
      */
     public ReceiptBuilder complete() throws Ncr7167Exception {
         printer.feedPaper(3);
@@ -158,32 +248,11 @@ public class ReceiptBuilder {
             // Cutting might not be available on all configurations
         }
         
-        return this;
-    }
-    
-    // Utility methods
-    
-    private String center(String text, int width) {
-        if (text.length() >= width) {
-            return text.substring(0, width);
-        }
-        
-        int padding = (width - text.length()) / 2;
-        return repeatChar(' ', padding) + text;
-    }
-    
-    private String repeatChar(char c, int count) {
-        return new String(new char[count]).replace('\0', c);
-    }
-    
-    private String formatItemLine(String description, String price, int width) {
-        if (description.length() + price.length() >= width) {
-            // Truncate description if too long
-            int maxDescLength = width - price.length() - 1;
-            description = description.substring(0, Math.max(0, maxDescLength));
+        if (ownsJob) {
+            ownsJob = false;
+            printer.endJob();
         }
         
-        int spaces = width - description.length() - price.length();
-        return description + repeatChar(' ', spaces) + price;
+        return this;
     }
 }
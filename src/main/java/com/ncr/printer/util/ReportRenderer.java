@@ -0,0 +1,115 @@
+package com.ncr.printer.util;
+
+import com.ncr.printer.CommandRecording;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders large tabular report sections in parallel
+ *
+ * The rows are split into chunks that are formatted and encoded on a
+ * fork-join pool. Each chunk is recorded command by command and the
+ * chunks are joined in row order; replaying the result defines glyphs and
+ * optimizes the job once, so the output is byte-identical to formatting
+ * the rows one after the other through a ReceiptBuilder.
+ */
+public class ReportRenderer {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private final Ncr7167Printer printer;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ReportRenderer(Ncr7167Printer printer) {
+        this(printer, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param printer printer that records the chunks
+     * @param pool pool running the chunk tasks
+     * @param chunkSize number of rows formatted by one task
+     */
+    public ReportRenderer(Ncr7167Printer printer, ForkJoinPool pool, int chunkSize) {
+        this.printer = printer;
+        this.pool = pool;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Format and encode all rows
+     * @return commands for the whole section, for {@link Ncr7167Printer#replay(CommandRecording)}
+     */
+    public <T> CommandRecording render(List<T> rows, RowFormatter<T> formatter) throws Ncr7167Exception {
+        int chunkCount = (rows.size() + chunkSize - 1) / chunkSize;
+        CommandRecording[] chunks = new CommandRecording[chunkCount];
+        if (chunkCount == 0) {
+            return CommandRecording.join(chunks);
+        }
+
+        try {
+            pool.invoke(new ChunkTask<>(rows, formatter, chunks, 0, chunkCount));
+        } catch (RenderException e) {
+            throw e.getCause();
+        }
+
+        return CommandRecording.join(chunks);
+    }
+
+    private class ChunkTask<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> rows;
+        private final RowFormatter<T> formatter;
+        private final CommandRecording[] chunks;
+        private final int from;
+        private final int to;
+
+        ChunkTask(List<T> rows, RowFormatter<T> formatter, CommandRecording[] chunks, int from, int to) {
+            this.rows = rows;
+            this.formatter = formatter;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask<>(rows, formatter, chunks, from, middle),
+                          new ChunkTask<>(rows, formatter, chunks, middle, to));
+                return;
+            }
+
+            int first = from * chunkSize;
+            int last = Math.min(rows.size(), first + chunkSize);
+            try {
+                chunks[from] = printer.record(receipt -> {
+                    for (int i = first; i < last; i++) {
+                        formatter.format(receipt, rows.get(i));
+                    }
+                });
+            } catch (Ncr7167Exception e) {
+                throw new RenderException(e);
+            }
+        }
+    }
+
+    private static final class RenderException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        RenderException(Ncr7167Exception cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized Ncr7167Exception getCause() {
+            return (Ncr7167Exception) super.getCause();
+        }
+    }
+}
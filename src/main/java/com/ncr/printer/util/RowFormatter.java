@@ -0,0 +1,15 @@
+package com.ncr.printer.util;
+
+import com.ncr.printer.Ncr7167Exception;
+
+/**
+ * Formats one row of a tabular report section
+ *
+ * Rows may be formatted concurrently and in any order, so format() must
+ * only depend on the row it is given.
+ */
+@FunctionalInterface
+public interface RowFormatter<T> {
+
+    void format(ReceiptBuilder receipt, T row) throws Ncr7167Exception;
+}
@@ -0,0 +1,228 @@
+package com.ncr.printer.util;
+
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streams arbitrarily long reports to the printer in constant memory
+ *
+ * Rows are pulled one at a time from an iterator (a JDBC cursor for
+ * example), encoded into a fixed ring of buffers and each buffer is sent
+ * to the printer as soon as the next command does not fit, so paper
+ * starts moving while later rows are still being formatted. Buffers only
+ * end between two commands, so urgent commands and other jobs can never
+ * cut into a command; a command larger than a buffer is sent on its own.
+ * When all buffers are waiting to be sent the formatting thread blocks
+ * until the printer catches up.
+ *
+ * Streamed reports bypass the job pipeline: they are not spooled,
+ * journaled or kept for reprint.
+ */
+public class StreamingReportWriter {
+
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+
+    // Marks the end of a report in the full queue
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final Ncr7167Printer printer;
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> full;
+
+    private volatile Ncr7167Exception failure;
+
+    public StreamingReportWriter(Ncr7167Printer printer) {
+        this(printer, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    /**
+     * @param printer printer receiving the report
+     * @param bufferSize size of one ring buffer in bytes
+     * @param bufferCount number of buffers in the ring
+     */
+    public StreamingReportWriter(Ncr7167Printer printer, int bufferSize, int bufferCount) {
+        if (bufferSize < 1 || bufferCount < 2) {
+            throw new IllegalArgumentException("At least two buffers of one byte are required");
+        }
+        this.printer = printer;
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(bufferCount);
+        this.full = new ArrayBlockingQueue<>(bufferCount + 1);
+        for (int i = 0; i < bufferCount; i++) {
+            free.add(ByteBuffer.allocate(bufferSize));
+        }
+    }
+
+    /**
+     * Format and print all rows of a spliterator
+     * @return number of rows written
+     */
+    public <T> long write(Spliterator<T> rows, RowFormatter<T> formatter) throws Ncr7167Exception {
+        return write(Spliterators.iterator(rows), formatter);
+    }
+
+    /**
+     * Format and print all rows of an iterator
+     * @return number of rows written
+     */
+    public synchronized <T> long write(Iterator<T> rows, RowFormatter<T> formatter) throws Ncr7167Exception {
+        if (!printer.isConnected()) {
+            throw new Ncr7167Exception("Printer is not connected");
+        }
+
+        failure = null;
+        long[] count = new long[1];
+        RingOutputStream ring = new RingOutputStream();
+        Thread transmitter = new Thread(this::transmit, "ncr7167-report-writer");
+        transmitter.setDaemon(true);
+        transmitter.start();
+
+        try {
+            printer.render(receipt -> {
+                while (rows.hasNext()) {
+                    formatter.format(receipt, rows.next());
+                    count[0]++;
+                }
+            }, ring);
+        } catch (Ncr7167Exception e) {
+            if (failure == null) {
+                throw e;
+            }
+        } finally {
+            ring.finish();
+            awaitTransmitter(transmitter);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        return count[0];
+    }
+
+    private void transmit() {
+        while (true) {
+            ByteBuffer buffer;
+            try {
+                buffer = full.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new Ncr7167Exception("Report transmission interrupted", e);
+                return;
+            }
+            if (buffer == END) {
+                return;
+            }
+            try {
+                if (failure == null) {
+                    printer.sendCommand(buffer.array(), 0, buffer.position());
+                }
+            } catch (Ncr7167Exception e) {
+                failure = e;
+            } finally {
+                if (buffer.capacity() == bufferSize) {
+                    buffer.clear();
+                    free.add(buffer);
+                }
+            }
+        }
+    }
+
+    private void awaitTransmitter(Thread transmitter) throws Ncr7167Exception {
+        try {
+            transmitter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            transmitter.interrupt();
+            throw new Ncr7167Exception("Interrupted while streaming report", e);
+        }
+    }
+
+    private class RingOutputStream extends OutputStream {
+        private ByteBuffer current;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        /**
+         * Add one whole command; the printer writes each command in a single call
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (current != null && len > current.remaining()) {
+                pass();
+            }
+            if (len > bufferSize) {
+                if (failure != null) {
+                    throw new IOException("Report transmission failed", failure);
+                }
+                ByteBuffer oversized = ByteBuffer.allocate(len);
+                oversized.put(b, off, len);
+                enqueue(oversized);
+                return;
+            }
+            acquire();
+            current.put(b, off, len);
+        }
+
+        private void acquire() throws IOException {
+            if (current != null) {
+                return;
+            }
+            if (failure != null) {
+                throw new IOException("Report transmission failed", failure);
+            }
+            try {
+                current = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a free buffer", e);
+            }
+        }
+
+        private void pass() throws IOException {
+            ByteBuffer buffer = current;
+            current = null;
+            enqueue(buffer);
+        }
+
+        private void enqueue(ByteBuffer buffer) throws IOException {
+            try {
+                full.put(buffer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the printer", e);
+            }
+        }
+
+        /**
+         * Hand over the partly filled buffer and signal the end of the report
+         */
+        void finish() {
+            try {
+                if (current != null && current.position() > 0) {
+                    full.put(current);
+                } else if (current != null) {
+                    free.add(current);
+                }
+                current = null;
+                full.put(END);
+            } catch (InterruptedException e) {
+                // Leaves the interrupt set, so awaiting the transmitter stops it
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
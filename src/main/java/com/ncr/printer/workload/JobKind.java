@@ -0,0 +1,13 @@
+package com.ncr.printer.workload;
+
+/**
+ * Kinds of work a simulated terminal sends to the printer
+ */
+public enum JobKind {
+    // Sales receipt on the receipt station
+    RECEIPT,
+    // Form or check endorsement on the slip station
+    SLIP,
+    // Cash drawer kick after a sale, sent as an urgent command
+    DRAWER
+}
@@ -0,0 +1,358 @@
+package com.ncr.printer.workload;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.PrintJob;
+import com.ncr.printer.commands.Ncr7167Commands;
+import com.ncr.printer.glyph.Glyph;
+import com.ncr.printer.glyph.GlyphRegistry;
+import com.ncr.printer.transport.InMemoryTransport;
+import com.ncr.printer.transport.PrinterTransport;
+import com.ncr.printer.transport.SerialPortTransport;
+import com.ncr.printer.util.ReceiptBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a printer with simulated point-of-sale terminals
+ *
+ * Each terminal runs on its own thread and prints receipts at random
+ * (Poisson) arrival times, with a mix of item lines, bar codes, logos,
+ * slip jobs and drawer kicks taken from a {@link WorkloadProfile}. A
+ * terminal that is still waiting for its previous job starts the next one
+ * late, and that wait is part of the measured latency.
+ */
+public class WorkloadGenerator {
+
+    private static final String LOGO = "workload-logo";
+
+    private final Ncr7167Printer printer;
+    private final WorkloadProfile profile;
+
+    /**
+     * @param printer connected printer shared by all terminals
+     * @param profile load to generate
+     */
+    public WorkloadGenerator(Ncr7167Printer printer, WorkloadProfile profile) {
+        this.printer = printer;
+        this.profile = profile;
+    }
+
+    /**
+     * Run the workload for the profile's duration and wait for the last job
+     */
+    public WorkloadReport run() throws Ncr7167Exception {
+        if (profile.getLogoRatio() > 0) {
+            registerLogo(printer.getGlyphRegistry());
+        }
+
+        int terminals = Math.max(1, profile.getTerminals());
+        ExecutorService executor = Executors.newFixedThreadPool(terminals);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(profile.getDurationMillis());
+        List<Future<Terminal>> results = new ArrayList<>();
+        for (int i = 0; i < terminals; i++) {
+            Terminal terminal = new Terminal(i, new Random(profile.getSeed() + i));
+            results.add(executor.submit(() -> terminal.run(start, end)));
+        }
+
+        Map<JobKind, long[]> latencies = new EnumMap<>(JobKind.class);
+        long bytes = 0;
+        try {
+            for (Future<Terminal> result : results) {
+                Terminal terminal = result.get();
+                bytes += terminal.bytes;
+                for (JobKind kind : JobKind.values()) {
+                    latencies.put(kind, concat(latencies.get(kind), terminal.latencies.get(kind)));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Ncr7167Exception("Workload interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Ncr7167Exception) {
+                throw (Ncr7167Exception) e.getCause();
+            }
+            throw new Ncr7167Exception("Workload terminal failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new WorkloadReport(profile, baudRate(), System.nanoTime() - start, bytes, latencies);
+    }
+
+    private int baudRate() {
+        PrinterTransport transport = printer.getTransport();
+        if (transport instanceof InMemoryTransport) {
+            return ((InMemoryTransport) transport).getBaudRate();
+        }
+        return printer.getConfig().getBaudRate();
+    }
+
+    private static void registerLogo(GlyphRegistry registry) throws Ncr7167Exception {
+        if (!registry.contains(LOGO)) {
+            registry.register(Glyph.receiptPattern(LOGO,
+                "..########..", ".##......##.", "##..####..##", "##.##..##.##",
+                "##.##..##.##", "##..####..##", ".##......##.", "..########.."));
+        }
+    }
+
+    private static long[] concat(long[] a, List<Long> b) {
+        int length = a == null ? 0 : a.length;
+        long[] result = a == null ? new long[b.size()] : Arrays.copyOf(a, length + b.size());
+        for (int i = 0; i < b.size(); i++) {
+            result[length + i] = b.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * One simulated terminal; used by a single thread
+     */
+    private class Terminal {
+
+        private final int id;
+        private final Random random;
+        private final Map<JobKind, List<Long>> latencies = new EnumMap<>(JobKind.class);
+        private long bytes;
+        private int sequence;
+
+        Terminal(int id, Random random) {
+            this.id = id;
+            this.random = random;
+            for (JobKind kind : JobKind.values()) {
+                latencies.put(kind, new ArrayList<>());
+            }
+        }
+
+        Terminal run(long start, long end) throws Ncr7167Exception, InterruptedException {
+            double meanGapNanos = 60_000_000_000.0 / Math.max(0.001, profile.getReceiptsPerMinute());
+            long due = start;
+            while (true) {
+                due += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+                if (due >= end) {
+                    return this;
+                }
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+
+                if (random.nextDouble() < profile.getSlipRatio()) {
+                    print(slip());
+                    latencies.get(JobKind.SLIP).add(System.nanoTime() - due);
+                    continue;
+                }
+                print(receipt());
+                latencies.get(JobKind.RECEIPT).add(System.nanoTime() - due);
+
+                if (random.nextDouble() < profile.getDrawerKickRatio()) {
+                    long kick = System.nanoTime();
+                    printer.openCashDrawer();
+                    latencies.get(JobKind.DRAWER).add(System.nanoTime() - kick);
+                }
+            }
+        }
+
+        private void print(PrintJob job) throws Ncr7167Exception {
+            bytes += job.getLength();
+            printer.printJob(job);
+        }
+
+        private PrintJob receipt() throws Ncr7167Exception {
+            printer.beginJob("T" + id + "-" + (++sequence));
+            ReceiptBuilder receipt = new ReceiptBuilder(printer);
+            if (random.nextDouble() < profile.getLogoRatio()) {
+                for (int i = 0; i < 4; i++) {
+                    receipt.glyph(LOGO);
+                }
+                receipt.emptyLine();
+            }
+            receipt.header("WORKLOAD STORE", "TERMINAL " + id);
+
+            int span = Math.max(0, profile.getMaxLines() - profile.getMinLines());
+            int lines = profile.getMinLines() + random.nextInt(span + 1);
+            long total = 0;
+            for (int i = 0; i < lines; i++) {
+                int cents = 50 + random.nextInt(5000);
+                total += cents;
+                receipt.item("ITEM " + (1000 + random.nextInt(9000)), money(cents));
+            }
+            receipt.total("TOTAL", money(total));
+
+            if (random.nextDouble() < profile.getBarCodeRatio()) {
+                receipt.barCode(Ncr7167Commands.BarCodeTypes.CODE39,
+                    String.format(Locale.ROOT, "T%02d%06d", id, sequence));
+            }
+            receipt.footer("T" + id + "-" + sequence, null).complete();
+            return printer.finishJob();
+        }
+
+        private PrintJob slip() throws Ncr7167Exception {
+            printer.beginJob("T" + id + "-" + (++sequence));
+            printer.selectSlipStation();
+            printer.printLine("ENDORSEMENT TERMINAL " + id);
+            printer.printLine("AMOUNT " + money(1000 + random.nextInt(100000)));
+            printer.printLine("REF T" + id + "-" + sequence);
+            printer.selectReceiptStation();
+            return printer.finishJob();
+        }
+
+        private String money(long cents) {
+            return String.format(Locale.ROOT, "%d.%02d", cents / 100, cents % 100);
+        }
+    }
+
+    /**
+     * Run a workload, or a sweep over terminal counts and line speeds,
+     * against the in-memory printer or a real port
+     */
+    public static void main(String[] args) {
+        if (args.length > 0 && ("-h".equals(args[0]) || "--help".equals(args[0]))) {
+            System.out.println("Usage: java WorkloadGenerator [options]");
+            System.out.println("  --terminals <n,...>  simulated terminals per run (default 4)");
+            System.out.println("  --baud <rate,...>    simulated line speeds, 0 for unthrottled (default 19200)");
+            System.out.println("  --rate <n>           jobs per minute per terminal (default 6)");
+            System.out.println("  --duration <s>       length of each run in seconds (default 60)");
+            System.out.println("  --lines <min-max>    item lines per receipt (default 3-20)");
+            System.out.println("  --barcode <0-1>      share of receipts with a bar code");
+            System.out.println("  --logo <0-1>         share of receipts with a logo");
+            System.out.println("  --slip <0-1>         share of slip jobs");
+            System.out.println("  --drawer <0-1>       share of receipts followed by a drawer kick");
+            System.out.println("  --seed <n>           random seed");
+            System.out.println("  --port <name>        drive a real printer or emulator on this serial port");
+            return;
+        }
+
+        WorkloadProfile profile = new WorkloadProfile();
+        int[] terminals = {profile.getTerminals()};
+        int[] baudRates = {19200};
+        String portName = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--terminals":
+                        terminals = parseList(args[++i]);
+                        break;
+                    case "--baud":
+                        baudRates = parseList(args[++i]);
+                        break;
+                    case "--rate":
+                        profile.setReceiptsPerMinute(Double.parseDouble(args[++i]));
+                        break;
+                    case "--duration":
+                        profile.setDurationMillis((long) (Double.parseDouble(args[++i]) * 1000));
+                        break;
+                    case "--lines":
+                        String[] range = args[++i].split("-");
+                        profile.setMinLines(Integer.parseInt(range[0]));
+                        profile.setMaxLines(Integer.parseInt(range[range.length - 1]));
+                        break;
+                    case "--barcode":
+                        profile.setBarCodeRatio(Double.parseDouble(args[++i]));
+                        break;
+                    case "--logo":
+                        profile.setLogoRatio(Double.parseDouble(args[++i]));
+                        break;
+                    case "--slip":
+                        profile.setSlipRatio(Double.parseDouble(args[++i]));
+                        break;
+                    case "--drawer":
+                        profile.setDrawerKickRatio(Double.parseDouble(args[++i]));
+                        break;
+                    case "--seed":
+                        profile.setSeed(Long.parseLong(args[++i]));
+                        break;
+                    case "--port":
+                        portName = args[++i];
+                        break;
+                    default:
+                        System.err.println("Unknown option: " + args[i]);
+                        return;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            return;
+        }
+
+        List<WorkloadReport> reports = new ArrayList<>();
+        for (int baudRate : baudRates) {
+            for (int count : terminals) {
+                profile.setTerminals(count);
+                Ncr7167Config config = new Ncr7167Config();
+                PrinterTransport transport;
+                if (portName != null) {
+                    config.setPortName(portName);
+                    if (baudRate > 0) {
+                        config.setBaudRate(baudRate);
+                    }
+                    transport = new SerialPortTransport(config);
+                } else {
+                    transport = new InMemoryTransport(baudRate);
+                }
+
+                Ncr7167Printer printer = new Ncr7167Printer(config, transport);
+                try {
+                    printer.connect();
+                    WorkloadReport report = new WorkloadGenerator(printer, copy(profile)).run();
+                    System.out.println(report);
+                    reports.add(report);
+                } catch (Ncr7167Exception e) {
+                    System.err.println("Error: " + e.getMessage());
+                    return;
+                } finally {
+                    printer.disconnect();
+                }
+            }
+        }
+
+        if (reports.size() > 1) {
+            System.out.println("Summary");
+            System.out.println(String.format(Locale.ROOT, "%9s %7s %8s %9s %9s %9s",
+                "terminals", "baud", "jobs/s", "p50 ms", "p95 ms", "p99 ms"));
+            for (WorkloadReport report : reports) {
+                System.out.println(String.format(Locale.ROOT, "%9d %7d %8.2f %9.1f %9.1f %9.1f",
+                    report.getProfile().getTerminals(), report.getBaudRate(), report.getThroughput(),
+                    report.getLatencyNanos(50) / 1_000_000.0, report.getLatencyNanos(95) / 1_000_000.0,
+                    report.getLatencyNanos(99) / 1_000_000.0));
+            }
+        }
+    }
+
+    private static int[] parseList(String value) {
+        String[] parts = value.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+
+    private static WorkloadProfile copy(WorkloadProfile profile) {
+        WorkloadProfile copy = new WorkloadProfile();
+        copy.setTerminals(profile.getTerminals());
+        copy.setReceiptsPerMinute(profile.getReceiptsPerMinute());
+        copy.setDurationMillis(profile.getDurationMillis());
+        copy.setMinLines(profile.getMinLines());
+        copy.setMaxLines(profile.getMaxLines());
+        copy.setBarCodeRatio(profile.getBarCodeRatio());
+        copy.setLogoRatio(profile.getLogoRatio());
+        copy.setSlipRatio(profile.getSlipRatio());
+        copy.setDrawerKickRatio(profile.getDrawerKickRatio());
+        copy.setSeed(profile.getSeed());
+        return copy;
+    }
+}
@@ -0,0 +1,70 @@
+package com.ncr.printer.workload;
+
+/**
+ * Shape of a simulated point-of-sale load: how many terminals share the
+ * printer, how often each one prints, and what its receipts contain
+ */
+public class WorkloadProfile {
+    
+    private int terminals;
+    private double receiptsPerMinute;
+    private long durationMillis;
+    private int minLines;
+    private int maxLines;
+    private double barCodeRatio;
+    private double logoRatio;
+    private double slipRatio;
+    private double drawerKickRatio;
+    private long seed;
+    
+    public WorkloadProfile() {
+        this.terminals = 4;
+        this.receiptsPerMinute = 6;
+        this.durationMillis = 60000;
+        this.minLines = 3;
+        this.maxLines = 20;
+        this.barCodeRatio = 0.5;
+        this.logoRatio = 0.25;
+        this.slipRatio = 0.05;
+        this.drawerKickRatio = 0.7;
+        this.seed = 7167;
+    }
+    
+    // Number of simulated terminals printing concurrently
+    public int getTerminals() { return terminals; }
+    public void setTerminals(int terminals) { this.terminals = terminals; }
+    
+    // Mean arrival rate of jobs per terminal; gaps are exponentially distributed
+    public double getReceiptsPerMinute() { return receiptsPerMinute; }
+    public void setReceiptsPerMinute(double receiptsPerMinute) { this.receiptsPerMinute = receiptsPerMinute; }
+    
+    // Length of the run in milliseconds; jobs arriving later are not started
+    public long getDurationMillis() { return durationMillis; }
+    public void setDurationMillis(long durationMillis) { this.durationMillis = durationMillis; }
+    
+    // Item lines per receipt, drawn uniformly from this range
+    public int getMinLines() { return minLines; }
+    public void setMinLines(int minLines) { this.minLines = minLines; }
+    public int getMaxLines() { return maxLines; }
+    public void setMaxLines(int maxLines) { this.maxLines = maxLines; }
+    
+    // Share of receipts ending with a bar code (0-1)
+    public double getBarCodeRatio() { return barCodeRatio; }
+    public void setBarCodeRatio(double barCodeRatio) { this.barCodeRatio = barCodeRatio; }
+    
+    // Share of receipts starting with a logo made of custom glyphs (0-1)
+    public double getLogoRatio() { return logoRatio; }
+    public void setLogoRatio(double logoRatio) { this.logoRatio = logoRatio; }
+    
+    // Share of jobs printed on the slip station instead of the receipt (0-1)
+    public double getSlipRatio() { return slipRatio; }
+    public void setSlipRatio(double slipRatio) { this.slipRatio = slipRatio; }
+    
+    // Share of receipts followed by a cash drawer kick (0-1)
+    public double getDrawerKickRatio() { return drawerKickRatio; }
+    public void setDrawerKickRatio(double drawerKickRatio) { this.drawerKickRatio = drawerKickRatio; }
+    
+    // Random seed; terminal n uses seed + n so runs are repeatable
+    public long getSeed() { return seed; }
+    public void setSeed(long seed) { this.seed = seed; }
+}
@@ -0,0 +1,143 @@
+package com.ncr.printer.workload;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Throughput and job latency of one workload run
+ *
+ * Latency is measured from the moment a job was due to arrive, not from
+ * the moment its terminal got around to sending it, so time spent behind
+ * a slow printer is counted in full.
+ */
+public class WorkloadReport {
+
+    private final WorkloadProfile profile;
+    private final int baudRate;
+    private final long elapsedNanos;
+    private final long bytes;
+    private final Map<JobKind, long[]> sortedLatencies = new EnumMap<>(JobKind.class);
+    private final long[] allLatencies;
+
+    WorkloadReport(WorkloadProfile profile, int baudRate, long elapsedNanos, long bytes,
+                   Map<JobKind, long[]> latencies) {
+        this.profile = profile;
+        this.baudRate = baudRate;
+        this.elapsedNanos = elapsedNanos;
+        this.bytes = bytes;
+
+        int total = 0;
+        for (JobKind kind : JobKind.values()) {
+            long[] sorted = latencies.containsKey(kind) ? latencies.get(kind).clone() : new long[0];
+            Arrays.sort(sorted);
+            sortedLatencies.put(kind, sorted);
+            total += sorted.length;
+        }
+        this.allLatencies = new long[total];
+        int offset = 0;
+        for (long[] sorted : sortedLatencies.values()) {
+            System.arraycopy(sorted, 0, allLatencies, offset, sorted.length);
+            offset += sorted.length;
+        }
+        Arrays.sort(allLatencies);
+    }
+
+    public WorkloadProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Simulated line speed, or 0 for an unthrottled transport
+     */
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Bytes of receipt and slip jobs sent
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Number of completed jobs of the given kind
+     */
+    public int getJobs(JobKind kind) {
+        return sortedLatencies.get(kind).length;
+    }
+
+    /**
+     * Number of completed jobs of every kind
+     */
+    public int getJobs() {
+        return allLatencies.length;
+    }
+
+    /**
+     * Jobs per second over the whole run
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : allLatencies.length * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    /**
+     * Bytes per second over the whole run
+     */
+    public double getByteRate() {
+        return elapsedNanos == 0 ? 0 : bytes * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    /**
+     * Job latency of the given kind at a percentile
+     * @param percentile 0-100
+     */
+    public long getLatencyNanos(JobKind kind, double percentile) {
+        return percentile(sortedLatencies.get(kind), percentile);
+    }
+
+    /**
+     * Job latency over all kinds at a percentile
+     * @param percentile 0-100
+     */
+    public long getLatencyNanos(double percentile) {
+        return percentile(allLatencies, percentile);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%d terminals at %.1f jobs/min, %s, %.1f s%n",
+            profile.getTerminals(), profile.getReceiptsPerMinute(),
+            baudRate > 0 ? baudRate + " baud" : "unthrottled", elapsedNanos / 1_000_000_000.0));
+        out.append(String.format(Locale.ROOT, "%-8s %6s %9s %9s %9s %9s%n",
+            "kind", "jobs", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (JobKind kind : JobKind.values()) {
+            out.append(row(kind.name().toLowerCase(Locale.ROOT), sortedLatencies.get(kind)));
+        }
+        out.append(row("all", allLatencies));
+        out.append(String.format(Locale.ROOT, "throughput %.2f jobs/s, %.1f bytes/s%n",
+            getThroughput(), getByteRate()));
+        return out.toString();
+    }
+
+    private static String row(String label, long[] sorted) {
+        return String.format(Locale.ROOT, "%-8s %6d %9.1f %9.1f %9.1f %9.1f%n", label, sorted.length,
+            percentile(sorted, 50) / 1_000_000.0, percentile(sorted, 95) / 1_000_000.0,
+            percentile(sorted, 99) / 1_000_000.0, percentile(sorted, 100) / 1_000_000.0);
+    }
+}
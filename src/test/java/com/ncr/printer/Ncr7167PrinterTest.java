@@ -0,0 +1,264 @@
+package com.ncr.printer;
+
+import com.ncr.printer.transport.InMemoryTransport;
+import com.ncr.printer.util.Document;
+import com.ncr.printer.util.ReceiptBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Ncr7167PrinterTest {
+
+    private Ncr7167Config config;
+    private InMemoryTransport transport;
+    private Ncr7167Printer printer;
+
+    @BeforeEach
+    void setUp() throws Ncr7167Exception {
+        config = new Ncr7167Config();
+        transport = new InMemoryTransport();
+        printer = new Ncr7167Printer(config, transport);
+        printer.connect();
+    }
+
+    @AfterEach
+    void tearDown() {
+        printer.disconnect();
+    }
+
+    @Test
+    void testJobIsCapturedUntilEnd() throws Ncr7167Exception {
+        printer.beginJob("TXN1");
+        printer.printLine("HELLO");
+        assertEquals(0, transport.getWrittenCount());
+
+        printer.endJob();
+        assertArrayEquals("HELLO\n".getBytes(StandardCharsets.ISO_8859_1), transport.getWrittenBytes());
+        assertFalse(printer.isJobOpen());
+    }
+
+    @Test
+    void testPrintAllKeepsDocumentOrder() throws Ncr7167Exception {
+        config.setRenderThreads(3);
+        config.setPrintLookahead(2);
+
+        List<Document> documents = new ArrayList<>();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 25; i++) {
+            String text = "DOCUMENT " + i;
+            documents.add(receipt -> receipt.line(text).separator());
+            byte[] line = (text + "\n").getBytes(StandardCharsets.ISO_8859_1);
+            expected.write(line, 0, line.length);
+            byte[] separator = (new String(new char[44]).replace('\0', '-') + "\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+            expected.write(separator, 0, separator.length);
+        }
+
+        assertEquals(25, printer.printAll(documents.iterator()));
+        assertArrayEquals(expected.toByteArray(), transport.getWrittenBytes());
+    }
+
+    @Test
+    void testPrintAllStopsOnRenderFailure() {
+        Ncr7167Exception e = assertThrows(Ncr7167Exception.class, () -> printer.printAll(
+            IntStream.range(0, 10).mapToObj(i -> (Document) receipt -> {
+                if (i == 3) {
+                    throw new Ncr7167Exception("bad document " + i);
+                }
+                receipt.line("OK");
+            })));
+        assertEquals("bad document 3", e.getMessage());
+        assertArrayEquals("OK\nOK\nOK\n".getBytes(StandardCharsets.ISO_8859_1), transport.getWrittenBytes());
+    }
+
+    @Test
+    void testReprintFromCache() throws Ncr7167Exception {
+        config.setReprintCacheSize(4096);
+        Ncr7167Printer cached = new Ncr7167Printer(config, transport);
+        cached.connect();
+        cached.getReprintCache().setCopyMarker(new byte[]{'*'});
+
+        new ReceiptBuilder(cached).begin("TXN9").line("A").copySlot().line("B");
+        cached.endJob();
+        transport.clearWritten();
+
+        cached.reprint("TXN9");
+        assertArrayEquals("A\n*B\n".getBytes(StandardCharsets.ISO_8859_1), transport.getWrittenBytes());
+        assertThrows(Ncr7167Exception.class, () -> cached.reprint("UNKNOWN"));
+    }
+
+    @Test
+    void testConcurrentJobsNeverInterleave() throws Exception {
+        int threads = 8;
+        int jobsPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            byte fill = (byte) ('A' + t);
+            results.add(executor.submit(() -> {
+                start.await();
+                byte[] block = new byte[100];
+                Arrays.fill(block, fill);
+                for (int i = 0; i < jobsPerThread; i++) {
+                    printer.beginJob(null);
+                    printer.sendCommand(block, 0, 50);
+                    printer.sendCommand(block, 50, 50);
+                    printer.endJob();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        byte[] written = transport.getWrittenBytes();
+        assertEquals(threads * jobsPerThread * 100, written.length);
+        for (int i = 0; i < written.length; i += 100) {
+            for (int j = 1; j < 100; j++) {
+                assertEquals(written[i], written[i + j]);
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentLinesKeepTheirLineFeed() throws Exception {
+        int threads = 8;
+        int linesPerThread = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String text = String.valueOf((char) ('A' + t));
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < linesPerThread; i++) {
+                    printer.printLine(text);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        // Each direct printLine is one group, so every letter is followed by its own LF
+        byte[] written = transport.getWrittenBytes();
+        assertEquals(threads * linesPerThread * 2, written.length);
+        for (int i = 0; i < written.length; i += 2) {
+            assertNotEquals(0x0A, written[i]);
+            assertEquals(0x0A, written[i + 1]);
+        }
+    }
+
+    @Test
+    void testJobCaptureIsPerThread() throws Exception {
+        printer.beginJob("TXN1");
+        printer.printLine("SALE");
+
+        Thread drawerKick = new Thread(() -> {
+            try {
+                printer.openCashDrawer();
+            } catch (Ncr7167Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        drawerKick.start();
+        drawerKick.join();
+        assertArrayEquals(new byte[]{0x1B, 0x70, 0x00, 55, 55}, transport.getWrittenBytes());
+
+        assertArrayEquals("SALE\n".getBytes(StandardCharsets.ISO_8859_1), printer.finishJob().getData());
+    }
+
+    @Test
+    void testPrintModeOfJobAppliesOnlyOnceWritten() throws Exception {
+        int receiptWidth = printer.getLineWidth();
+        PrintJob[] slip = new PrintJob[1];
+        Thread slipJob = new Thread(() -> {
+            try {
+                printer.beginJob("SLIP1");
+                printer.selectSlipStation();
+                printer.setCompressedPitch(true);
+                slip[0] = printer.finishJob();
+            } catch (Ncr7167Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        slipJob.start();
+        slipJob.join();
+
+        // A captured job does not change how other threads lay out lines
+        assertEquals(receiptWidth, printer.getLineWidth());
+        assertEquals(Ncr7167Config.Station.RECEIPT, printer.getActiveStation());
+
+        printer.beginJob("TXN1");
+        printer.setDoubleWide(true);
+        assertEquals(receiptWidth / 2, printer.getLineWidth());
+        printer.finishJob();
+        assertEquals(receiptWidth, printer.getLineWidth());
+
+        printer.printJob(slip[0]);
+        assertEquals(Ncr7167Config.Station.SLIP, printer.getActiveStation());
+        assertTrue(printer.isCompressedPitch());
+    }
+
+    @Test
+    void testDrawerKickCutsInAtCommandBoundary() throws Exception {
+        printer.beginJob("LONG");
+        for (int i = 0; i < 100; i++) {
+            printer.printLine("LINE " + i + " OF A LONG RECEIPT");
+        }
+        PrintJob job = printer.finishJob();
+        assertTrue(job.getBoundaries().length > 5);
+
+        // About 25 bytes per line at 1920 bytes/s: the job takes over a second
+        transport.setBaudRate(19200);
+        Thread sender = new Thread(() -> {
+            try {
+                printer.printJob(job);
+            } catch (Ncr7167Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        sender.start();
+        Thread.sleep(300);
+
+        printer.openCashDrawer();
+        assertTrue(sender.isAlive());
+        sender.join();
+
+        byte[] written = transport.getWrittenBytes();
+        byte[] kick = {0x1B, 0x70, 0x00, 55, 55};
+        int at = -1;
+        for (int i = 0; i < written.length - kick.length && at < 0; i++) {
+            if (Arrays.equals(kick, Arrays.copyOfRange(written, i, i + kick.length))) {
+                at = i;
+            }
+        }
+        int cutAt = at;
+        assertTrue(Arrays.stream(job.getBoundaries()).anyMatch(b -> b == cutAt));
+
+        ByteArrayOutputStream withoutKick = new ByteArrayOutputStream();
+        withoutKick.write(written, 0, at);
+        withoutKick.write(written, at + kick.length, written.length - at - kick.length);
+        assertArrayEquals(job.getData(), withoutKick.toByteArray());
+    }
+}
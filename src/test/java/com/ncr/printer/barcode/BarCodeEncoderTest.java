@@ -0,0 +1,94 @@
+package com.ncr.printer.barcode;
+
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.commands.Ncr7167Commands;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BarCodeEncoderTest {
+
+    private BarCodeEncoder encoder;
+
+    @BeforeEach
+    void setUp() {
+        encoder = new BarCodeEncoder();
+    }
+
+    @Test
+    void testCheckDigit() {
+        assertEquals(5, BarCodeEncoder.computeCheckDigit("01234567890"));
+        assertEquals(1, BarCodeEncoder.computeCheckDigit("400638133393"));
+        assertEquals(4, BarCodeEncoder.computeCheckDigit("9638507"));
+    }
+
+    @Test
+    void testUpcAAppendsCheckDigit() throws Ncr7167Exception {
+        byte[] command = encoder.encode(Ncr7167Commands.BarCodeTypes.UPC_A, "01234567890");
+        assertArrayEquals(new byte[]{0x1D, 0x6B, 0, '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '0', '5', 0},
+            command);
+    }
+
+    @Test
+    void testInvalidCheckDigitRejected() {
+        assertThrows(Ncr7167Exception.class,
+            () -> encoder.encode(Ncr7167Commands.BarCodeTypes.UPC_A, "012345678909"));
+        assertThrows(Ncr7167Exception.class,
+            () -> encoder.encode(Ncr7167Commands.BarCodeTypes.JAN13_EAN13, "4006381333932"));
+        assertThrows(Ncr7167Exception.class,
+            () -> encoder.encode(Ncr7167Commands.BarCodeTypes.JAN8_EAN8, "123"));
+    }
+
+    @Test
+    void testUpcERequiresZeroSuppressibleData() throws Ncr7167Exception {
+        assertNotNull(encoder.encode(BarCodeSymbology.UPC_E, "04210000526"));
+        assertThrows(Ncr7167Exception.class, () -> encoder.encode(BarCodeSymbology.UPC_E, "01234567890"));
+    }
+
+    @Test
+    void testCharacterValidation() throws Ncr7167Exception {
+        assertNotNull(encoder.encode(Ncr7167Commands.BarCodeTypes.CODE39, "*ABC-123*"));
+        assertThrows(Ncr7167Exception.class, () -> encoder.encode(Ncr7167Commands.BarCodeTypes.CODE39, "abc"));
+        assertThrows(Ncr7167Exception.class, () -> encoder.encode(Ncr7167Commands.BarCodeTypes.ITF, "123"));
+        assertThrows(Ncr7167Exception.class, () -> encoder.encode(Ncr7167Commands.BarCodeTypes.CODABAR, "123"));
+        assertNotNull(encoder.encode(Ncr7167Commands.BarCodeTypes.CODABAR, "A1234B"));
+    }
+
+    @Test
+    void testCode128UsesLengthPrefixedValues() throws Ncr7167Exception {
+        byte[] numeric = encoder.encode(Ncr7167Commands.BarCodeTypes.CODE128, "1234");
+        assertArrayEquals(new byte[]{0x1D, 0x6B, 73, 3, 105, 12, 34}, numeric);
+
+        byte[] text = encoder.encode(Ncr7167Commands.BarCodeTypes.CODE128, "Ab");
+        assertArrayEquals(new byte[]{0x1D, 0x6B, 73, 3, 104, 33, 66}, text);
+    }
+
+    @Test
+    void testPdf417CarriesBinaryData() throws Ncr7167Exception {
+        byte[] command = encoder.encode(BarCodeSymbology.PDF417, new byte[]{0, (byte) 0xFF, 0x0A});
+        assertArrayEquals(new byte[]{0x1D, 0x6B, 75, 3, 0, (byte) 0xFF, 0x0A}, command);
+        assertThrows(Ncr7167Exception.class, () -> encoder.encode(BarCodeSymbology.PDF417, new byte[256]));
+    }
+
+    @Test
+    void testRepeatedCodesAreCached() throws Ncr7167Exception {
+        byte[] first = encoder.encode(Ncr7167Commands.BarCodeTypes.CODE39, "LOYALTY42");
+        byte[] second = encoder.encode(Ncr7167Commands.BarCodeTypes.CODE39_LENGTH, "LOYALTY42");
+        assertSame(first, second);
+        assertEquals(1, encoder.getCacheSize());
+    }
+
+    @Test
+    void testBarCodeConfigCommand() throws Ncr7167Exception {
+        BarCodeConfig config = new BarCodeConfig();
+        config.setHeight(80);
+        config.setWidth(2);
+        config.setHriPosition(BarCodeConfig.HriPosition.BELOW);
+
+        assertArrayEquals(new byte[]{0x1D, 0x68, 80, 0x1D, 0x77, 2, 0x1D, 0x48, 2, 0x1D, 0x66, 0},
+            config.toCommand());
+
+        config.setWidth(6);
+        assertThrows(Ncr7167Exception.class, config::toCommand);
+    }
+}
@@ -0,0 +1,85 @@
+package com.ncr.printer.batch;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchPrinterTest {
+
+    private static final String INPUT = String.join("\r\n",
+        "@id TXN1",
+        "@center MARKET",
+        "@item Coffee | 3.50",
+        "@total TOTAL | 3.50",
+        "",
+        "---",
+        "{\"id\":\"TXN2\",\"lines\":[\"PLAIN\",{\"item\":[\"Tea\",2.25]},{\"barcode\":[\"CODE39\",\"12345\"]}]}",
+        "{\"id\":\"TXN3\",\"lines\":[{\"nosuch\":\"x\"}]}",
+        "{\"id\":\"TXN4\",\"lines\":[\"unterminated]}",
+        "@id TXN5",
+        "@@home",
+        "---");
+
+    @Test
+    void testMixedFormatsFromMappedFile(@TempDir Path dir) throws IOException, Ncr7167Exception {
+        Path file = dir.resolve("batch.txt");
+        Files.write(file, INPUT.getBytes(StandardCharsets.UTF_8));
+
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(new Ncr7167Config(), transport);
+        printer.connect();
+        BatchResult result = new BatchResult();
+        try (BatchReader reader = BatchReader.open(file, BatchReader.Format.AUTO)) {
+            new BatchPrinter(printer, null).print(reader, result);
+        } finally {
+            printer.disconnect();
+        }
+
+        List<BatchResult.Entry> entries = result.getEntries();
+        assertEquals(5, entries.size());
+        assertEquals("TXN1", entries.get(0).getDocument().getJobId());
+        assertEquals(file + ":1", entries.get(0).getDocument().getSource());
+        assertTrue(entries.get(1).isPrinted());
+        assertEquals("Unknown directive: nosuch", entries.get(2).getError());
+        assertFalse(entries.get(3).isPrinted());
+        assertTrue(entries.get(3).getError().startsWith("Unterminated string"));
+        assertEquals("TXN5", entries.get(4).getDocument().getJobId());
+        assertEquals(3, result.getPrinted());
+        assertEquals(2, result.getFailed());
+
+        String written = new String(transport.getWrittenBytes(), StandardCharsets.ISO_8859_1);
+        assertEquals(result.getBytes(), transport.getWrittenCount());
+        assertTrue(written.indexOf("Coffee") < written.indexOf("Tea"));
+        assertTrue(written.contains("@home\n"));
+        assertFalse(written.contains("\r"));
+    }
+
+    @Test
+    void testBrokenMarkupDocumentIsSkippedWhole() {
+        BatchReader reader = BatchReader.open(new ByteArrayInputStream(
+            "@item only-one\nSTILL PART OF IT\n---\nNEXT\n".getBytes(StandardCharsets.UTF_8)),
+            "stdin", BatchReader.Format.MARKUP);
+
+        BatchDocument broken = reader.next();
+        assertFalse(broken.isValid());
+        Ncr7167Exception e = assertThrows(Ncr7167Exception.class, () -> broken.render(null));
+        assertEquals("Directive item needs 2 argument(s) (line 1)", e.getMessage());
+
+        BatchDocument next = reader.next();
+        assertTrue(next.isValid());
+        assertEquals("stdin:4", next.getSource());
+        assertFalse(reader.hasNext());
+    }
+}
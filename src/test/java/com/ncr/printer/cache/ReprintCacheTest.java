@@ -0,0 +1,69 @@
+package com.ncr.printer.cache;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.PrintJob;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReprintCacheTest {
+
+    @Test
+    void testLeastRecentlyUsedEvictedBySize() {
+        ReprintCache cache = new ReprintCache(10, false);
+        cache.put(new PrintJob("A", new byte[4]));
+        cache.put(new PrintJob("B", new byte[4]));
+        assertNotNull(cache.get("A"));
+
+        cache.put(new PrintJob("C", new byte[4]));
+        assertTrue(cache.contains("A"));
+        assertFalse(cache.contains("B"));
+        assertTrue(cache.contains("C"));
+        assertEquals(8, cache.getTotalBytes());
+    }
+
+    @Test
+    void testOversizedAndAnonymousJobsNotCached() {
+        ReprintCache cache = new ReprintCache(10, false);
+        cache.put(new PrintJob("BIG", new byte[11]));
+        cache.put(new PrintJob(null, new byte[1]));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testCopyMarkerInsertedAtSlot() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            ReprintCache cache = new ReprintCache(1024, offHeap);
+            cache.setCopyMarker(new byte[]{'C'});
+            cache.put(new PrintJob("TXN1", new byte[]{1, 2, 3, 4}, 2));
+
+            assertArrayEquals(new byte[]{1, 2, 3, 4}, cache.get("TXN1").getData());
+            assertArrayEquals(new byte[]{1, 2, 'C', 3, 4}, cache.getCopy("TXN1").getData());
+        }
+    }
+
+    @Test
+    void testCopyMarkerPrependedWithoutSlot() {
+        ReprintCache cache = new ReprintCache(1024, true);
+        cache.setCopyMarker(new byte[]{'C', 'C'});
+        cache.put(new PrintJob("TXN1", new byte[]{1, 2}));
+
+        assertArrayEquals(new byte[]{'C', 'C', 1, 2}, cache.getCopy("TXN1").getData());
+        assertNull(cache.getCopy("MISSING"));
+    }
+
+    @Test
+    void testCopyMarkerCenteredOnConfiguredPaper() {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setReprintCacheSize(1024);
+        config.setReceiptPaperWidth(58);
+        Ncr7167Printer printer = new Ncr7167Printer(config, new InMemoryTransport());
+
+        // 32 columns on 58 mm paper: (32 - 12) / 2 blanks before "*** COPY ***"
+        byte[] marker = printer.getReprintCache().getCopyMarker();
+        assertEquals(3 + 10 + 12 + 1 + 3, marker.length);
+        assertEquals(' ', marker[3 + 9]);
+        assertEquals('*', marker[3 + 10]);
+    }
+}
@@ -0,0 +1,86 @@
+package com.ncr.printer.decode;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.commands.Ncr7167Commands;
+import com.ncr.printer.glyph.Glyph;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommandDecoderTest {
+
+    @Test
+    void testDecodesRenderedReceipt() throws Ncr7167Exception {
+        Ncr7167Printer printer = new Ncr7167Printer(new Ncr7167Config(), new InMemoryTransport());
+        printer.getGlyphRegistry().register(Glyph.receiptPattern("STAR", ".#.", "###", ".#."));
+        byte[] data = printer.render(receipt -> receipt
+            .glyph("STAR")
+            .total("TOTAL", "9.99")
+            .barCode(Ncr7167Commands.BarCodeTypes.CODE39, "ABC")
+            .complete()).getData();
+
+        List<String> names = new ArrayList<>();
+        for (DecodedCommand command : CommandDecoder.decode(data)) {
+            assertFalse(command.isTruncated());
+            assertTrue(command.isText() || command.getSpec().isKnown(), command.toString());
+            names.add(command.toString());
+        }
+        assertEquals("Define User-Defined Characters", names.get(0));
+        assertEquals("Select or Cancel User-Defined Character Set", names.get(1));
+        assertTrue(names.stream().anyMatch(name -> name.startsWith("\"TOTAL ") && name.endsWith("9.99\"")));
+        assertTrue(names.contains("Print Bar Code"));
+        assertEquals("Select Cut Mode and Cut Paper", names.get(names.size() - 1));
+    }
+
+    @Test
+    void testChunkingDoesNotChangeResult() {
+        byte[] data = {
+            0x1B, 0x40, 'H', 'I', 0x0A,
+            0x1D, 0x6B, 73, 3, 'A', 'B', 'C',
+            0x1B, 0x2A, 33, 2, 0, 1, 2, 3, 4, 5, 6,
+            0x1B, 0x70, 0, 55, 55,
+            0x10, 0x1D, 0x56, 66, 3
+        };
+        String whole = CommandDecoder.listing(data);
+
+        StringBuilder bytewise = new StringBuilder();
+        CommandDecoder decoder = new CommandDecoder(new CommandListing(bytewise) {
+            @Override
+            public void text(byte[] bytes, int offset, int length, long position) {
+                // Text runs arrive split at chunk ends; only commands are compared
+            }
+        });
+        for (int i = 0; i < data.length; i++) {
+            decoder.feed(data, i, 1);
+        }
+        decoder.finish();
+
+        StringBuilder commandsOnly = new StringBuilder();
+        for (String line : whole.split("\n")) {
+            if (!line.contains("\"")) {
+                commandsOnly.append(line).append('\n');
+            }
+        }
+        assertEquals(commandsOnly.toString(), bytewise.toString());
+        assertEquals(data.length, decoder.getPosition());
+        assertTrue(whole.contains("00000005  1D 6B 49 03 41 42 43"));
+        assertTrue(whole.contains("Select Bit Image Mode"));
+        assertTrue(whole.contains("0000001C  10"));
+    }
+
+    @Test
+    void testTruncatedCommandAtEnd() {
+        List<DecodedCommand> commands = CommandDecoder.decode(new byte[]{'A', 0x1D, 0x6B, 4, 'X'});
+        assertEquals(2, commands.size());
+        assertEquals("A", commands.get(0).getText());
+        assertTrue(commands.get(1).isTruncated());
+        assertEquals("Print Bar Code", commands.get(1).getSpec().getName());
+        assertArrayEquals(new byte[]{4, 'X'}, commands.get(1).getOperands());
+    }
+}
@@ -0,0 +1,49 @@
+package com.ncr.printer.flow;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReceiveBufferModelTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testWritesWaitForRoomInBuffer() {
+        ReceiveBufferModel model = new ReceiveBufferModel(1000, 500, 0, false);
+        long now = 0;
+
+        assertEquals(0, model.reserve(1000, now));
+        // Buffer is full: 200 more bytes need 200 / 500 s of printing
+        assertEquals(SECOND * 2 / 5, model.reserve(200, now));
+        // Everything sent drains in 1200 / 500 s
+        assertEquals(SECOND * 12 / 5, model.estimateDrainNanos(0, now));
+
+        // After three seconds the printer is idle again
+        now += 3 * SECOND;
+        assertEquals(0, model.reserve(1000, now));
+        assertEquals(SECOND * 3, model.estimateDrainNanos(500, now));
+    }
+
+    @Test
+    void testCalibrationFromThrottledWrites() {
+        ReceiveBufferModel model = new ReceiveBufferModel(1000, 500, 0, true);
+        long now = 0;
+
+        // First throttled write only marks the buffer as full
+        model.written(1000, TimeUnit.MILLISECONDS.toNanos(100), now);
+        assertEquals(500, model.getDrainRate(), 0.001);
+
+        // 1000 bytes accepted over the next second, then throttled again: real rate 1000 B/s
+        now += SECOND;
+        model.written(500, 0, now - SECOND / 2);
+        model.written(500, TimeUnit.MILLISECONDS.toNanos(100), now);
+        assertEquals(625, model.getDrainRate(), 0.001);
+
+        // Fast writes do not count as throttling
+        model.written(100, TimeUnit.MILLISECONDS.toNanos(1), now + SECOND);
+        assertEquals(625, model.getDrainRate(), 0.001);
+    }
+}
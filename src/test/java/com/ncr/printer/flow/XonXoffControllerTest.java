@@ -0,0 +1,152 @@
+package com.ncr.printer.flow;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class XonXoffControllerTest {
+
+    @Test
+    void testXoffPausesWriterUntilXon() throws Exception {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setSoftwareFlowControl(true);
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(config, transport);
+        printer.connect();
+        XonXoffController flow = printer.getFlowController();
+
+        transport.addInput((byte) XonXoffController.XOFF);
+        waitFor(flow::isPaused);
+
+        Thread sender = new Thread(() -> {
+            try {
+                printer.printLine("AFTER XOFF");
+            } catch (Ncr7167Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        sender.start();
+        Thread.sleep(100);
+        assertEquals(0, transport.getWrittenCount());
+        assertTrue(flow.getCurrentPauseNanos() > 0);
+
+        transport.addInput((byte) XonXoffController.XON);
+        sender.join(2000);
+        assertFalse(sender.isAlive());
+        assertEquals(11, transport.getWrittenCount());
+        assertEquals(1, flow.getPauseCount());
+        assertTrue(flow.getTotalPausedNanos() >= 100_000_000L);
+        printer.disconnect();
+    }
+
+    @Test
+    void testOtherBytesArePassedOn() throws Exception {
+        byte[] input = {0x12, XonXoffController.XOFF, 0x34, XonXoffController.XON};
+        XonXoffController flow = new XonXoffController(new ByteArrayInputStream(input), null, 0);
+        for (byte b : input) {
+            flow.process(b & 0xFF);
+        }
+
+        assertEquals(2, flow.getInputStream().available());
+        assertEquals(0x12, flow.getInputStream().read());
+        assertEquals(0x34, flow.getInputStream().read());
+        assertEquals(-1, flow.getInputStream().read());
+        assertFalse(flow.isPaused());
+
+        flow.process(XonXoffController.XOFF);
+        Thread.sleep(5);
+        assertTrue(flow.isStalled());
+    }
+
+    @Test
+    void testFlowControlIsHandledWhileReplyIsExpected() throws Exception {
+        XonXoffController flow = new XonXoffController(new ByteArrayInputStream(new byte[0]), null, 1000);
+
+        // XOFF and XON never fit the GS ENQ reply format (bit 7 on)
+        flow.expectResponse(0x80, 0x80);
+        flow.process(XonXoffController.XOFF);
+        assertTrue(flow.isPaused());
+        assertEquals(0, flow.getInputStream().available());
+        flow.process(XonXoffController.XON);
+        assertFalse(flow.isPaused());
+        flow.process(0x92);
+        assertEquals(0x92, flow.getInputStream().read());
+
+        // Nor the GS r reply format (bits 4 and 7 off)
+        flow.expectResponse(0x90, 0x00);
+        flow.process(XonXoffController.XOFF);
+        assertTrue(flow.isPaused());
+        flow.process(0x00);
+        assertEquals(0x00, flow.getInputStream().read());
+        flow.endResponse();
+    }
+
+    @Test
+    void testStatusReplyAfterXoffIsReturned() throws Exception {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setSoftwareFlowControl(true);
+        config.setConnectSettleTime(0);
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(config, transport);
+        printer.connect();
+
+        // The printer pauses the host, then answers the request
+        Thread printerSide = new Thread(() -> {
+            try {
+                waitFor(() -> transport.getWrittenCount() > 0);
+            } catch (InterruptedException e) {
+                return;
+            }
+            transport.addInput((byte) XonXoffController.XOFF, (byte) 0x83);
+        });
+        printerSide.start();
+
+        assertEquals(0x83, printer.requestStatus());
+        printerSide.join();
+        assertTrue(printer.getFlowController().isPaused());
+        transport.addInput((byte) XonXoffController.XON);
+        waitFor(() -> !printer.getFlowController().isPaused());
+        printer.disconnect();
+    }
+
+    @Test
+    void testWritesFailAfterWriteTimeout() throws Exception {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setSoftwareFlowControl(true);
+        config.setXoffWriteTimeout(200);
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(config, transport);
+        printer.connect();
+        XonXoffController flow = printer.getFlowController();
+
+        transport.addInput((byte) XonXoffController.XOFF);
+        waitFor(flow::isPaused);
+
+        long start = System.nanoTime();
+        assertThrows(Ncr7167Exception.class, () -> printer.printLine("BLOCKED"));
+        assertTrue(System.nanoTime() - start < 2_000_000_000L);
+        assertEquals(0, transport.getWrittenCount());
+
+        // Software flow control only applies to XON/XOFF links
+        printer.disconnect();
+        config.setFlowControl(Ncr7167Config.FlowControl.DTR_DSR);
+        printer.connect();
+        assertNull(printer.getFlowController());
+        printer.disconnect();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(5);
+        }
+    }
+}
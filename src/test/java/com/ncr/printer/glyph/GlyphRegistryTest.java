@@ -0,0 +1,96 @@
+package com.ncr.printer.glyph;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.PrintJob;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GlyphRegistryTest {
+
+    @Test
+    void testPatternToColumns() throws Ncr7167Exception {
+        Glyph glyph = Glyph.receiptPattern("TICK",
+            "#.",
+            ".#",
+            "..", "..", "..", "..", "..", "..",
+            "#.");
+
+        assertEquals(2, glyph.getWidth());
+        assertArrayEquals(new byte[]{0x1B, 0x26, 3, (byte) 0x80, (byte) 0x80, 2,
+                                     (byte) 0x80, (byte) 0x80, 0,
+                                     0x40, 0, 0},
+            glyph.toDefineCommand(0x80));
+        assertThrows(Ncr7167Exception.class, () -> Glyph.receipt("BAD", new byte[4]));
+        assertThrows(Ncr7167Exception.class, () -> Glyph.slip("BAD", new byte[11]));
+    }
+
+    @Test
+    void testGlyphIsDownloadedOnce() throws Ncr7167Exception {
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(new Ncr7167Config(), transport);
+        printer.connect();
+        Glyph star = Glyph.receiptPattern("STAR", "#", "#", "#");
+        int code = printer.getGlyphRegistry().register(star);
+        byte[] define = star.toDefineCommand(code);
+
+        printer.sendGlyph("STAR");
+        assertEquals(define.length + 3 + 1, transport.getWrittenCount());
+
+        transport.clearWritten();
+        printer.sendGlyph("STAR");
+        assertArrayEquals(new byte[]{(byte) code}, transport.getWrittenBytes());
+
+        // Changed definitions and printer resets bring the download back
+        printer.getGlyphRegistry().register(Glyph.receiptPattern("STAR", "##"));
+        transport.clearWritten();
+        printer.sendGlyph("STAR");
+        assertTrue(transport.getWrittenCount() > 1);
+
+        printer.invalidateGlyphs();
+        transport.clearWritten();
+        printer.sendGlyph("STAR");
+        assertTrue(transport.getWrittenCount() > 1);
+
+        assertThrows(Ncr7167Exception.class, () -> printer.sendGlyph("UNKNOWN"));
+        printer.disconnect();
+    }
+
+    @Test
+    void testJobsCarryTheirOwnDefinitions() throws Ncr7167Exception {
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(new Ncr7167Config(), transport);
+        printer.connect();
+        Glyph star = Glyph.receiptPattern("STAR", "#", "#", "#");
+        int code = printer.getGlyphRegistry().register(star);
+        byte[] define = star.toDefineCommand(code);
+
+        // A job that is never printed leaves nothing resident
+        printer.beginJob("DISCARDED");
+        printer.sendGlyph("STAR");
+        printer.sendGlyph("STAR");
+        PrintJob discarded = printer.finishJob();
+        assertEquals(define.length + 3 + 2, discarded.getLength());
+
+        printer.sendGlyph("STAR");
+        assertEquals(define.length + 3 + 1, transport.getWrittenCount());
+
+        // Even with the glyph resident, a job still defines it for later replays
+        printer.beginJob("REPLAYABLE");
+        printer.sendGlyph("STAR");
+        assertEquals(define.length + 3 + 1, printer.finishJob().getLength());
+        printer.disconnect();
+    }
+
+    @Test
+    void testCodesRunOut() throws Ncr7167Exception {
+        GlyphRegistry registry = new GlyphRegistry(0x90, 0x91);
+        assertEquals(0x90, registry.register(Glyph.receiptPattern("A", "#")));
+        assertEquals(0x91, registry.register(Glyph.receiptPattern("B", "#")));
+        assertEquals(0x90, registry.register(Glyph.receiptPattern("A", "##")));
+        assertThrows(Ncr7167Exception.class, () -> registry.register(Glyph.receiptPattern("C", "#")));
+    }
+}
@@ -0,0 +1,77 @@
+package com.ncr.printer.health;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrinterWatchdogTest {
+
+    @Test
+    void testSilentPrinterGoesOfflineAndRecovers() throws Exception {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setWatchdogIdleInterval(50);
+        config.setWatchdogRecoveryInterval(20);
+        config.setWatchdogOfflineThreshold(2);
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(config, transport);
+        printer.connect();
+
+        List<String> transitions = new CopyOnWriteArrayList<>();
+        try (PrinterWatchdog watchdog = new PrinterWatchdog(printer)) {
+            assertEquals(PrinterHealth.CONNECTED, watchdog.getHealth());
+            watchdog.addListener((previous, current) -> transitions.add(previous + "->" + current));
+            watchdog.start();
+
+            awaitTransition(transitions, "DEGRADED->OFFLINE");
+            assertEquals("CONNECTED->DEGRADED", transitions.get(0));
+            assertEquals("DEGRADED->OFFLINE", transitions.get(1));
+
+            // The printer answers again: the next reconnect sticks
+            transport.addInput(new byte[64]);
+            awaitTransition(transitions, "OFFLINE->CONNECTED");
+            assertEquals(PrinterHealth.CONNECTED, watchdog.getHealth());
+            assertTrue(watchdog.getReconnectCount() > 0);
+            assertTrue(printer.isConnected());
+        } finally {
+            printer.disconnect();
+        }
+    }
+
+    @Test
+    void testNoProbesWhileJobsFlow() throws Exception {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setWatchdogIdleInterval(100);
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(config, transport);
+        printer.connect();
+
+        try (PrinterWatchdog watchdog = new PrinterWatchdog(printer)) {
+            watchdog.start();
+            long until = System.currentTimeMillis() + 600;
+            while (System.currentTimeMillis() < until) {
+                printer.printLine("SALE");
+                Thread.sleep(20);
+            }
+            assertEquals(0, watchdog.getProbeCount());
+            assertEquals(PrinterHealth.CONNECTED, watchdog.getHealth());
+        } finally {
+            printer.disconnect();
+        }
+    }
+
+    // Listeners run after the state changes, so wait for the listener rather than the state
+    private static void awaitTransition(List<String> transitions, String transition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!transitions.contains(transition) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(transitions.contains(transition), transitions.toString());
+    }
+}
@@ -0,0 +1,76 @@
+package com.ncr.printer.journal;
+
+import com.ncr.printer.PrintJob;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ElectronicJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testLookupByTransactionAndDate() throws Exception {
+        ElectronicJournal journal = new ElectronicJournal(directory, "LANE1");
+        byte[] receipt = {0x1B, 0x45, 1, 'T', 'O', 'T', 'A', 'L', 0x0A, 0x1B, 0x45, 0, 0x1D, 0x56, 0};
+        journal.record(new PrintJob("TXN1", receipt));
+        journal.record(new PrintJob("TXN2", "HELLO\n".getBytes(StandardCharsets.ISO_8859_1)));
+        journal.flush();
+
+        List<JournalEntry> found = journal.findByTransaction("TXN1");
+        assertEquals(1, found.size());
+        assertEquals("TOTAL\n", found.get(0).getText());
+        assertArrayEquals(receipt, found.get(0).getData());
+        assertEquals("LANE1", found.get(0).getLane());
+
+        assertEquals(2, journal.findByDate(LocalDate.now(), "LANE1").size());
+        assertEquals(0, journal.findByDate(LocalDate.now(), "LANE2").size());
+        assertEquals(0, journal.findByDate(LocalDate.now().minusDays(1), null).size());
+        journal.close();
+    }
+
+    @Test
+    void testIndexReloadedAfterRestart() throws Exception {
+        ElectronicJournal journal = new ElectronicJournal(directory, "LANE1", 64, 64);
+        for (int i = 0; i < 20; i++) {
+            journal.record(new PrintJob("TXN" + i, ("LINE " + i + "\n").getBytes(StandardCharsets.ISO_8859_1)));
+        }
+        journal.close();
+        assertEquals(0, journal.getDroppedCount());
+
+        ElectronicJournal reopened = new ElectronicJournal(directory, "LANE2");
+        reopened.record(new PrintJob("TXN7", "REPRINT\n".getBytes(StandardCharsets.ISO_8859_1)));
+        reopened.flush();
+
+        List<JournalEntry> found = reopened.findByTransaction("TXN7");
+        assertEquals(2, found.size());
+        assertEquals("LINE 7\n", found.get(0).getText());
+        assertEquals("LANE2", found.get(1).getLane());
+        assertEquals(21, reopened.findByDate(LocalDate.now(), null).size());
+        reopened.close();
+    }
+
+    @Test
+    void testFlushNeverHangs() throws Exception {
+        ElectronicJournal journal = new ElectronicJournal(directory, "LANE1");
+
+        // A record that fails to encode does not stop the writer
+        journal.record(new PrintJob("BAD", null));
+        journal.record(new PrintJob("GOOD", "OK\n".getBytes(StandardCharsets.ISO_8859_1)));
+        assertTrue(journal.flush());
+        assertEquals(1, journal.findByTransaction("GOOD").size());
+
+        journal.close();
+        long start = System.nanoTime();
+        assertFalse(journal.flush());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+}
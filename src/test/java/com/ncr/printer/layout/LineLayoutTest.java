@@ -0,0 +1,91 @@
+package com.ncr.printer.layout;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.layout.LineLayout.Align;
+import com.ncr.printer.layout.LineLayout.Column;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineLayoutTest {
+
+    private Ncr7167Config config;
+    private InMemoryTransport transport;
+    private Ncr7167Printer printer;
+    private LineLayout layout;
+
+    @BeforeEach
+    void setUp() throws Ncr7167Exception {
+        config = new Ncr7167Config();
+        config.setReceiptPaperWidth(58);
+        transport = new InMemoryTransport();
+        printer = new Ncr7167Printer(config, transport);
+        printer.connect();
+        layout = new LineLayout(printer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        printer.disconnect();
+    }
+
+    @Test
+    void testWidthFollowsStationAndPitch() throws Ncr7167Exception {
+        assertEquals(32, layout.getWidth());
+        printer.setCompressedPitch(true);
+        assertEquals(42, layout.getWidth());
+        printer.setDoubleWide(true);
+        assertEquals(21, layout.getWidth());
+        printer.setDoubleWide(false);
+        printer.selectSlipStation();
+        assertEquals(55, layout.getWidth());
+    }
+
+    @Test
+    void testAlignmentAndPairs() throws Ncr7167Exception {
+        printer.setDoubleWide(true);
+        transport.clearWritten();
+        layout.text("HI", Align.CENTER);
+        layout.text("HI", Align.RIGHT);
+        layout.pair("A VERY LONG DESCRIPTION", "9.99");
+        layout.fill('-');
+
+        assertEquals("       HI\n"
+                + "              HI\n"
+                + "A VERY LONG 9.99\n"
+                + "----------------\n", written());
+    }
+
+    @Test
+    void testWrapBreaksAtSpaces() throws Ncr7167Exception {
+        layout.wrap("THE QUICK BROWN FOX JUMPS OVER THE LAZY DOG AND A VERYVERYVERYVERYLONGWORDTHATDOESNOTFIT", Align.LEFT);
+        assertEquals("THE QUICK BROWN FOX JUMPS OVER\n"
+                + "THE LAZY DOG AND A\n"
+                + "VERYVERYVERYVERYLONGWORDTHATDOES\n"
+                + "NOTFIT\n", written());
+    }
+
+    @Test
+    void testTableColumns() throws Ncr7167Exception {
+        LineLayout.Table table = layout.table(
+            new Column(3, Align.RIGHT), new Column(0, Align.LEFT), new Column(7, Align.RIGHT));
+        layout.row(table, "2", "COFFEE", "7.00");
+        layout.row(table, "10", "A DESCRIPTION TOO LONG FOR IT", "123.45");
+        layout.row(table, "1");
+
+        assertEquals("  2 COFFEE                  7.00\n"
+                + " 10 A DESCRIPTION TOO LO  123.45\n"
+                + "  1\n", written());
+    }
+
+    private String written() {
+        return new String(transport.getWrittenBytes(), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,92 @@
+package com.ncr.printer.optimize;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.PrintJob;
+import com.ncr.printer.decode.CommandDecoder;
+import com.ncr.printer.decode.DecodedCommand;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PeepholeOptimizerTest {
+
+    private final PeepholeOptimizer optimizer = new PeepholeOptimizer();
+
+    @Test
+    void testFeedRunsBeforeCutKeepTheirLength() {
+        // GS V 66 would feed to the knife instead of the requested lines, so the cut stays as sent
+        byte[] data = {'A', 0x0A, 0x0A, 0x0A, 0x0A, 0x0A, 'B', 0x0A, 0x1B, 0x64, 3, 0x1D, 0x56, 0};
+        assertArrayEquals(new byte[]{'A', 0x1B, 0x64, 5, 'B', 0x1B, 0x64, 4, 0x1D, 0x56, 0}, optimizer.optimize(data));
+
+        // A single feed before the cut is already as short as it gets
+        byte[] short1 = {'A', 0x0A, 0x1D, 0x56, 0};
+        assertSame(short1, optimizer.optimize(short1));
+    }
+
+    @Test
+    void testModeCommandsAreReduced() {
+        // Emphasis off then on: only the final setting matters
+        assertArrayEquals(new byte[]{'A', 0x1B, 0x45, 1, 'B'},
+            optimizer.optimize(new byte[]{'A', 0x1B, 0x45, 0, 0x1B, 0x45, 1, 'B'}));
+
+        // After ESC @ every mode is known, so the toggles merge into ESC !
+        byte[] merged = optimizer.optimize(new byte[]{0x1B, 0x40, 0x12, 0x1B, 0x45, 1, 0x1B, 0x2D, 1, 'X'});
+        assertArrayEquals(new byte[]{0x1B, 0x40, 0x1B, 0x21, (byte) 0xA8, 'X'}, merged);
+
+        // Setting a mode the stream already set is dropped
+        assertArrayEquals(new byte[]{0x1B, 0x45, 1, 'A', 'B'},
+            optimizer.optimize(new byte[]{0x1B, 0x45, 1, 'A', 0x1B, 0x45, 1, 'B'}));
+    }
+
+    @Test
+    void testMarksAreBarriersAndMoved() {
+        byte[] data = {0x0A, 0x0A, 0x0A, 0x0A, 0x0A, 0x0A, 'A', 'B', 0x0A};
+        int[] marks = {3, 7};
+        byte[] optimized = optimizer.optimize(data, marks);
+        assertArrayEquals(new byte[]{0x0A, 0x0A, 0x0A, 0x0A, 0x0A, 0x0A, 'A', 'B', 0x0A}, optimized);
+        assertArrayEquals(new int[]{3, 7}, marks);
+
+        data = new byte[]{0x0A, 0x0A, 0x0A, 0x0A, 0x0A, 'A', 0x0A, 0x0A, 0x0A, 0x0A, 'B'};
+        marks = new int[]{6};
+        assertArrayEquals(new byte[]{0x1B, 0x64, 5, 'A', 0x1B, 0x64, 4, 'B'}, optimizer.optimize(data, marks));
+        assertArrayEquals(new int[]{4}, marks);
+    }
+
+    @Test
+    void testPrinterOptimizesFinishedJobs() throws Ncr7167Exception {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setCommandOptimization(true);
+        Ncr7167Printer printer = new Ncr7167Printer(config, new InMemoryTransport());
+
+        PrintJob job = printer.render(receipt -> receipt
+            .header("STORE", null)
+            .emptyLine().emptyLine().emptyLine().emptyLine()
+            .total("TOTAL", "1.00")
+            .complete());
+
+        config.setCommandOptimization(false);
+        PrintJob plain = new Ncr7167Printer(config, new InMemoryTransport()).render(receipt -> receipt
+            .header("STORE", null)
+            .emptyLine().emptyLine().emptyLine().emptyLine()
+            .total("TOTAL", "1.00")
+            .complete());
+
+        assertEquals(plain.getLength() - job.getLength(), printer.getOptimizerSavings());
+        assertTrue(printer.getOptimizerSavings() > 0);
+        assertEquals(plain.getCopySlot(), job.getCopySlot());
+        assertEquals(text(plain.getData()), text(job.getData()));
+    }
+
+    private static String text(byte[] data) {
+        StringBuilder text = new StringBuilder();
+        for (DecodedCommand command : CommandDecoder.decode(data)) {
+            if (command.isText()) {
+                text.append(command.getText());
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package com.ncr.printer.paper;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaperTrackerTest {
+
+    @Test
+    void testCountsPaperMotionPerStation() {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setPaperRollLength(1000);
+        config.setPaperCutterDistance(120);
+        PaperTracker tracker = new PaperTracker(config);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        write(stream, 0x1B, 0x33, 30, 'A', 0x0A);             // 30 dots
+        write(stream, 0x1B, 0x21, 0x10, 'B', 0x0A);           // double-high line: 48 dots
+        write(stream, 0x1B, 0x4A, 100, 0x1B, 0x4B, 20);       // 100 forward, 20 back
+        write(stream, 0x1D, 0x68, 80, 0x1D, 0x48, 2);         // bar code 80 dots with HRI below
+        write(stream, 0x1D, 0x6B, 4, '1', '2', '3', 0x00);    // 80 + 24 dots
+        write(stream, 0x1B, 0x21, 0x00);
+        write(stream, 0x1C, 'S', 0x0A, 'S', 0x0A, 0x1E);      // slip lines leave the roll alone
+        write(stream, 0x1D, 0x56, 66, 10);                    // feed to the knife plus 10 dots and cut
+        byte[] data = stream.toByteArray();
+
+        // Commands split across writes are still counted once
+        tracker.outgoing(data, 0, 7);
+        tracker.outgoing(data, 7, data.length - 7);
+
+        assertEquals(392, tracker.getFedDotRows(Ncr7167Config.Station.RECEIPT));
+        assertEquals(2, tracker.getFedLines(Ncr7167Config.Station.RECEIPT));
+        assertEquals(60, tracker.getFedDotRows(Ncr7167Config.Station.SLIP));
+        assertEquals(2, tracker.getFedLines(Ncr7167Config.Station.SLIP));
+        assertEquals(49, tracker.getUsedLength());
+        assertEquals(1, tracker.getReceiptCount());
+        assertEquals(49, tracker.getAverageReceiptLength());
+        assertEquals(951, tracker.getRemainingLength());
+        assertEquals(19, tracker.getReceiptsLeft());
+    }
+
+    @Test
+    void testWarnsOnceAndResetsWhenPaperIsReplaced() throws Ncr7167Exception {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setConnectSettleTime(0);
+        config.setPaperRollLength(1000);
+        config.setPaperLowWarning(200);
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(config, transport);
+        printer.connect();
+        try {
+            PaperTracker tracker = printer.getPaperTracker();
+            AtomicInteger warnings = new AtomicInteger();
+            tracker.addListener(t -> warnings.incrementAndGet());
+
+            // Ten 34-dot lines, three blank lines and a cut: 442 dots per receipt
+            for (int i = 0; i < 14; i++) {
+                printReceipt(printer);
+            }
+            assertEquals(0, warnings.get());
+            assertEquals(4, tracker.getReceiptsLeft());
+
+            printReceipt(printer);
+            printReceipt(printer);
+            assertEquals(1, warnings.get());
+            assertTrue(tracker.isPaperLow());
+            assertEquals(16 * 442 / 8, tracker.getUsedLength());
+
+            // Slip and error bits say nothing about the receipt roll
+            transport.addInput((byte) 0xE0);
+            printer.requestStatus();
+            transport.addInput((byte) 0x80);
+            printer.requestStatus();
+            assertTrue(tracker.isPaperLow());
+
+            // Near-end sensor trips, then the door is opened and closed with a new roll
+            transport.addInput((byte) 0x83);
+            printer.requestStatus();
+            assertEquals(16 * 442 / 8, tracker.getUsedLength());
+            transport.addInput((byte) 0x84);
+            printer.requestStatus();
+            transport.addInput((byte) 0x80);
+            printer.requestStatus();
+            assertFalse(tracker.isPaperLow());
+            assertEquals(0, tracker.getUsedLength());
+            assertEquals(0, tracker.getReceiptCount());
+            assertEquals(1, warnings.get());
+        } finally {
+            printer.disconnect();
+        }
+    }
+
+    private static void printReceipt(Ncr7167Printer printer) throws Ncr7167Exception {
+        printer.beginJob(null);
+        for (int i = 0; i < 10; i++) {
+            printer.printLine("ITEM " + i);
+        }
+        printer.feedPaper(3);
+        printer.cutPaper();
+        printer.endJob();
+    }
+
+    private static void write(ByteArrayOutputStream stream, int... bytes) {
+        for (int b : bytes) {
+            stream.write(b);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.ncr.printer.replay;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.transport.InMemoryTransport;
+import com.ncr.printer.util.ReceiptBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrafficReplayerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testCaptureSaveAndReplay() throws Exception {
+        CapturingTransport capturing = new CapturingTransport(new InMemoryTransport());
+        Ncr7167Printer production = new Ncr7167Printer(new Ncr7167Config(), capturing);
+        production.connect();
+        for (int i = 0; i < 10; i++) {
+            new ReceiptBuilder(production).begin("TXN" + i)
+                .item("ITEM " + i, i + ".50")
+                .complete();
+            production.openCashDrawer();
+        }
+        production.disconnect();
+
+        TrafficCapture capture = capturing.getCapture();
+        assertEquals(20, capture.getWriteCount());
+        Path file = directory.resolve("lane1.cap");
+        capture.save(file);
+
+        TrafficCapture loaded = TrafficCapture.load(file);
+        assertArrayEquals(capture.toByteArray(), loaded.toByteArray());
+        assertEquals(capture.getDurationNanos(), loaded.getDurationNanos());
+
+        Ncr7167Printer replayPrinter = new Ncr7167Printer(new Ncr7167Config(), new InMemoryTransport());
+        replayPrinter.connect();
+        ReplayResult result = new TrafficReplayer(replayPrinter).replay(loaded, false);
+        replayPrinter.disconnect();
+
+        assertEquals(20, result.getWrites());
+        assertEquals(capture.getTotalBytes(), result.getBytes());
+        assertTrue(result.getDiff().isIdentical());
+        assertTrue(result.getLatencyNanos(50) <= result.getLatencyNanos(99));
+    }
+
+    @Test
+    void testMemoryCaptureKeepsRecentWrites() throws Exception {
+        CapturingTransport capturing = new CapturingTransport(new InMemoryTransport(), 100);
+        capturing.open();
+        for (int i = 0; i < 10; i++) {
+            byte[] data = new byte[30];
+            Arrays.fill(data, (byte) i);
+            capturing.getOutputStream().write(data, 0, data.length);
+        }
+        capturing.close();
+
+        TrafficCapture capture = capturing.getCapture();
+        assertEquals(3, capture.getWriteCount());
+        assertEquals(90, capture.getTotalBytes());
+        assertEquals(7, capture.getDroppedWrites());
+        assertEquals(7, capture.getWrites().get(0).getData()[0]);
+    }
+
+    @Test
+    void testCaptureStreamsToFile() throws Exception {
+        Path file = directory.resolve("lane2.cap");
+        InMemoryTransport lane = new InMemoryTransport();
+        CapturingTransport capturing = new CapturingTransport(lane, file);
+        Ncr7167Printer production = new Ncr7167Printer(new Ncr7167Config(), capturing);
+        assertNull(capturing.getCapture());
+
+        // Reconnecting appends to the same file
+        for (int session = 0; session < 2; session++) {
+            production.connect();
+            for (int i = 0; i < 5; i++) {
+                production.printLine("LINE " + session + i);
+            }
+            production.disconnect();
+        }
+
+        TrafficCapture loaded = TrafficCapture.load(file);
+        assertEquals(10, loaded.getWriteCount());
+        assertArrayEquals(lane.getWrittenBytes(), loaded.toByteArray());
+    }
+
+    @Test
+    void testDiffReportsFirstMismatch() {
+        CaptureDiff diff = new CaptureDiff(new byte[]{1, 2, 3, 4}, new byte[]{1, 2, 9, 4, 5});
+        assertFalse(diff.isIdentical());
+        assertEquals(2, diff.getFirstMismatch());
+        assertEquals(2, diff.getMismatchCount());
+
+        CaptureDiff prefix = new CaptureDiff(new byte[]{1, 2}, new byte[]{1, 2, 3});
+        assertEquals(2, prefix.getFirstMismatch());
+        assertTrue(new CaptureDiff(new byte[]{7}, new byte[]{7}).isIdentical());
+    }
+}
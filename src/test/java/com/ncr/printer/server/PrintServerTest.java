@@ -0,0 +1,145 @@
+package com.ncr.printer.server;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrintServerTest {
+
+    private InMemoryTransport transport;
+    private Ncr7167Printer printer;
+    private PrintServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setPrintServerPort(0);
+        config.setPrintServerJobTimeout(200);
+        config.setPrintServerMaxJobSize(4096);
+        transport = new InMemoryTransport();
+        printer = new Ncr7167Printer(config, transport);
+        printer.connect();
+        server = new PrintServer(printer);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        printer.disconnect();
+    }
+
+    @Test
+    void testConcurrentClientsPrintWholeJobs() throws Exception {
+        int clients = 6;
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            byte fill = (byte) ('A' + c);
+            results.add(executor.submit(() -> {
+                byte[] job = new byte[3000];
+                Arrays.fill(job, fill);
+                try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+                    OutputStream out = socket.getOutputStream();
+                    // Dribble the job in small writes
+                    for (int i = 0; i < job.length; i += 500) {
+                        out.write(job, i, 500);
+                        out.flush();
+                    }
+                    socket.shutdownOutput();
+                    return readReplies(socket);
+                }
+            }));
+        }
+
+        for (Future<List<String>> result : results) {
+            List<String> replies = result.get();
+            assertEquals(2, replies.size(), replies.toString());
+            assertTrue(replies.get(0).startsWith("QUEUED "));
+            assertTrue(replies.get(1).startsWith("OK ") && replies.get(1).endsWith(" 3000"));
+        }
+        executor.shutdown();
+
+        byte[] written = transport.getWrittenBytes();
+        assertEquals(clients * 3000, written.length);
+        for (int i = 0; i < written.length; i += 3000) {
+            for (int j = 1; j < 3000; j++) {
+                assertEquals(written[i], written[i + j]);
+            }
+        }
+        assertEquals(clients, server.getJobsPrinted());
+    }
+
+    @Test
+    void testIdleGapEndsJobAndOversizedJobIsRejected() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write("FIRST\n".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            Thread.sleep(500);
+            out.write(new byte[5000]);
+            out.flush();
+            Thread.sleep(500);
+            out.write("SECOND\n".getBytes(StandardCharsets.ISO_8859_1));
+            socket.shutdownOutput();
+
+            List<String> replies = readReplies(socket);
+            assertEquals(Arrays.asList("QUEUED client1-1 0", "OK client1-1 6",
+                "REJECTED client1-2 job exceeds 4096 bytes", "QUEUED client1-3 0", "OK client1-3 7"), replies);
+        }
+        assertArrayEquals("FIRST\nSECOND\n".getBytes(StandardCharsets.ISO_8859_1), transport.getWrittenBytes());
+        assertEquals(1, server.getJobsRejected());
+    }
+
+    @Test
+    void testTruncatedAndMaintenanceJobsAreRejected() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            // Select Print Mode without its operand
+            out.write(new byte[]{'A', '\n', 0x1B, 0x21});
+            out.flush();
+            Thread.sleep(500);
+            // Erase the Flash Memory
+            out.write(new byte[]{0x1D, 0x0E});
+            out.flush();
+            Thread.sleep(500);
+            out.write("B\n".getBytes(StandardCharsets.ISO_8859_1));
+            socket.shutdownOutput();
+
+            List<String> replies = readReplies(socket);
+            assertEquals(4, replies.size(), replies.toString());
+            assertTrue(replies.get(0).startsWith("REJECTED client1-1 job ends inside "), replies.get(0));
+            assertTrue(replies.get(1).startsWith("REJECTED client1-2 job contains "), replies.get(1));
+            assertEquals(Arrays.asList("QUEUED client1-3 0", "OK client1-3 2"), replies.subList(2, 4));
+        }
+        assertArrayEquals("B\n".getBytes(StandardCharsets.ISO_8859_1), transport.getWrittenBytes());
+        assertEquals(2, server.getJobsRejected());
+    }
+
+    private static List<String> readReplies(Socket socket) throws Exception {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        List<String> replies = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            replies.add(line);
+        }
+        return replies;
+    }
+}
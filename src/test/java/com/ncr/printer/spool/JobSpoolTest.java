@@ -0,0 +1,132 @@
+package com.ncr.printer.spool;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.PrintJob;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JobSpoolTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testUnfinishedJobsSurviveReopen() throws IOException {
+        JobSpool spool = new JobSpool(directory);
+        long first = spool.append(new PrintJob("TXN1", new byte[]{1, 2, 3}));
+        spool.append(new PrintJob("TXN2", new byte[]{4, 5}));
+        spool.complete(first);
+        spool.close();
+
+        JobSpool reopened = new JobSpool(directory);
+        List<SpooledJob> unfinished = reopened.getUnfinishedJobs();
+        assertEquals(1, unfinished.size());
+        assertEquals("TXN2", unfinished.get(0).getJob().getJobId());
+        assertArrayEquals(new byte[]{4, 5}, unfinished.get(0).getJob().getData());
+        assertEquals(2, unfinished.get(0).getSequence());
+
+        reopened.complete(unfinished.get(0).getTicket());
+        assertTrue(reopened.getUnfinishedJobs().isEmpty());
+        reopened.close();
+
+        JobSpool clean = new JobSpool(directory);
+        assertTrue(clean.getUnfinishedJobs().isEmpty());
+        clean.close();
+    }
+
+    @Test
+    void testSegmentsRollOver() throws IOException {
+        JobSpool spool = new JobSpool(directory, 64, 0);
+        for (int i = 0; i < 10; i++) {
+            spool.append(new PrintJob("TXN" + i, new byte[30]));
+        }
+        spool.close();
+
+        JobSpool reopened = new JobSpool(directory, 64, 0);
+        assertEquals(10, reopened.getUnfinishedJobs().size());
+        reopened.close();
+    }
+
+    @Test
+    void testCorruptRecordIsIgnored() throws IOException {
+        JobSpool spool = new JobSpool(directory, 1024, 0);
+        spool.append(new PrintJob("GOOD", new byte[]{1}));
+        spool.append(new PrintJob("TORN", new byte[]{2, 2, 2, 2}));
+        spool.close();
+
+        // Damage the payload of the second record
+        try (RandomAccessFile raf = new RandomAccessFile(
+                directory.resolve("spool-00000001.seg").toFile(), "rw")) {
+            raf.seek(24 + 19 + 4);
+            raf.write(9);
+        }
+
+        JobSpool reopened = new JobSpool(directory, 1024, 0);
+        List<SpooledJob> unfinished = reopened.getUnfinishedJobs();
+        assertEquals(1, unfinished.size());
+        assertEquals("GOOD", unfinished.get(0).getJob().getJobId());
+
+        // New appends go to a fresh segment and are recovered as well
+        reopened.append(new PrintJob("NEXT", new byte[]{3}));
+        reopened.close();
+
+        JobSpool again = new JobSpool(directory, 1024, 0);
+        assertEquals(2, again.getUnfinishedJobs().size());
+        again.close();
+    }
+
+    @Test
+    void testJobCompletesOnlyWhenPrinterConfirms() throws Ncr7167Exception {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setConnectSettleTime(0);
+        config.setSpoolDirectory(directory.toString());
+        config.setSpoolConfirmTimeout(500);
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(config, transport);
+        printer.connect();
+        try {
+            // The caller does not wait for the answer to Transmit Status
+            long start = System.nanoTime();
+            printer.printJob(new PrintJob("TXN1", "ONE\n".getBytes()));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+            assertArrayEquals(new byte[]{'O', 'N', 'E', '\n', 0x1D, 0x72, 1}, transport.getWrittenBytes());
+
+            // No answer: the job may not have printed
+            assertFalse(printer.awaitSpoolConfirmation(200));
+            printer.disconnect();
+            printer.connect();
+            assertEquals(1, printer.getUnfinishedJobs().size());
+
+            // Replaying it with an answer confirms it
+            printer.replayUnfinishedJobs();
+            transport.addInput((byte) 0x00);
+            assertTrue(printer.awaitSpoolConfirmation(1000));
+            assertTrue(printer.getUnfinishedJobs().isEmpty());
+
+            // Answers complete jobs in order; GS ENQ replies are left for requestStatus
+            printer.printJob(new PrintJob("TXN2", "TWO\n".getBytes()));
+            printer.printJob(new PrintJob("TXN3", "THREE\n".getBytes()));
+            transport.addInput((byte) 0x92);
+            transport.addInput((byte) 0x00);
+            transport.addInput((byte) 0x00);
+            assertTrue(printer.awaitSpoolConfirmation(1000));
+            assertEquals(0x92, printer.requestStatus());
+            printer.disconnect();
+            printer.connect();
+            assertTrue(printer.getUnfinishedJobs().isEmpty());
+        } finally {
+            printer.disconnect();
+        }
+    }
+}
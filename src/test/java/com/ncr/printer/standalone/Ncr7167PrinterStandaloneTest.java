@@ -0,0 +1,63 @@
+package com.ncr.printer.standalone;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Ncr7167PrinterStandaloneTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testChannelModeDoesNotCreateMissingDevice() {
+        Path device = directory.resolve("lp0");
+        Ncr7167PrinterStandalone printer = new Ncr7167PrinterStandalone(device.toString(), true);
+        assertThrows(IOException.class, printer::connect);
+        assertFalse(Files.exists(device));
+    }
+
+    @Test
+    void testChannelModeWritesOnJobEnd() throws Exception {
+        Path device = Files.createFile(directory.resolve("lp0"));
+        Ncr7167PrinterStandalone printer = new Ncr7167PrinterStandalone(device.toString(), true);
+        printer.connect();
+
+        printer.beginJob();
+        printer.printLine("HELLO");
+        assertEquals(0, Files.size(device));
+
+        printer.endJob();
+        assertArrayEquals("HELLO\n".getBytes(StandardCharsets.ISO_8859_1), Files.readAllBytes(device));
+        assertTrue(printer.dumpWireTrace().contains(" 48 45 4C 4C 4F 0A"));
+        printer.disconnect();
+    }
+
+    @Test
+    void testChannelModeGathersLargeCommands() throws Exception {
+        Path device = Files.createFile(directory.resolve("lp0"));
+        Ncr7167PrinterStandalone printer = new Ncr7167PrinterStandalone(device.toString(), true);
+        printer.connect();
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            String line = "LINE " + i;
+            printer.printLine(line);
+            expected.append(line).append('\n');
+        }
+        byte[] large = new byte[20000];
+        printer.sendCommand(large);
+        printer.disconnect();
+
+        byte[] written = Files.readAllBytes(device);
+        assertEquals(expected.length() + large.length, written.length);
+        assertEquals(expected.toString(),
+            new String(written, 0, expected.length(), StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,43 @@
+package com.ncr.printer.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WireTraceTest {
+
+    @Test
+    void testDumpListsBothDirections() {
+        WireTrace trace = new WireTrace(1024);
+        trace.outgoing(new byte[]{0x1B, 0x45, 1, 'H', 'I', 0x0A}, 0, 6);
+        trace.incoming(0x12);
+
+        String dump = trace.dump();
+        assertEquals(2, trace.getRecordCount());
+        assertTrue(dump.contains("TX 6 bytes"));
+        assertTrue(dump.contains("1B 45 01 48 49 0A"));
+        assertTrue(dump.contains("<ESC>E<SOH>HI<LF>"));
+        assertTrue(dump.contains("RX 1 bytes"));
+    }
+
+    @Test
+    void testOldRecordsAreOverwritten() {
+        WireTrace trace = new WireTrace(64);
+        for (int i = 0; i < 20; i++) {
+            byte[] line = String.format("LINE%02d", i).getBytes(StandardCharsets.ISO_8859_1);
+            trace.outgoing(line, 0, line.length);
+        }
+
+        String dump = trace.dump();
+        assertFalse(dump.contains("LINE00"));
+        assertTrue(dump.contains("LINE19"));
+        assertTrue(trace.getRecordCount() <= 4);
+
+        byte[] large = new byte[100];
+        trace.outgoing(large, 0, large.length);
+        assertTrue(trace.dump().contains("100 bytes (last 64 kept)"));
+        assertEquals(1, trace.getRecordCount());
+    }
+}
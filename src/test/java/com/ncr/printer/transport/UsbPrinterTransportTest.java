@@ -0,0 +1,88 @@
+package com.ncr.printer.transport;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class UsbPrinterTransportTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testTransportFollowsInterfaceType() {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setInterfaceType(Ncr7167Config.InterfaceType.USB);
+        assertTrue(PrinterTransport.forConfig(config) instanceof UsbPrinterTransport);
+
+        // A virtual COM port stays on the serial path
+        config.setPortName("COM3");
+        assertTrue(PrinterTransport.forConfig(config) instanceof SerialPortTransport);
+
+        config.setPortName("/dev/usb/lp1");
+        config.setInterfaceType(Ncr7167Config.InterfaceType.RS232C);
+        assertTrue(PrinterTransport.forConfig(config) instanceof SerialPortTransport);
+    }
+
+    @Test
+    void testWritesJobsToDeviceFile() throws Exception {
+        Path device = Files.createFile(directory.resolve("lp0"));
+        Ncr7167Printer printer = new Ncr7167Printer(usbConfig(device));
+        printer.connect();
+        printer.printLine("OVER USB");
+        printer.printLine("NO BAUD RATE");
+        printer.disconnect();
+
+        assertArrayEquals("OVER USB\nNO BAUD RATE\n".getBytes(StandardCharsets.ISO_8859_1),
+            Files.readAllBytes(device));
+    }
+
+    @Test
+    void testReadsRepliesOnTheSameHandle() throws Exception {
+        Path fifo = directory.resolve("lp0");
+        int exit;
+        try {
+            exit = new ProcessBuilder("mkfifo", fifo.toString()).start().waitFor();
+        } catch (IOException e) {
+            exit = -1;
+        }
+        assumeTrue(exit == 0, "mkfifo is not available");
+
+        // A FIFO opened for reading and writing echoes the status request back
+        Ncr7167Printer printer = new Ncr7167Printer(usbConfig(fifo));
+        printer.connect();
+        try {
+            assertEquals(0x1D, printer.requestStatus());
+        } finally {
+            printer.disconnect();
+        }
+        assertFalse(printer.isConnected());
+    }
+
+    @Test
+    void testMissingDeviceIsNotCreated() {
+        Path device = directory.resolve("lp0");
+        Ncr7167Printer printer = new Ncr7167Printer(usbConfig(device));
+        assertThrows(Ncr7167Exception.class, printer::connect);
+        assertFalse(printer.isConnected());
+        assertFalse(Files.exists(device));
+    }
+
+    private static Ncr7167Config usbConfig(Path device) {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setInterfaceType(Ncr7167Config.InterfaceType.USB);
+        config.setPortName(device.toString());
+        config.setConnectSettleTime(0);
+        return config;
+    }
+}
@@ -0,0 +1,134 @@
+package com.ncr.printer.util;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.PrintJob;
+import com.ncr.printer.glyph.Glyph;
+import com.ncr.printer.layout.LineLayout;
+import com.ncr.printer.layout.LineLayout.Align;
+import com.ncr.printer.layout.LineLayout.Column;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReportRendererTest {
+
+    private final Ncr7167Printer printer = new Ncr7167Printer(new Ncr7167Config(), new InMemoryTransport());
+
+    @Test
+    void testParallelOutputMatchesSequential() throws Ncr7167Exception {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            rows.add(new String[]{"Department " + i, String.format("%d.%02d", i * 3, i % 100)});
+        }
+        RowFormatter<String[]> formatter = (receipt, row) -> receipt.item(row[0], row[1]);
+
+        byte[] sequential = printer.render(receipt -> {
+            for (String[] row : rows) {
+                formatter.format(receipt, row);
+            }
+        }).getData();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            printer.beginJob(null);
+            printer.replay(new ReportRenderer(printer, pool, 100).render(rows, formatter));
+            assertArrayEquals(sequential, printer.finishJob().getData());
+        } finally {
+            pool.shutdown();
+        }
+
+        byte[] viaBuilder = printer.render(receipt -> receipt.rows(rows, formatter)).getData();
+        assertArrayEquals(sequential, viaBuilder);
+    }
+
+    @Test
+    void testTableOfOuterBuilderInParallelRows() throws Ncr7167Exception {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setConnectSettleTime(0);
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer connected = new Ncr7167Printer(config, transport);
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            rows.add(new String[]{String.valueOf(i % 9 + 1), "Item " + i, String.format("%d.%02d", i, i % 100)});
+        }
+
+        connected.connect();
+        try {
+            ReceiptBuilder receipt = new ReceiptBuilder(connected).begin("TXN1");
+            LineLayout.Table table = receipt.getLayout().table(
+                new Column(3, Align.RIGHT), new Column(0, Align.LEFT), new Column(8, Align.RIGHT));
+            receipt.rows(rows, (r, row) -> r.row(table, row));
+            // Nothing reaches the port before the job is complete
+            assertEquals(0, transport.getWrittenBytes().length);
+            receipt.complete();
+
+            byte[] sequential = printer.render(r -> {
+                for (String[] row : rows) {
+                    r.row(table, row);
+                }
+                r.complete();
+            }).getData();
+            assertArrayEquals(sequential, transport.getWrittenBytes());
+        } finally {
+            connected.disconnect();
+        }
+    }
+
+    @Test
+    void testGlyphsAndOptimizerRunOncePerJob() throws Ncr7167Exception {
+        Ncr7167Config config = new Ncr7167Config();
+        config.setCommandOptimization(true);
+        Ncr7167Printer optimizing = new Ncr7167Printer(config, new InMemoryTransport());
+        optimizing.getGlyphRegistry().register(Glyph.receiptPattern("STAR", "#", "#", "#"));
+
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            rows.add(i);
+        }
+        RowFormatter<Integer> formatter = (receipt, row) -> {
+            receipt.glyph("STAR");
+            receipt.line("ROW " + row);
+            receipt.emptyLine();
+            receipt.emptyLine();
+            receipt.emptyLine();
+        };
+
+        long before = optimizing.getOptimizerSavings();
+        PrintJob sequential = optimizing.render(receipt -> {
+            for (Integer row : rows) {
+                formatter.format(receipt, row);
+            }
+        });
+        long sequentialSavings = optimizing.getOptimizerSavings() - before;
+        assertTrue(sequentialSavings > 0);
+
+        PrintJob viaBuilder = optimizing.render(receipt -> receipt.rows(rows, formatter));
+        assertArrayEquals(sequential.getData(), viaBuilder.getData());
+        assertArrayEquals(sequential.getBoundaries(), viaBuilder.getBoundaries());
+        assertEquals(2 * sequentialSavings, optimizing.getOptimizerSavings() - before);
+    }
+
+    @Test
+    void testFormatterFailureIsRethrown() {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            rows.add(i);
+        }
+
+        Ncr7167Exception e = assertThrows(Ncr7167Exception.class, () -> new ReportRenderer(
+            printer, ForkJoinPool.commonPool(), 10).render(rows, (receipt, row) -> {
+                if (row == 42) {
+                    throw new Ncr7167Exception("bad row");
+                }
+                receipt.line(String.valueOf(row));
+            }));
+        assertEquals("bad row", e.getMessage());
+    }
+}
@@ -0,0 +1,109 @@
+package com.ncr.printer.util;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.decode.CommandDecoder;
+import com.ncr.printer.decode.DecodedCommand;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingReportWriterTest {
+
+    @Test
+    void testRowsAreSentWhileStreaming() throws Ncr7167Exception {
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(new Ncr7167Config(), transport);
+        printer.connect();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 5000; i++) {
+            byte[] line = ("ROW " + i + "\n").getBytes(StandardCharsets.ISO_8859_1);
+            expected.write(line, 0, line.length);
+        }
+
+        Iterator<Integer> rows = IntStream.range(0, 5000).peek(i -> {
+            if (i == 2000) {
+                // 2000 rows do not fit into 3 x 256 bytes, so some must have been sent
+                assertTrue(transport.getWrittenCount() > 0);
+            }
+        }).boxed().iterator();
+
+        StreamingReportWriter writer = new StreamingReportWriter(printer, 256, 3);
+        assertEquals(5000, writer.write(rows, (receipt, i) -> receipt.line("ROW " + i)));
+        assertArrayEquals(expected.toByteArray(), transport.getWrittenBytes());
+        printer.disconnect();
+    }
+
+    @Test
+    void testBuffersEndBetweenCommands() throws Ncr7167Exception {
+        List<byte[]> writes = Collections.synchronizedList(new ArrayList<>());
+        InMemoryTransport transport = new InMemoryTransport() {
+            @Override
+            public OutputStream getOutputStream() {
+                return new FilterOutputStream(super.getOutputStream()) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        writes.add(Arrays.copyOfRange(b, off, off + len));
+                        out.write(b, off, len);
+                    }
+                };
+            }
+        };
+        Ncr7167Printer printer = new Ncr7167Printer(new Ncr7167Config(), transport);
+        printer.connect();
+
+        // Every tenth row is longer than a whole buffer
+        RowFormatter<Integer> formatter = (receipt, i) ->
+            receipt.emphasize(i % 10 == 0 ? "ROW " + i + " OF A LONG REPORT" : "ROW " + i);
+        byte[] expected = printer.render(receipt -> {
+            for (int i = 0; i < 500; i++) {
+                formatter.format(receipt, i);
+            }
+        }).getData();
+
+        StreamingReportWriter writer = new StreamingReportWriter(printer, 16, 3);
+        assertEquals(500, writer.write(IntStream.range(0, 500).boxed().iterator(), formatter));
+        assertArrayEquals(expected, transport.getWrittenBytes());
+        assertTrue(writes.size() > 100);
+        for (byte[] write : writes) {
+            for (DecodedCommand command : CommandDecoder.decode(write)) {
+                assertFalse(command.isTruncated(), command.toString());
+            }
+        }
+        printer.disconnect();
+    }
+
+    @Test
+    void testTransmitFailureStopsReport() throws Ncr7167Exception {
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(new Ncr7167Config(), transport);
+        printer.connect();
+
+        StreamingReportWriter writer = new StreamingReportWriter(printer, 64, 2);
+        long[] formatted = new long[1];
+        assertThrows(Ncr7167Exception.class, () ->
+            writer.write(IntStream.range(0, 100000).boxed().spliterator(), (receipt, i) -> {
+                if (i == 100) {
+                    transport.close();
+                }
+                formatted[0]++;
+                receipt.line("ROW " + i);
+            }));
+        assertTrue(formatted[0] < 100000);
+    }
+}
@@ -0,0 +1,41 @@
+package com.ncr.printer.workload;
+
+import com.ncr.printer.Ncr7167Config;
+import com.ncr.printer.Ncr7167Exception;
+import com.ncr.printer.Ncr7167Printer;
+import com.ncr.printer.transport.InMemoryTransport;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkloadGeneratorTest {
+
+    @Test
+    void testEveryJobReachesThePrinter() throws Ncr7167Exception {
+        InMemoryTransport transport = new InMemoryTransport();
+        Ncr7167Printer printer = new Ncr7167Printer(new Ncr7167Config(), transport);
+        printer.connect();
+
+        WorkloadProfile profile = new WorkloadProfile();
+        profile.setTerminals(3);
+        profile.setReceiptsPerMinute(1200);
+        profile.setDurationMillis(1000);
+        profile.setSlipRatio(0.2);
+        try {
+            WorkloadReport report = new WorkloadGenerator(printer, profile).run();
+
+            assertTrue(report.getJobs(JobKind.RECEIPT) > 10);
+            assertTrue(report.getJobs(JobKind.SLIP) > 0);
+            assertTrue(report.getJobs(JobKind.DRAWER) > 0);
+            assertEquals(report.getJobs(JobKind.RECEIPT) + report.getJobs(JobKind.SLIP)
+                + report.getJobs(JobKind.DRAWER), report.getJobs());
+
+            // Jobs plus one 5-byte pulse command per drawer kick
+            assertEquals(report.getBytes() + 5L * report.getJobs(JobKind.DRAWER), transport.getWrittenCount());
+            assertTrue(report.getLatencyNanos(50) <= report.getLatencyNanos(99));
+            assertTrue(report.toString().contains("receipt"));
+        } finally {
+            printer.disconnect();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+# NCR 7167 Printer - startup benchmark for the one-shot print command
+#
+# Launches QuickPrintExample (in-memory transport) repeatedly and reports
+# wall-clock startup times for the plain JVM, the JVM with the AppCDS
+# archive, and the native image when they have been built.
+#
+# Usage: ./startup-benchmark.sh [runs] [jar] [cds-archive] [native-binary]
+#   Maven:  mvn -Pfast-start package && ./startup-benchmark.sh 20
+#   Gradle: gradle cdsArchive && ./startup-benchmark.sh 20 build/libs/<jar> build/cds/ncr7167.jsa build/native/ncr7167-print
+
+RUNS=${1:-20}
+JAR=${2:-target/ncr7167-java-1.0-SNAPSHOT.jar}
+ARCHIVE=${3:-target/ncr7167.jsa}
+NATIVE=${4:-target/ncr7167-print}
+MAIN=com.ncr.printer.examples.QuickPrintExample
+JAVA=${JAVA_HOME:+$JAVA_HOME/bin/}java
+TUNED="-XX:TieredStopAtLevel=1 -XX:+UseSerialGC"
+
+if [ ! -f "$JAR" ]; then
+    echo "Jar not found: $JAR"
+    exit 1
+fi
+
+measure() {
+    local label=$1
+    shift
+    local times=()
+    # One untimed run warms the OS file cache
+    "$@" > /dev/null 2>&1
+    for ((i = 0; i < RUNS; i++)); do
+        local start=$(date +%s%N)
+        if ! "$@" > /dev/null 2>&1; then
+            echo "$label: command failed: $*"
+            return
+        fi
+        local end=$(date +%s%N)
+        times+=($(((end - start) / 1000000)))
+    done
+    local sorted=($(printf '%s\n' "${times[@]}" | sort -n))
+    printf '%-16s min %5d ms  median %5d ms  max %5d ms\n' "$label" \
+        "${sorted[0]}" "${sorted[$((RUNS / 2))]}" "${sorted[$((RUNS - 1))]}"
+}
+
+echo "$RUNS runs of $MAIN"
+measure "jvm" "$JAVA" -cp "$JAR" $MAIN
+measure "jvm tuned" "$JAVA" $TUNED -cp "$JAR" $MAIN
+if [ -f "$ARCHIVE" ]; then
+    measure "jvm+cds" "$JAVA" -Xshare:auto -XX:SharedArchiveFile="$ARCHIVE" -cp "$JAR" $MAIN
+    measure "jvm+cds tuned" "$JAVA" $TUNED -Xshare:auto -XX:SharedArchiveFile="$ARCHIVE" -cp "$JAR" $MAIN
+else
+    echo "No CDS archive at $ARCHIVE"
+fi
+if [ -x "$NATIVE" ]; then
+    measure "native" "$NATIVE"
+else
+    echo "No native image at $NATIVE"
+fi